@@ -0,0 +1,86 @@
+package de.hexix.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vergleicht die Bewertung von 10.000 Kandidaten: bisherige double-Variante aus {@link VektorUtil},
+ * skalare float-Variante und SIMD über {@link VectorMath#scoreAll(float[], float[][])}.
+ * Die SIMD-Variante wird nur genutzt, wenn die JVM mit {@code --add-modules=jdk.incubator.vector} läuft (siehe Profil jmh).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VectorMathBenchmark {
+
+    private static final int CANDIDATES = 10_000;
+
+    @Param({"768", "1024"})
+    int dimension;
+
+    float[] profile;
+    float[][] candidates;
+    double[] profileDouble;
+    double[][] candidatesDouble;
+
+    private final VectorMath.ScalarVectorMath scalar = new VectorMath.ScalarVectorMath();
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        profile = VectorMath.normalize(random(random));
+        candidates = new float[CANDIDATES][];
+        candidatesDouble = new double[CANDIDATES][];
+        for (int i = 0; i < CANDIDATES; i++) {
+            candidates[i] = VectorMath.normalize(random(random));
+            candidatesDouble[i] = VektorUtil.toDoubleArray(candidates[i]);
+        }
+        profileDouble = VektorUtil.toDoubleArray(profile);
+    }
+
+    private float[] random(final Random random) {
+        final float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+    @Benchmark
+    public double cosineSimilarityDouble() {
+        double sum = 0;
+        for (double[] candidate : candidatesDouble) {
+            sum += VektorUtil.getCosineSimilarity(profileDouble, candidate);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float scoreAllScalar() {
+        float sum = 0;
+        for (float[] candidate : candidates) {
+            sum += scalar.dot(profile, candidate);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float[] scoreAll() {
+        return VectorMath.scoreAll(profile, candidates);
+    }
+}
@@ -0,0 +1,200 @@
+package de.hexix;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gemeinsamer Cache für Artikeltexte, geladen wird über den {@link ArticleFetcher}.
+ * <p>
+ * Schlüssel ist die normalisierte URL (ohne Fragment und Tracking-Parameter). Vor der Tabelle {@code article_cache}
+ * liegt eine begrenzte LRU-Stufe im Speicher. Nicht gefundene Seiten und Fehler werden mit kürzerer Laufzeit
+ * ebenfalls gespeichert, ein wegen ausgelasteter Domain ausgelassener Abruf nicht. Laufen mehrere Abrufe derselben URL gleichzeitig, wird die Seite trotzdem nur einmal geladen.
+ */
+@ApplicationScoped
+public class ArticleCache {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    private static final Set<String> TRACKING_PARAMETERS = Set.of("fbclid", "gclid", "mc_cid", "mc_eid", "at_medium", "at_campaign", "wt_mc", "ref");
+
+    @ConfigProperty(name = "feed2Mastodon.articleCache.maxEntries", defaultValue = "2000")
+    int maxEntries;
+
+    @ConfigProperty(name = "feed2Mastodon.articleCache.ttl", defaultValue = "7d")
+    Duration ttl;
+
+    @ConfigProperty(name = "feed2Mastodon.articleCache.notFoundTtl", defaultValue = "1d")
+    Duration notFoundTtl;
+
+    @ConfigProperty(name = "feed2Mastodon.articleCache.errorTtl", defaultValue = "30m")
+    Duration errorTtl;
+
+    @Inject
+    ArticleFetcher articleFetcher;
+
+    // Für Tests austauschbar
+    Clock clock = Clock.systemUTC();
+
+    private final Map<String, CachedArticle> memory = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, CachedArticle> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private final Map<String, CompletableFuture<CachedArticle>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Liefert den Artikeltext zu einer URL, aus dem Cache oder frisch geladen.
+     *
+     * @param url Die URL des Artikels.
+     * @return Der Text oder null, wenn die Seite nicht gefunden wurde, keinen Text hat oder nicht geladen werden konnte.
+     */
+    public String getArticle(final String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        final String key = normalizeUrl(url);
+        final Instant now = clock.instant();
+
+        CachedArticle cached;
+        synchronized (memory) {
+            cached = memory.get(key);
+        }
+        if (cached != null && cached.expiresAt().isAfter(now)) {
+            return cached.text();
+        }
+
+        final CompletableFuture<CachedArticle> future = new CompletableFuture<>();
+        final CompletableFuture<CachedArticle> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            // Dieselbe URL wird gerade von einem anderen Thread geladen
+            return running.join().text();
+        }
+        try {
+            cached = load(key, url, now);
+            if (cached.expiresAt().isAfter(now)) {
+                synchronized (memory) {
+                    memory.put(key, cached);
+                }
+            }
+            future.complete(cached);
+            return cached.text();
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    private CachedArticle load(final String key, final String url, final Instant now) {
+        final CachedArticle persisted = findPersisted(key, now);
+        if (persisted != null) {
+            return persisted;
+        }
+        final JsoupParser.ArticleResult result = articleFetcher.fetch(url);
+        if (Thread.currentThread().isInterrupted()) {
+            // Abgebrochen (z.B. Frist überschritten): das Ergebnis sagt nichts über die Seite aus und wird nicht gespeichert
+            throw new CancellationException("Abruf von " + url + " abgebrochen");
+        }
+        if (result.status() == JsoupParser.ArticleStatus.BUSY) {
+            // Beim nächsten Aufruf erneut versuchen, statt die URL für errorTtl zu sperren
+            return new CachedArticle(null, now);
+        }
+        final Instant expiresAt = now.plus(switch (result.status()) {
+            case OK, EMPTY -> ttl;
+            case NOT_FOUND -> notFoundTtl;
+            case ERROR, BUSY -> errorTtl;
+        });
+        try {
+            persist(key, result, expiresAt);
+        } catch (Exception e) {
+            LOG.warnf("Artikel für %s konnte nicht im Cache gespeichert werden: %s", key, e.getMessage());
+        }
+        return new CachedArticle(result.text(), expiresAt);
+    }
+
+    @Transactional
+    CachedArticle findPersisted(final String key, final Instant now) {
+        final ArticleCacheEntry entry = ArticleCacheEntry.findById(key);
+        if (entry == null || !entry.getExpiresAt().isAfter(now)) {
+            return null;
+        }
+        return new CachedArticle(entry.getContent(), entry.getExpiresAt());
+    }
+
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    void persist(final String key, final JsoupParser.ArticleResult result, final Instant expiresAt) {
+        ArticleCacheEntry.upsert(key, result, expiresAt);
+    }
+
+    /**
+     * Löscht abgelaufene Einträge aus der Tabelle.
+     */
+    @Transactional
+    public void purgeExpired() {
+        final long deleted = ArticleCacheEntry.deleteExpired(clock.instant());
+        if (deleted > 0) {
+            LOG.infof("%d abgelaufene Artikel aus dem Cache gelöscht", deleted);
+        }
+    }
+
+    /**
+     * Normalisiert eine URL für den Cache-Schlüssel: Schema und Host klein, ohne Standard-Port, Fragment und Tracking-Parameter.
+     *
+     * @param url Die URL.
+     * @return Die normalisierte URL oder die Eingabe, wenn sie sich nicht parsen lässt.
+     */
+    static String normalizeUrl(final String url) {
+        try {
+            final URI uri = new URI(url.trim());
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return url.trim();
+            }
+            final String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+            final int port = uri.getPort();
+            final boolean defaultPort = port == -1 || ("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443);
+
+            final StringBuilder sb = new StringBuilder(scheme).append("://").append(uri.getHost().toLowerCase(Locale.ROOT));
+            if (!defaultPort) {
+                sb.append(':').append(port);
+            }
+            sb.append(uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath());
+
+            if (uri.getRawQuery() != null) {
+                final StringJoiner query = new StringJoiner("&");
+                for (String parameter : uri.getRawQuery().split("&")) {
+                    final String name = parameter.split("=", 2)[0].toLowerCase(Locale.ROOT);
+                    if (!parameter.isEmpty() && !name.startsWith("utm_") && !TRACKING_PARAMETERS.contains(name)) {
+                        query.add(parameter);
+                    }
+                }
+                if (query.length() > 0) {
+                    sb.append('?').append(query);
+                }
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            return url.trim();
+        }
+    }
+
+    record CachedArticle(String text, Instant expiresAt) {}
+}
@@ -0,0 +1,80 @@
+package de.hexix;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Persistente Stufe des {@link ArticleCache}.
+ */
+@Entity
+@Table(name = "article_cache")
+public class ArticleCacheEntry extends PanacheEntityBase {
+
+    @Id
+    @Column(name = "url_key", columnDefinition = "TEXT")
+    private String urlKey;
+
+    @Column(name = "content", columnDefinition = "TEXT")
+    private String content;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private JsoupParser.ArticleStatus status;
+
+    @Column(name = "fetched_at", nullable = false)
+    private Instant fetchedAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    public ArticleCacheEntry() {
+    }
+
+    /**
+     * Legt einen Eintrag an oder überschreibt ihn, auch wenn ein paralleler Abruf ihn gerade erst angelegt hat.
+     */
+    public static void upsert(final String urlKey, final JsoupParser.ArticleResult result, final Instant expiresAt) {
+        getEntityManager().createNativeQuery("""
+                        INSERT INTO article_cache (url_key, content, status, fetched_at, expires_at)
+                        VALUES (?1, ?2, ?3, NOW(), ?4)
+                        ON CONFLICT (url_key) DO UPDATE
+                        SET content = EXCLUDED.content, status = EXCLUDED.status, fetched_at = EXCLUDED.fetched_at, expires_at = EXCLUDED.expires_at
+                        """)
+                .setParameter(1, urlKey)
+                .setParameter(2, result.text())
+                .setParameter(3, result.status().name())
+                .setParameter(4, expiresAt)
+                .executeUpdate();
+    }
+
+    public static long deleteExpired(final Instant now) {
+        return delete("expiresAt < ?1", now);
+    }
+
+    public String getUrlKey() {
+        return urlKey;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public JsoupParser.ArticleStatus getStatus() {
+        return status;
+    }
+
+    public Instant getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,98 @@
+package de.hexix;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lädt Artikeltexte parallel auf virtuellen Threads über den {@link ArticleCache}.
+ * Die Höflichkeitsregeln pro Domain setzt der {@link ArticleFetcher} durch, hier wird nur parallelisiert.
+ * Aufrufer sollen dabei keine Datenbanktransaktion offen halten.
+ */
+@ApplicationScoped
+public class ArticleExtractionService {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    @ConfigProperty(name = "feed2Mastodon.articleFetch.deadline", defaultValue = "60s")
+    Duration deadline;
+
+    @Inject
+    ArticleCache articleCache;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Lädt einen Artikeltext asynchron.
+     * <p>
+     * Anders als bei {@link java.util.concurrent.CompletableFuture} unterbricht {@code cancel(true)} hier den virtuellen Thread.
+     * Ein dabei blockierender Socket wird vom JDK geschlossen, Verbindung und Thread werden also sofort frei.
+     *
+     * @param url Die URL des Artikels.
+     * @return Der Text oder null, wenn nichts extrahiert werden konnte.
+     */
+    public Future<String> getArticleAsync(final String url) {
+        return executor.submit(() -> articleCache.getArticle(url));
+    }
+
+    /**
+     * Lädt alle Artikeltexte parallel und wartet höchstens {@link #deadline} auf alle zusammen.
+     *
+     * @param urls Die URLs, doppelte werden nur einmal geladen.
+     * @return Die gefundenen Texte pro URL; URLs ohne Text oder nach Fristablauf fehlen.
+     */
+    public Map<String, String> getArticles(final Collection<String> urls) {
+        final Map<String, Future<String>> futures = new HashMap<>();
+        for (String url : new LinkedHashSet<>(urls)) {
+            futures.put(url, getArticleAsync(url));
+        }
+
+        final long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        final Map<String, String> articles = new HashMap<>();
+        for (Map.Entry<String, Future<String>> entry : futures.entrySet()) {
+            try {
+                final long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+                final String article = entry.getValue().get(remaining, TimeUnit.NANOSECONDS);
+                if (article != null) {
+                    articles.put(entry.getKey(), article);
+                }
+            } catch (TimeoutException e) {
+                // Unterbricht den Abruf, statt ihn im Hintergrund weiterlaufen zu lassen
+                entry.getValue().cancel(true);
+                LOG.debugf("Artikel %s nicht innerhalb der Frist geladen", entry.getKey());
+            } catch (ExecutionException e) {
+                LOG.debugf("Artikel %s konnte nicht geladen werden: %s", entry.getKey(), e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.values().forEach(future -> future.cancel(true));
+                break;
+            }
+        }
+        return articles;
+    }
+}
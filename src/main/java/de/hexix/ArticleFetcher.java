@@ -0,0 +1,86 @@
+package de.hexix;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lädt Artikel über {@link JsoupParser} und hält sich dabei pro Domain an Grenzen:
+ * höchstens {@link #maxPerDomain} gleichzeitige Abrufe und mindestens {@link #minSpacing} zwischen zwei Anfragen.
+ * Dazu kommen Timeout und maximale Seitengröße.
+ */
+@ApplicationScoped
+public class ArticleFetcher {
+
+    @ConfigProperty(name = "feed2Mastodon.articleFetch.maxPerDomain", defaultValue = "2")
+    int maxPerDomain;
+
+    @ConfigProperty(name = "feed2Mastodon.articleFetch.minSpacing", defaultValue = "500ms")
+    Duration minSpacing;
+
+    @ConfigProperty(name = "feed2Mastodon.articleFetch.timeout", defaultValue = "10s")
+    Duration timeout;
+
+    @ConfigProperty(name = "feed2Mastodon.articleFetch.maxBodySize", defaultValue = "2097152")
+    int maxBodySize;
+
+    private final Map<String, Semaphore> domainLimits = new ConcurrentHashMap<>();
+    // Frühester Zeitpunkt (System.nanoTime) für die nächste Anfrage pro Domain
+    private final Map<String, AtomicLong> nextSlots = new ConcurrentHashMap<>();
+
+    /**
+     * Lädt einen Artikel und blockiert, bis die Domain wieder an der Reihe ist. Gedacht für virtuelle Threads.
+     *
+     * @param url Die URL des Artikels.
+     * @return Das Ergebnis des Abrufs.
+     */
+    public JsoupParser.ArticleResult fetch(final String url) {
+        final String domain = domainOf(url);
+        final Semaphore semaphore = domainLimits.computeIfAbsent(domain, d -> new Semaphore(maxPerDomain));
+        try {
+            if (!semaphore.tryAcquire(timeout.toMillis() * 2, TimeUnit.MILLISECONDS)) {
+                return new JsoupParser.ArticleResult(null, JsoupParser.ArticleStatus.BUSY);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new JsoupParser.ArticleResult(null, JsoupParser.ArticleStatus.ERROR);
+        }
+        try {
+            awaitSlot(domain);
+            return JsoupParser.fetchArticle(url, (int) timeout.toMillis(), maxBodySize);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new JsoupParser.ArticleResult(null, JsoupParser.ArticleStatus.ERROR);
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    private void awaitSlot(final String domain) throws InterruptedException {
+        final AtomicLong nextSlot = nextSlots.computeIfAbsent(domain, d -> new AtomicLong(System.nanoTime()));
+        final long spacing = minSpacing.toNanos();
+        // Slot reservieren, dann bis zu dessen Beginn warten
+        final long slot = nextSlot.getAndUpdate(next -> Math.max(next, System.nanoTime()) + spacing);
+        final long waitNanos = slot - System.nanoTime();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private static String domainOf(final String url) {
+        try {
+            final String host = new URI(url.trim()).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : url;
+        } catch (Exception e) {
+            return url;
+        }
+    }
+}
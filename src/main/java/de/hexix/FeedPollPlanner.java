@@ -0,0 +1,217 @@
+package de.hexix;
+
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Plant, wann welcher Feed als Nächstes abgerufen wird.
+ * <p>
+ * Pro Feed wird das typische Veröffentlichungsintervall als gleitender Mittelwert (EWMA) gelernt,
+ * zuerst aus {@link PostedEntry#getPostedAt()} und danach aus den Veröffentlichungsdaten der Feed-Einträge.
+ * Abgefragt wird etwa doppelt so oft, wie der Feed veröffentlicht. Feeds ohne Neuigkeiten oder mit Fehlern
+ * werden exponentiell seltener abgerufen, Feeds mit mehreren neuen Einträgen auf einmal sofort wieder häufiger.
+ * Wurden Einträge nur wegen des Gemini-Kontingents zurückgestellt, wird der Feed zum nächsten freien Platz erneut abgerufen.
+ */
+@ApplicationScoped
+public class FeedPollPlanner {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    // Gewicht eines neuen Messwerts im gleitenden Mittelwert
+    static final double EWMA_ALPHA = 0.3;
+    // Ab so vielen Leerläufen/Fehlern in Folge wird nicht weiter verdoppelt (danach greift ohnehin maxInterval)
+    static final int MAX_BACKOFF_EXPONENT = 8;
+    // So viele Zeitstempel werden zum Anlernen berücksichtigt
+    static final int LEARN_SAMPLE_SIZE = 20;
+
+    @ConfigProperty(name = "feed2Mastodon.poll.minInterval", defaultValue = "2m")
+    Duration minInterval;
+
+    @ConfigProperty(name = "feed2Mastodon.poll.maxInterval", defaultValue = "6h")
+    Duration maxInterval;
+
+    @ConfigProperty(name = "feed2Mastodon.poll.defaultInterval", defaultValue = "10m")
+    Duration defaultInterval;
+
+    private final Map<Long, PollState> states = new HashMap<>();
+    // Enthält auch veraltete Einträge; gültig ist nur der, dessen Zeit mit PollState.nextDue übereinstimmt
+    private final PriorityQueue<ScheduledPoll> queue = new PriorityQueue<>(Comparator.comparing(ScheduledPoll::due));
+
+    @Transactional
+    void onStart(@Observes StartupEvent ev) {
+        final List<MonitoredFeed> feeds = MonitoredFeed.<MonitoredFeed>find("isActive", true).list();
+        final Instant now = Instant.now();
+        for (MonitoredFeed feed : feeds) {
+            final Duration learned = medianGap(PostedEntry.findRecentPostedAt(feed.getId(), LEARN_SAMPLE_SIZE));
+            synchronized (this) {
+                final PollState state = stateFor(feed.getId(), now);
+                if (learned != null) {
+                    state.ewmaSeconds = learned.toSeconds();
+                }
+            }
+        }
+        LOG.infof("Abrufplanung für %d Feeds angelernt", feeds.size());
+    }
+
+    /**
+     * Liefert alle Feeds, die jetzt abgerufen werden sollen.
+     * Neue Feeds sind sofort fällig, nicht mehr aktive Feeds werden aus der Planung entfernt.
+     * Damit ein Feed nicht verloren geht, falls sein Ergebnis nie gemeldet wird, wird er vorläufig neu eingeplant.
+     *
+     * @param activeFeedIds Die IDs aller aktiven Feeds.
+     * @param now           Der aktuelle Zeitpunkt.
+     * @return Die IDs der fälligen Feeds.
+     */
+    public synchronized List<Long> takeDue(final Collection<Long> activeFeedIds, final Instant now) {
+        final Set<Long> active = new HashSet<>(activeFeedIds);
+        states.keySet().retainAll(active);
+        active.forEach(feedId -> stateFor(feedId, now));
+
+        final List<Long> due = new ArrayList<>();
+        while (!queue.isEmpty() && !queue.peek().due().isAfter(now)) {
+            final ScheduledPoll poll = queue.poll();
+            final PollState state = states.get(poll.feedId());
+            if (state == null || !state.nextDue.equals(poll.due())) {
+                continue;
+            }
+            due.add(poll.feedId());
+            schedule(poll.feedId(), state, now.plus(currentInterval(state)));
+        }
+        return due;
+    }
+
+    /**
+     * Wertet das Ergebnis eines Abrufs aus und plant den nächsten Abruf.
+     *
+     * @param feedId     Die ID des Feeds.
+     * @param failed     true, wenn der Abruf fehlgeschlagen ist.
+     * @param newEntries Anzahl der neu geposteten Einträge.
+     * @param entryDates Veröffentlichungsdaten der Einträge im Feed-Dokument (leer bei 304 oder Fehler).
+     * @param now        Der aktuelle Zeitpunkt.
+     * @return Der Zeitpunkt des nächsten Abrufs.
+     */
+    public synchronized Instant record(final Long feedId, final boolean failed, final int newEntries,
+                                       final List<Instant> entryDates, final Instant now) {
+        final PollState state = stateFor(feedId, now);
+        if (failed) {
+            state.failures++;
+        } else {
+            state.failures = 0;
+            learn(state, entryDates);
+            if (newEntries > 0) {
+                state.idle = 0;
+            } else {
+                state.idle++;
+            }
+        }
+
+        // Mehrere neue Einträge auf einmal: der Feed ist gerade aktiv, also bald wieder nachsehen
+        final Duration interval = newEntries > 1 ? minInterval : currentInterval(state);
+        schedule(feedId, state, now.plus(interval));
+        LOG.debugf("Feed %d: nächster Abruf in %s (Leerläufe %d, Fehler %d)", feedId, interval, state.idle, state.failures);
+        return state.nextDue;
+    }
+
+    /**
+     * Plant einen Feed, dessen neue Einträge auf das Gemini-Kontingent warten. Er gilt nicht als leer gelaufen,
+     * sondern wird abgerufen, sobald das Kontingent wieder reicht, frühestens nach {@link #minInterval}.
+     *
+     * @param retryAfter Die Wartezeit bis zum nächsten freien Gemini-Platz.
+     * @return Der Zeitpunkt des nächsten Abrufs.
+     */
+    public synchronized Instant recordDeferred(final Long feedId, final List<Instant> entryDates, final Duration retryAfter,
+                                               final Instant now) {
+        final PollState state = stateFor(feedId, now);
+        state.failures = 0;
+        state.idle = 0;
+        learn(state, entryDates);
+        final Duration interval = retryAfter.compareTo(minInterval) > 0 ? retryAfter : minInterval;
+        schedule(feedId, state, now.plus(interval));
+        LOG.debugf("Feed %d: Einträge warten auf Gemini, nächster Abruf in %s", feedId, interval);
+        return state.nextDue;
+    }
+
+    private static void learn(final PollState state, final List<Instant> entryDates) {
+        final Duration gap = medianGap(entryDates);
+        if (gap != null) {
+            state.ewmaSeconds = state.ewmaSeconds == null
+                    ? gap.toSeconds()
+                    : (long) (EWMA_ALPHA * gap.toSeconds() + (1 - EWMA_ALPHA) * state.ewmaSeconds);
+        }
+    }
+
+    Duration currentInterval(final PollState state) {
+        Duration base = state.ewmaSeconds == null ? defaultInterval : Duration.ofSeconds(state.ewmaSeconds / 2);
+        final int exponent = Math.min(MAX_BACKOFF_EXPONENT, state.failures + state.idle);
+        base = base.multipliedBy(1L << exponent);
+        if (base.compareTo(minInterval) < 0) {
+            return minInterval;
+        }
+        return base.compareTo(maxInterval) > 0 ? maxInterval : base;
+    }
+
+    /**
+     * Berechnet den mittleren Abstand (Median) zwischen aufeinanderfolgenden Zeitpunkten.
+     *
+     * @param instants Die Zeitpunkte in beliebiger Reihenfolge, null-Werte werden ignoriert.
+     * @return Der Median der Abstände oder null, wenn es weniger als zwei Zeitpunkte gibt.
+     */
+    static Duration medianGap(final Collection<Instant> instants) {
+        final List<Instant> sorted = instants.stream()
+                .filter(Objects::nonNull)
+                .sorted(Comparator.reverseOrder())
+                .limit(LEARN_SAMPLE_SIZE)
+                .toList();
+        if (sorted.size() < 2) {
+            return null;
+        }
+        final long[] gaps = new long[sorted.size() - 1];
+        for (int i = 1; i < sorted.size(); i++) {
+            gaps[i - 1] = Duration.between(sorted.get(i), sorted.get(i - 1)).toSeconds();
+        }
+        Arrays.sort(gaps);
+        return Duration.ofSeconds(gaps[gaps.length / 2]);
+    }
+
+    private PollState stateFor(final Long feedId, final Instant now) {
+        PollState state = states.get(feedId);
+        if (state == null) {
+            state = new PollState();
+            states.put(feedId, state);
+            schedule(feedId, state, now);
+        }
+        return state;
+    }
+
+    private void schedule(final Long feedId, final PollState state, final Instant due) {
+        state.nextDue = due;
+        queue.add(new ScheduledPoll(feedId, due));
+    }
+
+    static final class PollState {
+        Long ewmaSeconds;
+        int idle;
+        int failures;
+        Instant nextDue;
+    }
+
+    private record ScheduledPoll(Long feedId, Instant due) {}
+}
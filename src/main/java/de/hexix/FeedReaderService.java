@@ -4,23 +4,231 @@ import com.rometools.rome.feed.synd.SyndEntry;
 import com.rometools.rome.feed.synd.SyndFeed;
 import com.rometools.rome.io.SyndFeedInput;
 import com.rometools.rome.io.XmlReader;
+import de.hexix.util.HashUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
 
-import java.net.URL;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @ApplicationScoped
 public class FeedReaderService {
 
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    @ConfigProperty(name = "feed2Mastodon.feedFetch.connectTimeout", defaultValue = "5s")
+    Duration connectTimeout;
+
+    @ConfigProperty(name = "feed2Mastodon.feedFetch.readTimeout", defaultValue = "20s")
+    Duration readTimeout;
+
+    /**
+     * Maximale Gesamtdauer für einen einzelnen Feed (inklusive Warten auf einen freien Host-Slot und Parsen).
+     */
+    @ConfigProperty(name = "feed2Mastodon.feedFetch.deadline", defaultValue = "60s")
+    Duration deadline;
+
+    @ConfigProperty(name = "feed2Mastodon.feedFetch.maxPerHost", defaultValue = "2")
+    int maxPerHost;
+
+    /**
+     * Ab dieser Größe in Bytes wird ein Feed per StAX gestreamt statt als DOM geparst.
+     */
+    @ConfigProperty(name = "feed2Mastodon.feedFetch.streamingThreshold", defaultValue = "1048576")
+    int streamingThreshold;
+
+    /**
+     * Beim Streamen wird nach so vielen Einträgen in Folge, die älter als die Grenze des Feeds sind, abgebrochen.
+     */
+    @ConfigProperty(name = "feed2Mastodon.feedFetch.maxConsecutiveOld", defaultValue = "20")
+    int maxConsecutiveOld;
+
+    // Ein Semaphor pro Host, damit viele Feeds desselben Servers diesen nicht gleichzeitig abfragen.
+    private final Map<String, Semaphore> hostLimits = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
     public List<SyndEntry> readFeedEntries(String feedUrl) {
-        try (java.io.InputStream is = new java.net.URI(feedUrl).toURL().openStream();
-             XmlReader reader = new XmlReader(is)) {
-            SyndFeed feed = new SyndFeedInput().build(reader);
-            return feed.getEntries();
+        try {
+            return fetchAndParse(new FeedRequest(feedUrl, null, null, null, null)).entries();
         } catch (Exception e) {
             return Collections.emptyList();
         }
     }
+
+    /**
+     * Ruft alle übergebenen Feeds parallel auf virtuellen Threads ab.
+     * Pro Host laufen höchstens {@link #maxPerHost} Abrufe gleichzeitig, jeder Feed muss innerhalb von {@link #deadline} fertig sein.
+     * Die Gesamtdauer entspricht damit ungefähr der des langsamsten Feeds und nicht der Summe aller Feeds.
+     * Gespeicherte ETag-/Last-Modified-Werte werden als bedingter GET mitgeschickt; bei 304 oder unverändertem Inhalt wird nicht geparst.
+     *
+     * @param feeds Die abzurufenden Feeds.
+     * @return Ein Ergebnis pro Feed in der Reihenfolge der Eingabe. Fehlgeschlagene Feeds liefern eine leere Eintragsliste.
+     */
+    public List<FeedResult> readAllFeedEntries(List<MonitoredFeed> feeds) {
+        List<Future<FeedResult>> futures = new ArrayList<>(feeds.size());
+        for (MonitoredFeed feed : feeds) {
+            final Instant notBefore = feed.getHighWaterMarkAt() != null ? feed.getHighWaterMarkAt()
+                    : feed.getAddDate() != null ? feed.getAddDate().atZone(ZoneId.systemDefault()).toInstant() : null;
+            final FeedRequest request = new FeedRequest(feed.getFeedUrl(), feed.getEtag(), feed.getLastModified(), feed.getContentHash(), notBefore);
+            futures.add(executor.submit(() -> fetchWithHostLimit(request)));
+        }
+
+        final long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        List<FeedResult> results = new ArrayList<>(feeds.size());
+        for (int i = 0; i < feeds.size(); i++) {
+            final MonitoredFeed feed = feeds.get(i);
+            final Future<FeedResult> future = futures.get(i);
+            try {
+                final long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+                results.add(future.get(remaining, TimeUnit.NANOSECONDS).withFeed(feed));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                LOG.warnf("Feed %s hat die Frist von %s überschritten", feed.getFeedUrl(), deadline);
+                results.add(FeedResult.failed(feed));
+            } catch (ExecutionException e) {
+                LOG.warnf("Feed %s konnte nicht gelesen werden: %s", feed.getFeedUrl(), e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                results.add(FeedResult.failed(feed));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                results.add(FeedResult.failed(feed));
+            }
+        }
+        return results;
+    }
+
+    private FeedResult fetchWithHostLimit(FeedRequest request) throws Exception {
+        final String host = hostOf(request.feedUrl());
+        final Semaphore semaphore = hostLimits.computeIfAbsent(host, h -> new Semaphore(maxPerHost));
+        if (!semaphore.tryAcquire(deadline.toMillis(), TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException("Kein freier Slot für Host " + host);
+        }
+        try {
+            return fetchAndParse(request);
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    private FeedResult fetchAndParse(FeedRequest request) throws Exception {
+        final URLConnection connection = new URI(request.feedUrl()).toURL().openConnection();
+        connection.setConnectTimeout((int) connectTimeout.toMillis());
+        connection.setReadTimeout((int) readTimeout.toMillis());
+
+        if (connection instanceof HttpURLConnection http) {
+            if (request.etag() != null) {
+                http.setRequestProperty("If-None-Match", request.etag());
+            }
+            if (request.lastModified() != null) {
+                http.setRequestProperty("If-Modified-Since", request.lastModified());
+            }
+            if (http.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                http.disconnect();
+                LOG.debugf("Feed %s unverändert (304)", request.feedUrl());
+                return FeedResult.notModified(request);
+            }
+        }
+
+        final String etag = connection.getHeaderField("ETag");
+        final String lastModified = connection.getHeaderField("Last-Modified");
+
+        final byte[] body;
+        try (InputStream is = connection.getInputStream()) {
+            body = is.readAllBytes();
+        }
+
+        // Manche Server liefern weder ETag noch Last-Modified, der Inhalt ist aber trotzdem unverändert.
+        final String contentHash = HashUtil.sha256(body);
+        if (contentHash.equals(request.contentHash())) {
+            LOG.debugf("Feed %s unverändert (gleicher Hash)", request.feedUrl());
+            return new FeedResult(null, Collections.emptyList(), false, true, etag, lastModified, contentHash);
+        }
+
+        if (body.length >= streamingThreshold) {
+            try {
+                final List<SyndEntry> entries = new StreamingFeedParser(request.notBefore(), maxConsecutiveOld).parse(new ByteArrayInputStream(body));
+                LOG.debugf("Feed %s (%d Bytes) gestreamt, %d Einträge übernommen", request.feedUrl(), body.length, entries.size());
+                return new FeedResult(null, entries, false, false, etag, lastModified, contentHash);
+            } catch (XMLStreamException e) {
+                LOG.warnf("Feed %s konnte nicht gestreamt werden, parse vollständig: %s", request.feedUrl(), e.getMessage());
+            }
+        }
+
+        try (XmlReader reader = new XmlReader(new ByteArrayInputStream(body), connection.getContentType(), true)) {
+            SyndFeed feed = new SyndFeedInput().build(reader);
+            return new FeedResult(null, feed.getEntries(), false, false, etag, lastModified, contentHash);
+        }
+    }
+
+    private static String hostOf(String feedUrl) {
+        try {
+            final String host = new URI(feedUrl).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : feedUrl;
+        } catch (Exception e) {
+            return feedUrl;
+        }
+    }
+
+    private record FeedRequest(String feedUrl, String etag, String lastModified, String contentHash, Instant notBefore) {}
+
+    /**
+     * Ergebnis eines Feed-Abrufs.
+     *
+     * @param feed         Der abgerufene Feed.
+     * @param entries      Die geparsten Einträge (leer, wenn der Abruf fehlgeschlagen ist oder sich nichts geändert hat).
+     * @param failed       true, wenn der Abruf fehlgeschlagen ist oder die Frist überschritten wurde.
+     * @param notModified  true bei 304 oder wenn der Inhalt denselben Hash wie beim letzten Abruf hat.
+     * @param etag         Der ETag der Antwort, um ihn beim nächsten Abruf mitzuschicken.
+     * @param lastModified Der Last-Modified-Header der Antwort.
+     * @param contentHash  SHA-256 des Feed-Inhalts.
+     */
+    public record FeedResult(MonitoredFeed feed, List<SyndEntry> entries, boolean failed, boolean notModified,
+                             String etag, String lastModified, String contentHash) {
+
+        static FeedResult failed(MonitoredFeed feed) {
+            return new FeedResult(feed, Collections.emptyList(), true, false, null, null, null);
+        }
+
+        static FeedResult notModified(FeedRequest request) {
+            return new FeedResult(null, Collections.emptyList(), false, true, request.etag(), request.lastModified(), request.contentHash());
+        }
+
+        FeedResult withFeed(MonitoredFeed feed) {
+            return new FeedResult(feed, entries, failed, notModified, etag, lastModified, contentHash);
+        }
+    }
 }
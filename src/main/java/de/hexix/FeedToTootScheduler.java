@@ -1,12 +1,17 @@
 package de.hexix;
 
-import de.hexix.ai.GeminiRequestEntity;
+import de.hexix.ai.EmbeddingBatchClient;
+import de.hexix.ai.EmbeddingCache;
+import de.hexix.ai.GeminiRateLimiter;
 import de.hexix.ai.GenerateEmbeddingTextInput;
 import de.hexix.ai.GenerateTextFromTextInput;
-import de.hexix.ai.OllamaRestClient;
+import de.hexix.ai.TextChunker;
 import de.hexix.ai.dto.EmbeddingRequest;
-import de.hexix.ai.dto.EmbeddingResponse;
 import de.hexix.mastodon.Embedding;
+import de.hexix.mastodon.EmbeddingVectorBackfill;
+import de.hexix.mastodon.MastodonStreamProcessor;
+import de.hexix.mastodon.ProfileContributionChanged;
+import de.hexix.mastodon.ProfileVectorService;
 import de.hexix.mastodon.PublicMastodonPostEntity;
 import de.hexix.mastodon.PublicMastodonPostRepository;
 import de.hexix.mastodon.StarredMastodonPosts;
@@ -15,25 +20,30 @@ import de.hexix.mastodon.TextEntityRepository;
 import de.hexix.mastodon.api.MastodonDtos;
 import de.hexix.mastodon.resource.MastodonClient;
 import de.hexix.urlshortener.UrlShortenerService;
+import de.hexix.util.DurationLogger;
+import de.hexix.util.VectorMath;
 import de.hexix.util.VektorUtil;
 import com.rometools.rome.feed.synd.SyndEntry;
 import io.quarkus.scheduler.Scheduled;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 import org.jboss.logging.Logger;
 import org.jsoup.Jsoup;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Objects;
+import java.util.Set;
 import java.util.StringJoiner;
 import java.util.concurrent.TimeUnit;
 
@@ -41,9 +51,62 @@ import java.util.concurrent.TimeUnit;
 public class FeedToTootScheduler {
 
     final Logger LOG = Logger.getLogger(this.getClass());
+
+    /**
+     * Für einen KI-Toot zusätzlich zum Eingabetext reservierte Token: Prompt (geschätzt) und maxOutputTokens der Antwort.
+     */
+    private static final int AI_TOOT_RESERVED_TOKENS = 1000;
     @Inject
     FeedReaderService feedReader;
 
+    @Inject
+    PostedEntryGuidCache postedEntryGuidCache;
+
+    @Inject
+    FeedPollPlanner feedPollPlanner;
+
+    @Inject
+    StatusOutboxService statusOutboxService;
+
+    @Inject
+    ArticleCache articleCache;
+
+    @Inject
+    ArticleExtractionService articleExtractionService;
+
+    @Inject
+    SiteExtractorLoader siteExtractorLoader;
+
+    @Inject
+    EmbeddingVectorBackfill embeddingVectorBackfill;
+
+    @Inject
+    ProfileVectorService profileVectorService;
+
+    @Inject
+    PublicPostPipeline publicPostPipeline;
+
+    @Inject
+    EmbeddingBatchClient embeddingBatchClient;
+
+    @Inject
+    EmbeddingCache embeddingCache;
+
+    @Inject
+    TextChunker textChunker;
+
+    @Inject
+    GeminiRateLimiter geminiRateLimiter;
+
+    @Inject
+    StreamAdmissionFilter streamAdmissionFilter;
+
+    @Inject
+    MastodonStreamProcessor mastodonStreamProcessor;
+
+    @Inject
+    Event<ProfileContributionChanged> profileContributionChanged;
+
     @Inject
     @RestClient
     MastodonClient mastodonClient;
@@ -72,10 +135,19 @@ public class FeedToTootScheduler {
     @ConfigProperty(name = "feed2Mastodon.minCosDistance", defaultValue = "0.825")
     Double minCosDistance;
 
+    /**
+     * "db" bewertet die Posts per pgvector in PostgreSQL, "jvm" lädt alle Vektoren und rechnet hier.
+     */
+    @ConfigProperty(name = "feed2Mastodon.recommendation.scoring", defaultValue = "db")
+    String recommendationScoring;
+
+    /**
+     * Höchstens so viele Kandidaten werden pro Durchlauf geboostet (0 = alle über der Schwelle), nur im Modus "db".
+     */
+    @ConfigProperty(name = "feed2Mastodon.recommendation.topK", defaultValue = "0")
+    int recommendationTopK;
+
 
-    @Inject
-    @RestClient
-    OllamaRestClient ollamaRestClient;
     @Inject
     GenerateEmbeddingTextInput generateEmbeddingTextInput;
 
@@ -129,49 +201,116 @@ public class FeedToTootScheduler {
         return tootText;
     }
 
-    @Scheduled(every = "10m",delay = 30, delayUnit = TimeUnit.SECONDS,  concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
-        // Alle 10 Minuten ausführen
-//    @Transactional
-    void checkFeedAndPost() {
-        List<MonitoredFeed> activeFeeds = MonitoredFeed.findAll().list();
-
-        for (MonitoredFeed feed : activeFeeds) {
-            LOG.info("Verarbeite Feed: " + feed.getFeedUrl());
-            List<SyndEntry> entriesFromFeed = feedReader.readFeedEntries(feed.getFeedUrl());
+    /**
+     * Ruft jede Minute nur die Feeds ab, die laut {@link FeedPollPlanner} gerade fällig sind.
+     */
+    @Scheduled(every = "1m",delay = 30, delayUnit = TimeUnit.SECONDS,  concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void pollDueFeeds() {
+        final List<MonitoredFeed> activeFeeds = MonitoredFeed.<MonitoredFeed>find("isActive", true).list();
+        final List<Long> dueFeedIds = feedPollPlanner.takeDue(activeFeeds.stream().map(MonitoredFeed::getId).toList(), Instant.now());
+        if (dueFeedIds.isEmpty()) {
+            return;
+        }
+        processFeeds(activeFeeds.stream().filter(feed -> dueFeedIds.contains(feed.getId())).toList());
+    }
 
-            entriesFromFeed = entriesFromFeed.stream().filter(syndEntry -> {
+    /**
+     * Ruft sofort alle aktiven Feeds ab, unabhängig von der Planung.
+     */
+    void checkFeedAndPost() {
+        processFeeds(MonitoredFeed.<MonitoredFeed>find("isActive", true).list());
+    }
 
+    private void processFeeds(final List<MonitoredFeed> activeFeeds) {
+        // 1. Alle Feeds parallel abrufen, damit ein langsamer Feed die anderen nicht aufhält
+        final List<FeedReaderService.FeedResult> feedResults;
+        try (DurationLogger d = new DurationLogger("Abruf von " + activeFeeds.size() + " Feeds", LOG)) {
+            feedResults = feedReader.readAllFeedEntries(activeFeeds);
+        }
 
-                final LocalDateTime feedPublishedLocalDateTime = Optional.ofNullable(syndEntry.getPublishedDate()).orElse(syndEntry.getUpdatedDate()).toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
-                return feed.getAddDate().isBefore(feedPublishedLocalDateTime);
-            }).sorted(Comparator.comparing(syndEntry -> Optional.ofNullable(syndEntry.getPublishedDate()).orElse(syndEntry.getUpdatedDate()), Comparator.nullsLast(Comparator.naturalOrder()))).toList();
+        for (FeedReaderService.FeedResult feedResult : feedResults) {
+            final MonitoredFeed feed = feedResult.feed();
+            if (feedResult.failed()) {
+                feedPollPlanner.record(feed.getId(), true, 0, List.of(), Instant.now());
+                continue;
+            }
+            if (feedResult.notModified()) {
+                feedPollPlanner.record(feed.getId(), false, 0, List.of(), Instant.now());
+                LOG.debugf("Feed unverändert, überspringe: %s", feed.getFeedUrl());
+                // Bei gleichem Hash kann der Server trotzdem neue Validatoren geschickt haben
+                if (!Objects.equals(feed.getEtag(), feedResult.etag()) || !Objects.equals(feed.getLastModified(), feedResult.lastModified())) {
+                    saveFeedCacheValidators(feed.getId(), feedResult);
+                }
+                continue;
+            }
+            LOG.info("Verarbeite Feed: " + feed.getFeedUrl());
+            List<SyndEntry> entriesFromFeed = feedResult.entries();
+            // Wird gesetzt, wenn ein Eintrag auf einen späteren Lauf verschoben wird.
+            // Dann dürfen ETag/Hash nicht gespeichert werden, sonst würde der Feed beim nächsten Mal übersprungen.
+            boolean deferred = false;
+            // Wartezeit bis zum nächsten freien Gemini-Platz, wenn ein Eintrag deswegen zurückgestellt wurde
+            Duration geminiWait = null;
+            int newEntries = 0;
+            final List<Instant> entryDates = new ArrayList<>();
+
+            // Nur Einträge jenseits der Hochwassermarke betrachten; Vergleich auf Epoch-Millis ohne Zeitzonen-Umrechnung
+            final long highWaterMark = feed.getHighWaterMarkAt() != null
+                    ? feed.getHighWaterMarkAt().toEpochMilli()
+                    : feed.getAddDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            final List<SyndEntry> newerEntries = new ArrayList<>();
+            for (SyndEntry syndEntry : entriesFromFeed) {
+                final Date entryDate = entryDate(syndEntry);
+                if (entryDate == null) {
+                    // Ohne Datum lässt sich nichts entscheiden, die Duplikatprüfung greift trotzdem
+                    newerEntries.add(syndEntry);
+                    continue;
+                }
+                final long entryMillis = entryDate.getTime();
+                entryDates.add(entryDate.toInstant());
+                if (entryMillis > highWaterMark
+                        || (entryMillis == highWaterMark && !Objects.equals(entryGuid(syndEntry), feed.getHighWaterMarkGuid()))) {
+                    newerEntries.add(syndEntry);
+                }
+            }
+            // Sortiert werden nur noch die neuen Einträge, damit in chronologischer Reihenfolge gepostet wird
+            newerEntries.sort(Comparator.comparing(FeedToTootScheduler::entryDate, Comparator.nullsLast(Comparator.naturalOrder())));
+            entriesFromFeed = newerEntries;
+            // Neuester Eintrag, bis zu dem lückenlos alles verarbeitet wurde
+            SyndEntry highWaterMarkEntry = null;
 
             // Einträge umkehren, um sie in chronologischer Reihenfolge zu posten
 //            Collections.reverse(entriesFromFeed);
 
-            for (SyndEntry entry : entriesFromFeed) {
+            // 2. Bereits gepostete Einträge aus dem GUID-Cache, höchstens eine DB-Abfrage für alle Fehltreffer des Feeds
+            final Set<String> knownGuids = postedEntryGuidCache.findKnown(feed.getId(),
+                    entriesFromFeed.stream().map(FeedToTootScheduler::entryGuid).filter(Objects::nonNull).toList());
 
-                String entryGuid = entry.getUri() != null ? entry.getUri() : entry.getLink();
+            for (SyndEntry entry : entriesFromFeed) {
 
-                // 2. Prüfe in der DB, ob dieser Eintrag für diesen Feed bereits gepostet wurde
-                long count = PostedEntry.count("feed = ?1 and entryGuid = ?2", feed, entryGuid);
+                String entryGuid = entryGuid(entry);
 
-                if (count == 0) {
+                if (!knownGuids.contains(entryGuid)) {
                     // 3. Neuer Eintrag! Posten und in der DB vermerken.
                     LOG.debug("Neuer Eintrag gefunden in " + feed.getFeedUrl().substring(0, 25) + ": " + entry.getTitle());
 
                     MastodonDtos.StatusPayload statusPayload = new MastodonDtos.StatusPayload(getTootText(feed, entry, false), "unlisted", "de");
-                    PostedEntry newDbEntry = new PostedEntry();
+                    boolean isAiToot = false;
                     if (feed.getTryAi() != null && feed.getTryAi()) {
-                        final long countGeminiRequests = GeminiRequestEntity.countLast10Minutes(geminiModel);
+                        final String aiInput = getTootText(feed, entry, true);
 
-                        if (countGeminiRequests > 3) {
+                        // Kontingent wird im Speicher geprüft, ohne gemini_requests abzufragen
+                        final long tokens = GeminiRateLimiter.estimateTokens(aiInput) + AI_TOOT_RESERVED_TOKENS;
+                        if (!geminiRateLimiter.tryAcquire(geminiModel, tokens)) {
+                            if (geminiWait == null) {
+                                geminiWait = geminiRateLimiter.timeUntilAvailable(geminiModel, tokens);
+                            }
+                            deferred = true;
                             continue;
                         }
 
 
                         try {
-                            String aiToot = generateTextFromTextInput.getAiMessage(geminiModel, getTootText(feed, entry, true));
+                            String aiToot = generateTextFromTextInput.getAiMessage(geminiModel, aiInput);
 
                             int maxLength = 500;
 
@@ -182,7 +321,7 @@ public class FeedToTootScheduler {
 
                             if (aiToot.length() > 10 && aiToot.length() < maxLength) {
                                 statusPayload = new MastodonDtos.StatusPayload(aiToot, "public", "de");
-                                newDbEntry.setAiToot( true);
+                                isAiToot = true;
                             }
                         } catch (Exception e) {
                             LOG.error("Beim generieren einer KI Nachricht ist ein Fehler aufgetreten", e);
@@ -190,37 +329,126 @@ public class FeedToTootScheduler {
                     }
 
                     try {
-                        // An Mastodon senden
-                        if (!feed.isActive()) {
-                            continue;
+                        // In den Ausgang legen, gepostet wird unabhängig davon (siehe drainStatusOutbox)
+                        statusOutboxService.enqueue(feed, entryGuid, statusPayload, isAiToot);
+                        postedEntryGuidCache.markPosted(feed.getId(), entryGuid);
+                        knownGuids.add(entryGuid);
+                        newEntries++;
+                        if (!deferred && entryDate(entry) != null) {
+                            highWaterMarkEntry = entry;
                         }
-                        newDbEntry.setFeed( feed);
-                        newDbEntry.setEntryGuid( entryGuid);
-                        newDbEntry.setPostedAt( Instant.now());
-                        postAndPersist(statusPayload, newDbEntry);
                     } catch (Exception e) {
-                        LOG.error("Fehler beim Posten auf Mastodon für Feed " + feed.getFeedUrl() + ": " + e.getMessage(), e);
+                        LOG.error("Fehler beim Ablegen des Toots für Feed " + feed.getFeedUrl() + ": " + e.getMessage(), e);
+                        deferred = true;
                         // Hier wird die Schleife fortgesetzt, um andere Einträge/Feeds nicht zu blockieren
                     }
                 } else {
+                    if (!deferred && entryDate(entry) != null) {
+                        highWaterMarkEntry = entry;
+                    }
                     LOG.debug("Eintrag bereits gepostet: " + entry.getTitle() + " - " + feed.getFeedUrl().substring(0, 25) + " -");
                 }
             }
+
+            if (!deferred) {
+                saveFeedCacheValidators(feed.getId(), feedResult);
+            }
+            if (highWaterMarkEntry != null) {
+                saveHighWaterMark(feed.getId(), entryDate(highWaterMarkEntry).toInstant(), entryGuid(highWaterMarkEntry));
+            }
+            if (geminiWait != null) {
+                // Zurückgestellte Einträge sind Neuigkeiten, der Feed darf nicht als leer gelaufen seltener abgerufen werden
+                feedPollPlanner.recordDeferred(feed.getId(), entryDates, geminiWait, Instant.now());
+            } else {
+                feedPollPlanner.record(feed.getId(), false, newEntries, entryDates, Instant.now());
+            }
         }
         LOG.info("Job beendet.");
 
     }
 
     @Transactional
-    void postAndPersist(final MastodonDtos.StatusPayload statusPayload, final PostedEntry newDbEntry) {
-        MastodonDtos.MastodonStatus postedStatus = mastodonClient.postStatus("Bearer " + accessToken, statusPayload);
+    void saveFeedCacheValidators(final Long feedId, final FeedReaderService.FeedResult feedResult) {
+        final MonitoredFeed feed = MonitoredFeed.findById(feedId);
+        feed.setEtag(feedResult.etag());
+        feed.setLastModified(feedResult.lastModified());
+        feed.setContentHash(feedResult.contentHash());
+    }
+
+    /**
+     * Speichert die Hochwassermarke, sofern sie weiter vorne liegt als die gespeicherte.
+     */
+    @Transactional
+    void saveHighWaterMark(final Long feedId, final Instant highWaterMarkAt, final String highWaterMarkGuid) {
+        final MonitoredFeed feed = MonitoredFeed.findById(feedId);
+        if (feed.getHighWaterMarkAt() == null || highWaterMarkAt.isAfter(feed.getHighWaterMarkAt())) {
+            feed.setHighWaterMarkAt(highWaterMarkAt);
+            feed.setHighWaterMarkGuid(highWaterMarkGuid);
+        }
+    }
+
+    private static Date entryDate(final SyndEntry entry) {
+        return entry.getPublishedDate() != null ? entry.getPublishedDate() : entry.getUpdatedDate();
+    }
+
+    private static String entryGuid(final SyndEntry entry) {
+        return entry.getUri() != null ? entry.getUri() : entry.getLink();
+    }
+
+    @Scheduled(every = "24h", delay = 120, delayUnit = TimeUnit.SECONDS, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void purgeArticleCache() {
+        articleCache.purgeExpired();
+    }
+
+    @Scheduled(every = "24h", delay = 180, delayUnit = TimeUnit.SECONDS, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void purgeEmbeddingCache() {
+        embeddingCache.purgeExpired();
+    }
+
+    @Scheduled(every = "1h", delay = 60, delayUnit = TimeUnit.SECONDS, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void refreshAdmissionProfile() {
+        streamAdmissionFilter.refreshLexicalProfile();
+    }
+
+    @Scheduled(every = "1m", delay = 60, delayUnit = TimeUnit.SECONDS, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void persistStreamPositions() {
+        mastodonStreamProcessor.persistStreamPositions();
+    }
+
+    @Scheduled(every = "10m", delay = 5, delayUnit = TimeUnit.MINUTES, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void persistProfileSnapshot() {
+        profileVectorService.persistSnapshot();
+    }
+
+    // Verwirft Rundungsfehler der laufenden Summe
+    @Scheduled(every = "24h", delay = 24, delayUnit = TimeUnit.HOURS, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void rebuildProfileVector() {
+        profileVectorService.rebuild();
+    }
 
-        // 4. Den neuen Eintrag in der Datenbank speichern
-        newDbEntry.setMastodonStatusId( postedStatus.id());
+    @Scheduled(every = "1h", delay = 45, delayUnit = TimeUnit.SECONDS, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void backfillNativeVectors() {
+        embeddingVectorBackfill.backfill();
+    }
+
+    @Scheduled(every = "5m", delay = 60, delayUnit = TimeUnit.SECONDS, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void reloadSiteExtractors() {
+        siteExtractorLoader.reload();
+    }
 
-        newDbEntry.persist(); // Speichern!
+    @Scheduled(every = "1h", delay = 300, delayUnit = TimeUnit.SECONDS, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void logSiteExtractorStats() {
+        siteExtractorLoader.logStats();
+    }
+
+    @Scheduled(every = "15s", delay = 30, delayUnit = TimeUnit.SECONDS, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void drainStatusOutbox() {
+        statusOutboxService.drain();
+    }
 
-        LOG.info("Erfolgreich getootet und in DB gespeichert. Status-ID: " + postedStatus.id());
+    @Scheduled(every = "24h", delay = 240, delayUnit = TimeUnit.SECONDS, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void purgeFailedStatusOutbox() {
+        statusOutboxService.purgeFailed();
     }
 
     @Scheduled(every = "300s",delay = 30, delayUnit = TimeUnit.SECONDS, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
@@ -242,7 +470,7 @@ public class FeedToTootScheduler {
         final List<Embedding> embeddings = Embedding.<Embedding>find("text is null").list();
 
         embeddings.stream().filter(embedding -> embedding.getText() ==null).filter(embedding -> embedding.getUrl() != null).forEach(embedding -> {
-            final String article = JsoupParser.getArticle(embedding.getUrl());
+            final String article = articleCache.getArticle(embedding.getUrl());
             final TextEntity textEntity = new TextEntity(article);
             if(textEntity.getText() != null && !textEntity.getText().isBlank()){
                 textEntityRepository.persist(textEntity);
@@ -252,77 +480,108 @@ public class FeedToTootScheduler {
     }
 
 
+    /**
+     * Ein Post mit dem Inhaltsstand, für den gerade gerechnet wird, siehe {@link PublicMastodonPostEntity#getContentVersion()}.
+     */
+    record PostVersion(String mastodonId, int contentVersion) {
+
+        static PostVersion of(final PublicMastodonPostEntity post) {
+            return new PostVersion(post.getMastodonId(), post.getContentVersion());
+        }
+    }
+
     @Transactional
-    Map<String, List<EmbeddingRequest>> generateOllamaRequest() {
+    Map<PostVersion, List<EmbeddingRequest>> generateOllamaRequest() {
 
-        Map<String, List<EmbeddingRequest>> allRequests = new HashMap<>();
+        Map<PostVersion, List<EmbeddingRequest>> allRequests = new HashMap<>();
         final List<PublicMastodonPostEntity> nextPublicMastodonPost = publicMastodonPostRepository.findNextPublicMastodonPost();
 
         for (PublicMastodonPostEntity post : nextPublicMastodonPost) {
-
-            List<EmbeddingRequest> requests = new ArrayList<>();
-            if(post.getPostText() != null && !post.getPostText().getText().isBlank()) {
-                requests.add(new EmbeddingRequest(localModel, List.of(post.getPostText().getText()), true));
+            if (publicPostPipeline.isInFlight(post.getMastodonId())) {
+                continue;
             }
+            allRequests.put(PostVersion.of(post), createEmbeddingRequests(post));
+        }
 
+        return allRequests;
+    }
 
-            if (post.getUrlText() != null && post.getUrlText().getText() != null && !post.getUrlText().getText().isBlank()) {
-                final String urlText = post.getUrlText().getText();
-
-                final List<String> texte = StarredMastodonPosts.splitByLength(urlText, "bge-m3:567m".equalsIgnoreCase(localModel) ? 8000 : 500);
-                for (String subText : texte) {
-                    if(subText.isBlank()){
-                        continue;
-                    }
-                    final EmbeddingRequest requestUrl = new EmbeddingRequest(localModel, List.of(subText), false);
+    /**
+     * Erstellt die Ollama-Anfragen für Post- und Linktext eines Posts, der Linktext wird dabei in Abschnitte zerlegt.
+     */
+    List<EmbeddingRequest> createEmbeddingRequests(final PublicMastodonPostEntity post) {
+        List<EmbeddingRequest> requests = new ArrayList<>();
+        if(post.getPostText() != null && !post.getPostText().getText().isBlank()) {
+            requests.add(new EmbeddingRequest(localModel, List.of(post.getPostText().getText()), true));
+        }
 
 
-                    requests.add(requestUrl);
+        if (post.getUrlText() != null && post.getUrlText().getText() != null && !post.getUrlText().getText().isBlank()) {
+            final String urlText = post.getUrlText().getText();
 
+            final List<String> texte = textChunker.chunk(localModel, urlText, "Post " + post.getMastodonId());
+            for (String subText : texte) {
+                if(subText.isBlank()){
+                    continue;
                 }
+                final EmbeddingRequest requestUrl = new EmbeddingRequest(localModel, List.of(subText), false);
+
+
+                requests.add(requestUrl);
 
             }
 
-            allRequests.put(post.getMastodonId(), requests);
         }
 
-        return allRequests;
+        return requests;
     }
 
-    @Scheduled(every = "1m", delay = 30, delayUnit = TimeUnit.SECONDS,  concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    /**
+     * Berechnet die Vektoren aller Anfragen und fasst sie zu einem normalisierten Vektor zusammen.
+     *
+     * @return Der Vektor oder null, wenn es keine Anfragen gab.
+     */
+    double[] calcVector(final List<EmbeddingRequest> embeddingRequests) {
+        final List<double[]> vectors = embeddingBatchClient.embed(Map.of("post", embeddingRequests)).get("post");
+        if (vectors == null) {
+            throw new IllegalStateException("Vektoren konnten nicht berechnet werden");
+        }
+        if(vectors.isEmpty()){
+            return null;
+        }
+        return VektorUtil.createProfileVector(vectors);
+    }
+
+    // Neue Posts laufen über PublicPostPipeline, hier werden nur liegengebliebene nachgeholt
+    @Scheduled(every = "5m", delay = 30, delayUnit = TimeUnit.SECONDS,  concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
     void calcPublicVectors() {
         if(!Embedding.findNextLocalEmbeddings().isEmpty()){
             return;
         }
 
         int calcRequests = 0;
-        final Map<String, List<EmbeddingRequest>> requests = generateOllamaRequest();
+        final Map<PostVersion, List<EmbeddingRequest>> requests = generateOllamaRequest();
 
         if(!requests.isEmpty()){
-            LOG.infof("Generiere für folgende Einträge Vektoren: %s", requests.keySet());
+            LOG.infof("Generiere für folgende Einträge Vektoren: %s", requests.keySet().stream().map(PostVersion::mastodonId).toList());
         }
 
 
-        for (Map.Entry<String, List<EmbeddingRequest>> entry : requests.entrySet()) {
+        // Alle Abschnitte aller Posts in wenigen Batches berechnen
+        final Map<PostVersion, List<double[]>> vectorsByPost = embeddingBatchClient.embed(requests);
+
+        for (Map.Entry<PostVersion, List<double[]>> entry : vectorsByPost.entrySet()) {
             try {
-                final String mastodonId = entry.getKey();
-                final List<EmbeddingRequest> embeddingRequests = entry.getValue();
-                List<double[]> vectors = new ArrayList<>();
-
-                for (EmbeddingRequest request : embeddingRequests) {
-                    final EmbeddingResponse postResponse = ollamaRestClient.generateEmbeddings(request);
-                    calcRequests++;
-                    vectors.add(postResponse.embeddings().getFirst().stream().mapToDouble(Double::doubleValue).toArray());
-                }
+                final List<double[]> vectors = entry.getValue();
+                calcRequests += vectors.size();
                 if(vectors.isEmpty()){
                     continue;
                 }
-                final double[] profileVector = VektorUtil.createProfileVector(vectors);
 
-                savePublicVector(mastodonId, profileVector);
+                savePublicVector(entry.getKey(), VektorUtil.createProfileVector(vectors));
             } catch (Exception e) {
 
-                LOG.errorf(e, "Fehler beim Vektor generieren für ID: %s", entry.getKey());
+                LOG.errorf(e, "Fehler beim Vektor generieren für ID: %s", entry.getKey().mastodonId());
             }
 
 
@@ -332,19 +591,34 @@ public class FeedToTootScheduler {
         }
     }
 
+    /**
+     * Speichert den Vektor eines Posts, sofern er seit Beginn der Berechnung nicht bearbeitet wurde.
+     *
+     * @return false, wenn der Vektor zu einem alten Inhalt gehört und verworfen wurde.
+     */
     @Transactional
-    void savePublicVector(final String mastodonId, final double[] profileVector) {
-        final PublicMastodonPostEntity mastodonPost = publicMastodonPostRepository.findByMastodonId(mastodonId).orElseThrow();
+    boolean savePublicVector(final PostVersion version, final double[] profileVector) {
+        if (!publicMastodonPostRepository.lockContentVersion(version.mastodonId(), version.contentVersion())) {
+            LOG.debugf("Post %s wurde während der Berechnung bearbeitet, Vektor wird verworfen", version.mastodonId());
+            return false;
+        }
+        final PublicMastodonPostEntity mastodonPost = publicMastodonPostRepository.findByMastodonId(version.mastodonId()).orElseThrow();
         mastodonPost.setEmbeddingVector(profileVector);
         mastodonPost.setEmbeddingModel(localModel);
+        if (mastodonPost.getNegativeWeight() != null) {
+            profileContributionChanged.fire(ProfileContributionChanged.of(mastodonPost));
+        }
         LOG.debugf("Speichere Vektor für Id: %s", mastodonPost.getMastodonId());
+        return true;
     }
 
 
 
-    @Scheduled(every = "2m", delay = 30, delayUnit = TimeUnit.SECONDS,  concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    // Neue Posts laufen über PublicPostPipeline, hier werden nur liegengebliebene nachgeholt
+    @Scheduled(every = "10m", delay = 30, delayUnit = TimeUnit.SECONDS,  concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
     void fetchPublicText() {
-        final List<PublicMastodonPostEntity> posts = publicMastodonPostRepository.findAllNoEmbeddingAndText();
+        final List<PublicMastodonPostEntity> posts = publicMastodonPostRepository.findAllNoEmbeddingAndText().stream()
+                .filter(post -> !publicPostPipeline.isInFlight(post.getMastodonId())).toList();
 
         if(posts.isEmpty()){
             return;
@@ -356,22 +630,43 @@ public class FeedToTootScheduler {
         }
 
 
+        // Alle Links des Batches parallel und außerhalb einer Transaktion laden
+        final Map<String, List<String>> urlsByPost = new HashMap<>();
+        for (PublicMastodonPostEntity post : posts) {
+            final MastodonDtos.MastodonStatus status = statusMap.get(post.getMastodonId());
+            if (status != null && (post.isNoURL() == null || !post.isNoURL())) {
+                urlsByPost.put(post.getMastodonId(), MastodonDtos.MastodonStatus.extractLinksFromHtml(status.content()));
+            }
+        }
+        final Map<String, String> articles;
+        try (DurationLogger d = new DurationLogger("Laden der Artikel für " + posts.size() + " Posts", LOG)) {
+            articles = articleExtractionService.getArticles(urlsByPost.values().stream().flatMap(List::stream).toList());
+        }
+
         for (PublicMastodonPostEntity post : posts) {
             try {
 
-                readStatusAndLinkText(post, statusMap.get(post.getMastodonId()));
+                final MastodonDtos.MastodonStatus status = statusMap.get(post.getMastodonId());
+                readStatusAndLinkText(post, status == null ? null : status.content(), urlsByPost.getOrDefault(post.getMastodonId(), List.of()), articles);
             } catch (Exception e) {
                 LOG.errorf(e, "Fehler beim bearbeiten des Posts mit Id: %s", post.getMastodonId());
             }
         }
 
     }
+    /**
+     * Speichert Post- und Linktext in einer kurzen Transaktion. Die Artikel wurden vorher bereits geladen.
+     *
+     * @param statusContent Der HTML-Inhalt des Status oder null, wenn er nicht geladen werden konnte.
+     * @return false, wenn der Post mangels Text gelöscht wurde.
+     */
     @Transactional
-    void readStatusAndLinkText(final PublicMastodonPostEntity p, final MastodonDtos.MastodonStatus mastodonStatus) {
+    boolean readStatusAndLinkText(final PublicMastodonPostEntity p, final String statusContent,
+                               final List<String> urls, final Map<String, String> articles) {
         final PublicMastodonPostEntity post = publicMastodonPostRepository.findById(p.id).orElseThrow();
         try {
-            if(p.getPostText() == null && mastodonStatus != null){
-                final String text = Jsoup.parse(mastodonStatus.content()).text();
+            if(p.getPostText() == null && statusContent != null){
+                final String text = Jsoup.parse(statusContent).text();
                 final TextEntity textEntity = new TextEntity(text);
                 if(textEntity.getText() != null && !textEntity.getText().isBlank()){
                     textEntityRepository.persist(textEntity);
@@ -384,21 +679,17 @@ public class FeedToTootScheduler {
             if (post.getPostText() == null || post.getPostText().getText().isBlank() || post.getPostText().getText().isEmpty()) {
                 if(post.getNegativeWeight() == null) {
                     publicMastodonPostRepository.delete(post);
-                    return;
+                    return false;
                 }
             }
 
             final Boolean noURL = post.isNoURL();
             if (noURL == null || !noURL) {
 
-                final List<String> urls = MastodonDtos.MastodonStatus.extractLinksFromHtml(post.getPostText().getText());
-
                 if (!urls.isEmpty()) {
                     StringJoiner sj = new StringJoiner("\n\n");
                     for (String url : urls) {
-                        // Annahme: JsoupParser.getArticle ist synchron und blockierend.
-                        // Wenn dies auch asynchron sein sollte, müsste es ebenfalls in ein Uni gewickelt werden.
-                        final String article = JsoupParser.getArticle(url);
+                        final String article = articles.get(url);
                         if (article != null) {
                             sj.add(article);
                         }
@@ -417,83 +708,59 @@ public class FeedToTootScheduler {
         }catch (Exception e){
             post.setUrlText(null);
         }
-
+        return true;
     }
 
+    // Neue Posts bewertet PublicPostPipeline direkt nach dem Vektor, hier werden nur liegengebliebene nachgeholt
     @Transactional
-    @Scheduled(every = "1m",delay = 30, delayUnit = TimeUnit.SECONDS,  concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    @Scheduled(every = "5m",delay = 30, delayUnit = TimeUnit.SECONDS,  concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
     void calcRecommendations() {
 
         final boolean embeddingsAllCalced = Embedding.findNextLocalEmbeddings().isEmpty();
-
-        List<PublicMastodonPostEntity> posts = publicMastodonPostRepository.findAllComparable();
-
-        if(posts.isEmpty() || !embeddingsAllCalced){
+        if(!embeddingsAllCalced){
             return;
         }
 
-        LOG.info("Schwelle für das Posten ist Distanz größer: " + minCosDistance);
-
-
-        final List<Embedding> allLocalEmbeddings = Embedding.findAllLocalEmbeddings();
-
-        final List<Embedding> positivList = allLocalEmbeddings.stream().filter(embedding -> embedding.getNegativeWeight() == null).toList();
-
-        final List<VektorUtil.VektorWeight> positiveVektoren = new ArrayList<>(positivList.stream().map(Embedding::getLocalEmbedding).map(doubles -> new VektorUtil.VektorWeight(doubles, 1.0)).toList());
-        final List<VektorUtil.VektorWeight> negativeVektoren = new ArrayList<>();
-
-//        double[] originalVektor = VektorUtil.createProfileVector(positiveVektoren);
-
-        Map<Double, List<Embedding>> negativeEmbeddings = new HashMap<>();
-
-        allLocalEmbeddings.stream().filter(embedding -> embedding.getNegativeWeight() != null).forEach(embedding -> negativeEmbeddings.computeIfAbsent(embedding.getNegativeWeight(), k -> new ArrayList<>()).add(embedding));
-
-
-        for (Map.Entry<Double, List<Embedding>> entry : negativeEmbeddings.entrySet()) {
-            final double weight = entry.getKey();
-            final List<Embedding> negativList = entry.getValue();
-            final List<double[]> negativVektors = negativList.stream().map(Embedding::getLocalEmbedding).toList();
-            negativeVektoren.addAll(negativVektors.stream().map(doubles -> new VektorUtil.VektorWeight(doubles, weight)).toList());
-
+        final double[] profileVector;
+        try {
+            profileVector = createProfileVector();
+        } catch (IllegalArgumentException e) {
+            // Noch keine Favoriten mit Embedding vorhanden
+            return;
         }
 
-        Map<Double, List<PublicMastodonPostEntity>> negativePosts = new HashMap<>();
-
-        publicMastodonPostRepository.findAllNegativPosts().forEach(post -> negativePosts.computeIfAbsent(post.getNegativeWeight(), k -> new ArrayList<>()).add(post));
-
-
-        for (Map.Entry<Double, List<PublicMastodonPostEntity>> entry : negativePosts.entrySet()) {
-            final double weight = entry.getKey();
-            final List<PublicMastodonPostEntity> negativList = entry.getValue();
-            final List<double[]> negativVektors = negativList.stream().map(PublicMastodonPostEntity::getEmbeddingVector).toList();
-            negativeVektoren.addAll(negativVektors.stream().map(doubles -> new VektorUtil.VektorWeight(doubles, weight)).toList());
+        if ("db".equalsIgnoreCase(recommendationScoring)) {
+            calcRecommendationsInDatabase(profileVector);
+            return;
         }
 
-        final double[] profileVector = VektorUtil.createProfileVector(positiveVektoren, negativeVektoren);
-
-
-
+        List<PublicMastodonPostEntity> posts = publicMastodonPostRepository.findAllComparable().stream()
+                .filter(post -> !publicPostPipeline.isInFlight(post.getMastodonId())).toList();
 
-        for (PublicMastodonPostEntity post : posts) {
-            final double[] embeddingVector = post.getEmbeddingVector();
-
-            try{
+        if(posts.isEmpty()){
+            return;
+        }
 
+        LOG.info("Schwelle für das Posten ist Distanz größer: " + minCosDistance);
 
-                final double cosineSimilarity = VektorUtil.getCosineSimilarity(profileVector, embeddingVector);
-                post.setCosDistance(cosineSimilarity);
-            }catch (IllegalArgumentException e){
-               LOG.error("Fehler mit PublicMastodonPostEntity: " + post.getMastodonId(), e);
+        final float[][] candidates = new float[posts.size()][];
+        for (int i = 0; i < posts.size(); i++) {
+            final float[] embeddingVector = posts.get(i).getEmbeddingFloats();
+            candidates[i] = embeddingVector == null ? null : VectorMath.normalize(embeddingVector);
+        }
+        final float[] scores = profileVectorService.scoreAll(candidates);
+
+        for (int i = 0; i < posts.size(); i++) {
+            final PublicMastodonPostEntity post = posts.get(i);
+            if (Float.isNaN(scores[i])) {
+                LOG.errorf("Fehler mit PublicMastodonPostEntity: %s, Vektor passt nicht zum Profil", post.getMastodonId());
+            } else {
+                post.setCosDistance((double) scores[i]);
             }
             if (post.getCosDistance() != null && post.getCosDistance() > minCosDistance) {
-                if (boostDisable != null && !boostDisable) {
-                    try {
-                        final MastodonDtos.MastodonStatus mastodonStatus = mastodonClient.boostStatus(post.getMastodonId(), new MastodonDtos.BoostStatusRequest(MastodonDtos.MastodonStatus.StatusVisibility.PRIVATE), "Bearer " + accessToken);
-                    } catch (Exception e) {
-                        LOG.errorf(e, "Fehler beim Boosten der MastodonId: %s", post.getMastodonId());
-                        post.setCosDistance(Double.NEGATIVE_INFINITY);
-                        continue;
-                    }
+                if (!boost(post.getMastodonId())) {
+                    post.setCosDistance(Double.NEGATIVE_INFINITY);
+                    continue;
                 }
 
                 LOG.infof("Mastodon Satatus (ID: %s) wurde geboosted", post.getMastodonId());
@@ -501,6 +768,52 @@ public class FeedToTootScheduler {
         }
     }
 
+    /**
+     * Bewertet die neuen Posts in PostgreSQL statt in der JVM. Der Profilvektor wird als Parameter übergeben,
+     * zurück kommen nur die Kandidaten über {@link #minCosDistance}, höchstens {@link #recommendationTopK} davon.
+     * Weitere Kandidaten bleiben unbewertet und kommen im nächsten Durchlauf wieder an die Reihe.
+     */
+    private void calcRecommendationsInDatabase(final double[] profileVector) {
+        final int limit = recommendationTopK > 0 ? recommendationTopK : Integer.MAX_VALUE;
+        final List<PublicMastodonPostRepository.ScoredPost> candidates = publicMastodonPostRepository.scoreUnscored(profileVector, minCosDistance, limit);
+        if (candidates.isEmpty()) {
+            return;
+        }
+        LOG.infof("%d Kandidaten über der Schwelle %s", candidates.size(), minCosDistance);
+
+        for (PublicMastodonPostRepository.ScoredPost candidate : candidates) {
+            if (!boost(candidate.mastodonId())) {
+                publicMastodonPostRepository.updateCosDistance(candidate.mastodonId(), Double.NEGATIVE_INFINITY);
+                continue;
+            }
+            LOG.infof("Mastodon Satatus (ID: %s) wurde geboosted", candidate.mastodonId());
+        }
+    }
+
+    /**
+     * Boostet einen Status, sofern das Boosten nicht deaktiviert ist.
+     *
+     * @return false, wenn der Boost fehlgeschlagen ist.
+     */
+    boolean boost(final String mastodonId) {
+        if (boostDisable != null && !boostDisable) {
+            try {
+                mastodonClient.boostStatus(mastodonId, new MastodonDtos.BoostStatusRequest(MastodonDtos.MastodonStatus.StatusVisibility.PRIVATE), "Bearer " + accessToken);
+            } catch (Exception e) {
+                LOG.errorf(e, "Fehler beim Boosten der MastodonId: %s", mastodonId);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Der aktuelle Profilvektor aus den lokalen Embeddings der Favoriten und den negativ bewerteten Embeddings und Posts.
+     */
+    double[] createProfileVector() {
+        return profileVectorService.profileVector();
+    }
+
 
 //    @Scheduled(every = "P1D",delay = 120, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
     @Transactional
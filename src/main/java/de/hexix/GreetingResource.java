@@ -1,19 +1,25 @@
 package de.hexix;
 
 import de.hexix.mastodon.Embedding;
+import de.hexix.mastodon.ProfileContributionChanged;
 import de.hexix.mastodon.PublicMastodonPostEntity;
 import de.hexix.mastodon.PublicMastodonPostRepository;
 import de.hexix.mastodon.TextEntity;
 import de.hexix.mastodon.TextEntityRepository;
 import de.hexix.mastodon.api.MastodonDtos;
 import de.hexix.mastodon.resource.MastodonClient;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
@@ -49,6 +55,18 @@ public class GreetingResource {
     @Inject
     TextEntityRepository textEntityRepository;
 
+    @Inject
+    ArticleCache articleCache;
+
+    @Inject
+    Event<ProfileContributionChanged> profileContributionChanged;
+
+    @Inject
+    StreamAdmissionFilter streamAdmissionFilter;
+
+    @Inject
+    StatusOutboxService statusOutboxService;
+
     @ConfigProperty(name = "mastodon.access.token")
     String accessToken;
 
@@ -59,6 +77,57 @@ public class GreetingResource {
         return "Hello from Quarkus REST";
     }
 
+    @GET@Path("/extractors")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<SiteExtractor.Stats> siteExtractorStats(){
+        return SiteExtractorRegistry.stats();
+    }
+
+    /**
+     * Zähler des {@link StreamAdmissionFilter} pro Regel.
+     */
+    @GET@Path("/admission")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Long> admissionStats(){
+        return streamAdmissionFilter.stats();
+    }
+
+    /**
+     * Endgültig fehlgeschlagene Toots im Ausgang.
+     */
+    @GET@Path("/outbox/failed")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<StatusOutboxService.FailedToot> failedToots(){
+        return statusOutboxService.findFailed();
+    }
+
+    /**
+     * Legt einen fehlgeschlagenen Toot mit neuem Idempotency-Key wieder in den Ausgang.
+     */
+    @POST@Path("/outbox/{id}/retry")
+    public Response retryFailedToot(@PathParam("id") Long id){
+        return statusOutboxService.requeue(id) ? Response.noContent().build() : Response.status(Response.Status.NOT_FOUND).build();
+    }
+
+    /**
+     * Verwirft einen fehlgeschlagenen Toot; der Feed-Eintrag wird danach wieder als neu erkannt.
+     */
+    @DELETE@Path("/outbox/{id}")
+    public Response deleteFailedToot(@PathParam("id") Long id){
+        return statusOutboxService.delete(id) ? Response.noContent().build() : Response.status(Response.Status.NOT_FOUND).build();
+    }
+
+    /**
+     * Die dem Profil ähnlichsten Posts (top-k über den HNSW-Index).
+     */
+    @GET@Path("/recommendations")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Transactional
+    public List<String> recommendations(@QueryParam("limit") @DefaultValue("20") int limit){
+        return publicMastodonPostRepository.findMostSimilar(feedToTootScheduler.createProfileVector(), limit).stream()
+                .map(PublicMastodonPostEntity::getMastodonId).toList();
+    }
+
     @GET@Path("/embeddings/loadURL")
     @Produces(MediaType.APPLICATION_JSON)
     public List<Embedding> loadEmbeddingUrls(){
@@ -85,9 +154,7 @@ public class GreetingResource {
         final List<String> urls = MastodonDtos.MastodonStatus.extractLinksFromHtml(mastodonStatus.content());
 
         for (String url : urls) {
-            // Annahme: JsoupParser.getArticle ist synchron und blockierend.
-            // Wenn dies auch asynchron sein sollte, müsste es ebenfalls in ein Uni gewickelt werden.
-            final String article = JsoupParser.getArticle(url);
+            final String article = articleCache.getArticle(url);
             sj.add(article);
         }
 
@@ -126,7 +193,7 @@ public class GreetingResource {
             }
 
         }else if(embedding.getResource().endsWith("__CARD_URL")){
-            final String article = JsoupParser.getArticle(embedding.getUrl());
+            final String article = articleCache.getArticle(embedding.getUrl());
             final TextEntity textEntity = new TextEntity(article);
             if(textEntity.getText() != null && !textEntity.getText().isBlank()){
                 textEntityRepository.persist(textEntity);
@@ -246,6 +313,7 @@ public class GreetingResource {
 
         final PublicMastodonPostEntity post = publicMastodonPostRepository.findByMastodonId(idPayload.getId()).orElseThrow();
         post.setNegativeWeight(1.0);
+        profileContributionChanged.fire(ProfileContributionChanged.of(post));
 
         mastodonClient.unBoostStatus(idPayload.getId(), "Bearer " + accessToken);
 
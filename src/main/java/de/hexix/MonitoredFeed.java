@@ -9,6 +9,7 @@ import jakarta.persistence.Id;
 import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 
 @Entity
@@ -43,6 +44,23 @@ public class MonitoredFeed extends PanacheEntityBase {
     @Column(name = "try_ai")
     private Boolean tryAi;
 
+    // Validatoren für bedingte GET-Anfragen, damit unveränderte Feeds nicht erneut geladen und geparst werden
+    @Column(name = "http_etag", columnDefinition = "TEXT")
+    private String etag;
+
+    @Column(name = "http_last_modified", columnDefinition = "TEXT")
+    private String lastModified;
+
+    @Column(name = "content_hash", columnDefinition = "TEXT")
+    private String contentHash;
+
+    // Hochwassermarke: neuester bereits verarbeiteter Eintrag, ältere Einträge werden gar nicht mehr betrachtet
+    @Column(name = "high_water_mark_at")
+    private Instant highWaterMarkAt;
+
+    @Column(name = "high_water_mark_guid", columnDefinition = "TEXT")
+    private String highWaterMarkGuid;
+
     public Long getId() {
         return id;
     }
@@ -99,6 +117,46 @@ public class MonitoredFeed extends PanacheEntityBase {
         this.tryAi = tryAi;
     }
 
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(final String etag) {
+        this.etag = etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(final String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(final String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Instant getHighWaterMarkAt() {
+        return highWaterMarkAt;
+    }
+
+    public void setHighWaterMarkAt(final Instant highWaterMarkAt) {
+        this.highWaterMarkAt = highWaterMarkAt;
+    }
+
+    public String getHighWaterMarkGuid() {
+        return highWaterMarkGuid;
+    }
+
+    public void setHighWaterMarkGuid(final String highWaterMarkGuid) {
+        this.highWaterMarkGuid = highWaterMarkGuid;
+    }
+
     // Hilfsmethode, um einen Feed anhand seiner URL zu finden oder null zurückzugeben
     public static MonitoredFeed findByUrl(String url) {
         return find("feedUrl", url).firstResult();
@@ -114,6 +172,10 @@ public class MonitoredFeed extends PanacheEntityBase {
                 ", title='" + title + '\'' +
                 ", defaultText='" + defaultText + '\'' +
                 ", tryAi=" + tryAi +
+                ", etag='" + etag + '\'' +
+                ", lastModified='" + lastModified + '\'' +
+                ", contentHash='" + contentHash + '\'' +
+                ", highWaterMarkAt=" + highWaterMarkAt +
                 '}';
     }
 }
@@ -12,6 +12,8 @@ import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 
 @Entity
 @Table(name = "posted_entries")
@@ -52,6 +54,52 @@ public class PostedEntry extends PanacheEntityBase {
     public PostedEntry() {
     }
 
+    /**
+     * Lädt die GUIDs der zuletzt geposteten Einträge eines Feeds mit einer einzigen Abfrage.
+     *
+     * @param feedId Die ID des Feeds.
+     * @param limit  Die maximale Anzahl an GUIDs.
+     * @return Die GUIDs, neueste zuerst.
+     */
+    public static List<String> findRecentGuids(final Long feedId, final int limit) {
+        return getEntityManager()
+                .createQuery("select p.entryGuid from PostedEntry p where p.feed.id = ?1 order by p.postedAt desc nulls last", String.class)
+                .setParameter(1, feedId)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Sucht mit einer einzigen Abfrage, welche der GUIDs eines Feeds bereits gepostet wurden oder im Ausgang liegen.
+     *
+     * @param feedId Die ID des Feeds.
+     * @param guids  Die zu prüfenden GUIDs.
+     * @return Die bekannten GUIDs.
+     */
+    public static List<String> findKnownGuids(final Long feedId, final Collection<String> guids) {
+        return getEntityManager()
+                .createQuery("select p.entryGuid from PostedEntry p where p.feed.id = ?1 and p.entryGuid in ?2 " +
+                        "union select o.entryGuid from StatusOutboxEntry o where o.feed.id = ?1 and o.entryGuid in ?2", String.class)
+                .setParameter(1, feedId)
+                .setParameter(2, guids)
+                .getResultList();
+    }
+
+    /**
+     * Lädt die Zeitpunkte der zuletzt geposteten Einträge eines Feeds, um dessen Veröffentlichungsrhythmus anzulernen.
+     *
+     * @param feedId Die ID des Feeds.
+     * @param limit  Die maximale Anzahl an Zeitpunkten.
+     * @return Die Zeitpunkte, neueste zuerst.
+     */
+    public static List<Instant> findRecentPostedAt(final Long feedId, final int limit) {
+        return getEntityManager()
+                .createQuery("select p.postedAt from PostedEntry p where p.feed.id = ?1 and p.postedAt is not null order by p.postedAt desc", Instant.class)
+                .setParameter(1, feedId)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
     public Long getId() {
         return id;
     }
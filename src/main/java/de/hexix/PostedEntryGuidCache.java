@@ -0,0 +1,131 @@
+package de.hexix;
+
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hält pro Feed die GUIDs der zuletzt geposteten und der noch im Ausgang liegenden Einträge im Speicher.
+ * Damit kostet die Duplikatprüfung eines Feeds keine Datenbankabfrage pro Eintrag mehr.
+ * Die Menge ist pro Feed begrenzt; erst wenn ältere GUIDs verdrängt wurden, werden die Fehltreffer eines Abrufs mit einer Abfrage nachgeschlagen.
+ */
+@ApplicationScoped
+public class PostedEntryGuidCache {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    @ConfigProperty(name = "feed2Mastodon.dedupe.maxGuidsPerFeed", defaultValue = "1000")
+    int maxGuidsPerFeed;
+
+    private final Map<Long, FeedGuids> guidsByFeed = new ConcurrentHashMap<>();
+
+    @Transactional
+    void onStart(@Observes StartupEvent ev) {
+        final List<MonitoredFeed> feeds = MonitoredFeed.<MonitoredFeed>find("isActive", true).list();
+        feeds.forEach(feed -> guidsByFeed.computeIfAbsent(feed.getId(), this::load));
+        LOG.infof("GUID-Cache für %d Feeds aufgewärmt", feeds.size());
+    }
+
+    /**
+     * Prüft, welche Einträge eines Feeds bereits gepostet wurden oder im Ausgang liegen.
+     *
+     * @param feedId     Die ID des Feeds.
+     * @param entryGuids Die GUIDs der Einträge aus dem aktuellen Abruf.
+     * @return Die bekannten GUIDs; die Menge ist veränderbar, damit der Aufrufer neu abgelegte Einträge ergänzen kann.
+     */
+    public Set<String> findKnown(final Long feedId, final Collection<String> entryGuids) {
+        final FeedGuids feedGuids = guidsByFeed.computeIfAbsent(feedId, this::load);
+        final Set<String> known = new HashSet<>();
+        final Set<String> missed = new HashSet<>();
+        synchronized (feedGuids) {
+            for (String entryGuid : entryGuids) {
+                if (feedGuids.guids.containsKey(entryGuid)) {
+                    known.add(entryGuid);
+                } else if (!feedGuids.complete) {
+                    missed.add(entryGuid);
+                }
+            }
+        }
+        // Nur wenn bereits GUIDs verdrängt wurden, kann ein alter Eintrag fehlen; alle Fehltreffer gehen in eine Abfrage
+        if (!missed.isEmpty()) {
+            for (String entryGuid : PostedEntry.findKnownGuids(feedId, missed)) {
+                known.add(entryGuid);
+                markPosted(feedId, entryGuid);
+            }
+        }
+        return known;
+    }
+
+    /**
+     * Vermerkt einen gerade geposteten oder in den Ausgang gelegten Eintrag.
+     *
+     * @param feedId    Die ID des Feeds.
+     * @param entryGuid Die GUID des Eintrags.
+     */
+    public void markPosted(final Long feedId, final String entryGuid) {
+        final FeedGuids feedGuids = guidsByFeed.computeIfAbsent(feedId, this::load);
+        synchronized (feedGuids) {
+            feedGuids.guids.put(entryGuid, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Vergisst einen Eintrag wieder, z.B. nachdem ein fehlgeschlagener Toot aus dem Ausgang gelöscht wurde.
+     * Steht er noch im Feed, wird er beim nächsten Abruf erneut abgelegt.
+     *
+     * @param feedId    Die ID des Feeds.
+     * @param entryGuid Die GUID des Eintrags.
+     */
+    public void forget(final Long feedId, final String entryGuid) {
+        final FeedGuids feedGuids = guidsByFeed.get(feedId);
+        if (feedGuids == null) {
+            return;
+        }
+        synchronized (feedGuids) {
+            feedGuids.guids.remove(entryGuid);
+        }
+    }
+
+    private FeedGuids load(final Long feedId) {
+        final List<String> guids = PostedEntry.findRecentGuids(feedId, maxGuidsPerFeed);
+        final FeedGuids feedGuids = new FeedGuids(maxGuidsPerFeed, guids.size() < maxGuidsPerFeed);
+        // Älteste zuerst einfügen, damit bei Überlauf auch die ältesten verdrängt werden
+        for (int i = guids.size() - 1; i >= 0; i--) {
+            feedGuids.guids.put(guids.get(i), Boolean.TRUE);
+        }
+        // Einträge im Ausgang sind noch nicht gepostet, dürfen aber auch nicht erneut abgelegt werden
+        StatusOutboxEntry.findGuids(feedId).forEach(guid -> feedGuids.guids.put(guid, Boolean.TRUE));
+        return feedGuids;
+    }
+
+    private static final class FeedGuids {
+        private final Map<String, Boolean> guids;
+        // true, solange alle jemals geposteten GUIDs des Feeds im Speicher liegen
+        private boolean complete;
+
+        private FeedGuids(final int maxSize, final boolean complete) {
+            this.complete = complete;
+            this.guids = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                    if (size() > maxSize) {
+                        FeedGuids.this.complete = false;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package de.hexix;
+
+import de.hexix.ai.dto.EmbeddingRequest;
+import de.hexix.mastodon.Embedding;
+import de.hexix.mastodon.ProfileContributionChanged;
+import de.hexix.mastodon.ProfileVectorService;
+import de.hexix.mastodon.PublicMastodonPostEntity;
+import de.hexix.mastodon.PublicMastodonPostRepository;
+import de.hexix.mastodon.api.MastodonDtos;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Verarbeitet neue Posts aus dem öffentlichen Stream direkt nacheinander: Text und Links laden, Vektor berechnen, bewerten und ggf. boosten.
+ * <p>
+ * Jede Stufe hat eine begrenzte Warteschlange und einen eigenen virtuellen Thread und reicht nur die Mastodon-ID weiter.
+ * Ist eine Warteschlange voll, wartet der Aufrufer höchstens {@link #offerTimeout}, danach bleibt der Post liegen
+ * und wird von den Aufräum-Läufen in {@link FeedToTootScheduler} nachgeholt. Der Zustand steckt also weiterhin nur in der Datenbank.
+ * <p>
+ * Ab der Vektor-Stufe wird der Inhaltsstand des Posts mitgegeben. Wird der Post währenddessen bearbeitet, verwerfen
+ * {@link FeedToTootScheduler#savePublicVector} und {@link PublicMastodonPostRepository#claimCosDistance} das alte Ergebnis.
+ */
+@ApplicationScoped
+public class PublicPostPipeline {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    @ConfigProperty(name = "feed2Mastodon.pipeline.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "feed2Mastodon.pipeline.queueSize", defaultValue = "100")
+    int queueSize;
+
+    @ConfigProperty(name = "feed2Mastodon.pipeline.offerTimeout", defaultValue = "5s")
+    Duration offerTimeout;
+
+    @ConfigProperty(name = "feed2Mastodon.pipeline.pendingCheckInterval", defaultValue = "10s")
+    Duration pendingCheckInterval;
+
+    @ConfigProperty(name = "feed2Mastodon.minCosDistance", defaultValue = "0.825")
+    Double minCosDistance;
+
+    @Inject
+    FeedToTootScheduler feedToTootScheduler;
+
+    @Inject
+    ArticleExtractionService articleExtractionService;
+
+    @Inject
+    PublicMastodonPostRepository publicMastodonPostRepository;
+
+    @Inject
+    ProfileVectorService profileVectorService;
+
+    // Für Tests austauschbar
+    LongSupplier clock = System::nanoTime;
+
+    // Zuletzt abgefragt, ob Favoriten auf ihr lokales Embedding warten; null erzwingt eine neue Abfrage
+    private volatile PendingCheck pendingCheck;
+
+    private record PendingCheck(boolean pending, long checkedAt) {}
+
+    // Posts, die gerade in einer Stufe stecken; die Aufräum-Läufe überspringen sie
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private Stage<MastodonDtos.StreamStatus> textStage;
+    private Stage<FeedToTootScheduler.PostVersion> vectorStage;
+    private Stage<ScoreRequest> scoreStage;
+
+    private record ScoreRequest(FeedToTootScheduler.PostVersion post, double[] vector) {}
+
+    @PostConstruct
+    void init() {
+        scoreStage = new Stage<>("score", request -> {
+            score(request.post(), request.vector());
+            return false;
+        }, request -> request.post().mastodonId());
+        vectorStage = new Stage<>("vector", this::calcVector, FeedToTootScheduler.PostVersion::mastodonId);
+        textStage = new Stage<>("text", this::loadText, MastodonDtos.StreamStatus::id);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        textStage.stop();
+        vectorStage.stop();
+        scoreStage.stop();
+    }
+
+    /**
+     * Übergibt einen gerade gespeicherten Post aus dem Stream an die erste Stufe.
+     *
+     * @param status Der Status aus dem Stream, damit er nicht erneut abgefragt werden muss.
+     * @return false, wenn die Pipeline abgeschaltet oder voll ist; der Post bleibt dann dem Aufräum-Lauf überlassen.
+     */
+    public boolean submit(final MastodonDtos.StreamStatus status) {
+        return enabled && textStage.offer(status);
+    }
+
+    /**
+     * Verwirft die noch wartende Arbeit für einen Post, z.B. weil er auf Mastodon gelöscht oder bearbeitet wurde.
+     * Eine gerade laufende Stufe wird nicht unterbrochen; die folgenden Stufen finden den Post dann nicht mehr bzw. ohne Bewertung vor.
+     */
+    public void cancel(final String mastodonId) {
+        textStage.remove(mastodonId);
+        vectorStage.remove(mastodonId);
+        scoreStage.remove(mastodonId);
+        inFlight.remove(mastodonId);
+    }
+
+    /**
+     * @return true, wenn der Post gerade in der Pipeline verarbeitet wird.
+     */
+    public boolean isInFlight(final String mastodonId) {
+        return inFlight.contains(mastodonId);
+    }
+
+    private boolean loadText(final MastodonDtos.StreamStatus status) {
+        final PublicMastodonPostEntity post = publicMastodonPostRepository.findByMastodonId(status.id()).orElse(null);
+        if (post == null) {
+            return false;
+        }
+        List<String> urls = List.of();
+        if (post.isNoURL() == null || !post.isNoURL()) {
+            urls = MastodonDtos.MastodonStatus.extractLinksFromHtml(status.content());
+        }
+        final Map<String, String> articles = articleExtractionService.getArticles(urls);
+        if (!feedToTootScheduler.readStatusAndLinkText(post, status.content(), urls, articles)) {
+            return false;
+        }
+        return vectorStage.offer(FeedToTootScheduler.PostVersion.of(post));
+    }
+
+    private boolean calcVector(final FeedToTootScheduler.PostVersion version) {
+        // Favoriten haben bei Ollama Vorrang, der Post wird dann später vom Aufräum-Lauf berechnet
+        if (localEmbeddingsPending()) {
+            return false;
+        }
+        final PublicMastodonPostEntity post = publicMastodonPostRepository.findByMastodonId(version.mastodonId()).orElse(null);
+        if (post == null || post.getContentVersion() != version.contentVersion()) {
+            return false;
+        }
+        final List<EmbeddingRequest> requests = feedToTootScheduler.createEmbeddingRequests(post);
+        final double[] vector = feedToTootScheduler.calcVector(requests);
+        if (vector == null || !feedToTootScheduler.savePublicVector(version, vector)) {
+            return false;
+        }
+        return scoreStage.offer(new ScoreRequest(version, vector));
+    }
+
+    /**
+     * Ob Favoriten auf ihr lokales Embedding warten. Das Ergebnis gilt {@link #pendingCheckInterval} lang,
+     * damit nicht jeder Post eine Abfrage kostet; bekommt ein Favorit sein Embedding, wird sofort neu geprüft.
+     */
+    boolean localEmbeddingsPending() {
+        final long now = clock.getAsLong();
+        final PendingCheck check = pendingCheck;
+        if (check != null && now - check.checkedAt() < pendingCheckInterval.toNanos()) {
+            return check.pending();
+        }
+        final boolean pending = queryLocalEmbeddingsPending();
+        pendingCheck = new PendingCheck(pending, now);
+        return pending;
+    }
+
+    boolean queryLocalEmbeddingsPending() {
+        return !Embedding.findNextLocalEmbeddings().isEmpty();
+    }
+
+    void onContributionChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) final ProfileContributionChanged event) {
+        final PendingCheck check = pendingCheck;
+        // Nur ein wartender Stand kann durch ein neues Favoriten-Embedding hinfällig werden
+        if (check != null && check.pending() && event.key().startsWith("embedding:")) {
+            pendingCheck = null;
+        }
+    }
+
+    private void score(final FeedToTootScheduler.PostVersion version, final double[] vector) {
+        final String mastodonId = version.mastodonId();
+        final double cosDistance;
+        try {
+            cosDistance = profileVectorService.score(vector);
+        } catch (IllegalArgumentException e) {
+            // Kein Profil oder andere Dimension, bleibt unbewertet wie bei den Aufräum-Läufen
+            LOG.debugf("Post %s kann nicht bewertet werden: %s", mastodonId, e.getMessage());
+            return;
+        }
+        // Nur wer die Bewertung setzt, darf boosten; so boostet ein paralleler Aufräum-Lauf nicht doppelt
+        if (!publicMastodonPostRepository.claimCosDistance(mastodonId, version.contentVersion(), cosDistance)) {
+            return;
+        }
+        if (cosDistance > minCosDistance) {
+            if (!feedToTootScheduler.boost(mastodonId)) {
+                publicMastodonPostRepository.updateCosDistance(mastodonId, Double.NEGATIVE_INFINITY);
+                return;
+            }
+            LOG.infof("Mastodon Satatus (ID: %s) wurde geboosted", mastodonId);
+        }
+    }
+
+    /**
+     * Eine Stufe mit begrenzter Warteschlange und einem virtuellen Thread.
+     * Der Handler gibt true zurück, wenn er den Post an die nächste Stufe weitergegeben hat.
+     */
+    private final class Stage<T> {
+
+        private final String name;
+        private final BlockingQueue<T> queue;
+        private final Predicate<T> handler;
+        private final Function<T, String> idOf;
+        private final Thread worker;
+
+        Stage(final String name, final Predicate<T> handler, final Function<T, String> idOf) {
+            this.name = name;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            this.handler = handler;
+            this.idOf = idOf;
+            this.worker = Thread.ofVirtual().name("public-post-" + name).start(this::run);
+        }
+
+        boolean offer(final T item) {
+            final String id = idOf.apply(item);
+            inFlight.add(id);
+            try {
+                if (queue.offer(item, offerTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+                LOG.warnf("Warteschlange %s ist voll, Post %s wird vom Aufräum-Lauf nachgeholt", name, id);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.remove(id);
+            return false;
+        }
+
+        void remove(final String id) {
+            queue.removeIf(item -> id.equals(idOf.apply(item)));
+        }
+
+        private void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                final T item;
+                try {
+                    item = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                final String id = idOf.apply(item);
+                boolean handedOver = false;
+                try {
+                    handedOver = handler.test(item);
+                } catch (Exception e) {
+                    LOG.errorf(e, "Fehler in Stufe %s für Post %s", name, id);
+                }
+                // Wurde der Post weitergereicht, hat die nächste Stufe ihn bereits als in Arbeit vermerkt
+                if (!handedOver) {
+                    inFlight.remove(id);
+                }
+            }
+        }
+
+        void stop() {
+            worker.interrupt();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package de.hexix;
+
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Beschreibt, wie der Artikeltext einer Seite extrahiert wird.
+ * Der CSS-Selektor wird beim Anlegen einmal kompiliert statt bei jedem Aufruf neu geparst.
+ */
+public class SiteExtractor {
+
+    private final String hostSuffix;
+    private final String cssQuery;
+    private final Evaluator evaluator;
+    // Optionaler Query-Parameter, der vor dem Abruf angehängt wird (z.B. "view=print" für die Druckansicht bei heise)
+    private final String appendQuery;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param hostSuffix  Der Host oder eine übergeordnete Domain, z.B. "heise.de" (gilt auch für "www.heise.de").
+     * @param cssQuery    Der CSS-Selektor für den Artikeltext.
+     * @param appendQuery Optionaler Query-Parameter, der an die URL angehängt wird, oder null.
+     * @throws org.jsoup.select.Selector.SelectorParseException wenn der Selektor ungültig ist.
+     */
+    public SiteExtractor(final String hostSuffix, final String cssQuery, final String appendQuery) {
+        this.hostSuffix = hostSuffix;
+        this.cssQuery = cssQuery;
+        this.evaluator = QueryParser.parse(cssQuery);
+        this.appendQuery = appendQuery == null || appendQuery.isBlank() ? null : appendQuery;
+    }
+
+    public String transformUrl(final String url) throws URISyntaxException {
+        if (appendQuery == null) {
+            return url;
+        }
+        final URI oldURL = new URI(url);
+        final String existingQuery = oldURL.getQuery();
+        final String newQuery = existingQuery == null || existingQuery.isEmpty() ? appendQuery : existingQuery + "&" + appendQuery;
+        return new URI(oldURL.getScheme(), oldURL.getAuthority(), oldURL.getPath(), newQuery, oldURL.getFragment()).toString();
+    }
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordFailure() {
+        failures.incrementAndGet();
+    }
+
+    public String getHostSuffix() {
+        return hostSuffix;
+    }
+
+    public String getCssQuery() {
+        return cssQuery;
+    }
+
+    public Evaluator getEvaluator() {
+        return evaluator;
+    }
+
+    public String getAppendQuery() {
+        return appendQuery;
+    }
+
+    public Stats stats() {
+        return new Stats(hostSuffix, hits.get(), failures.get());
+    }
+
+    public record Stats(String hostSuffix, long hits, long failures) {}
+}
@@ -0,0 +1,82 @@
+package de.hexix;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Ein in der Datenbank gepflegter {@link SiteExtractor}.
+ */
+@Entity
+@Table(name = "site_extractors")
+public class SiteExtractorEntity extends PanacheEntityBase {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "host_suffix", nullable = false, unique = true, columnDefinition = "TEXT")
+    private String hostSuffix;
+
+    @Column(name = "css_query", nullable = false, columnDefinition = "TEXT")
+    private String cssQuery;
+
+    @Column(name = "append_query", columnDefinition = "TEXT")
+    private String appendQuery;
+
+    @Column(name = "is_active", nullable = false)
+    private boolean isActive = true;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt = Instant.now();
+
+    public SiteExtractorEntity() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getHostSuffix() {
+        return hostSuffix;
+    }
+
+    public void setHostSuffix(final String hostSuffix) {
+        this.hostSuffix = hostSuffix;
+    }
+
+    public String getCssQuery() {
+        return cssQuery;
+    }
+
+    public void setCssQuery(final String cssQuery) {
+        this.cssQuery = cssQuery;
+    }
+
+    public String getAppendQuery() {
+        return appendQuery;
+    }
+
+    public void setAppendQuery(final String appendQuery) {
+        this.appendQuery = appendQuery;
+    }
+
+    public boolean isActive() {
+        return isActive;
+    }
+
+    public void setActive(final boolean active) {
+        isActive = active;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,51 @@
+package de.hexix;
+
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.transaction.Transactional;
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Lädt die Extraktoren aus der Tabelle {@code site_extractors} in die {@link SiteExtractorRegistry}.
+ * Ungültige Selektoren werden übersprungen und geloggt, damit ein Tippfehler nicht alle Extraktoren lahmlegt.
+ */
+@ApplicationScoped
+public class SiteExtractorLoader {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    void onStart(@Observes StartupEvent ev) {
+        reload();
+    }
+
+    @Transactional
+    public void reload() {
+        final List<SiteExtractorEntity> entities = SiteExtractorEntity.<SiteExtractorEntity>find("isActive", true).list();
+        final List<SiteExtractor> extractors = new ArrayList<>(entities.size());
+        for (SiteExtractorEntity entity : entities) {
+            try {
+                extractors.add(new SiteExtractor(entity.getHostSuffix().trim().toLowerCase(Locale.ROOT), entity.getCssQuery(), entity.getAppendQuery()));
+            } catch (Exception e) {
+                LOG.errorf("Ungültiger Extraktor für %s: %s", entity.getHostSuffix(), e.getMessage());
+            }
+        }
+        SiteExtractorRegistry.replaceConfigured(extractors);
+        LOG.debugf("%d Extraktoren aus der Datenbank geladen", extractors.size());
+    }
+
+    /**
+     * Loggt die Extraktoren, die seit dem Start fehlgeschlagen sind.
+     */
+    public void logStats() {
+        for (SiteExtractor.Stats stats : SiteExtractorRegistry.stats()) {
+            if (stats.failures() > 0) {
+                LOG.infof("Extraktor %s: %d Treffer, %d Fehlschläge", stats.hostSuffix(), stats.hits(), stats.failures());
+            }
+        }
+    }
+}
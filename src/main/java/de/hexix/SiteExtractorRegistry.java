@@ -0,0 +1,133 @@
+package de.hexix;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Verzeichnis der {@link SiteExtractor}en, nachgeschlagen über den Host und seine übergeordneten Domains.
+ * <p>
+ * Die eingebauten Extraktoren können über die Tabelle {@code site_extractors} ergänzt oder überschrieben werden,
+ * siehe {@link SiteExtractorLoader}. Statisch, weil {@link JsoupParser} ebenfalls statisch verwendet wird.
+ */
+public final class SiteExtractorRegistry {
+
+    private static final String SWR_CSS_QUERY = "main h1.headline, main .detail-body p.lead, main .bodytext h2, main .bodytext p, main .bodytext figure.quote";
+    private static final String DEUTSCHLANDFUNK_CSS_QUERY = "article.b-article > header > *:not(.article-header-actions, .article-header-meta), .article-details-text, .article-details-title";
+    private static final String WINFUTURE_CSS_QUERY = "#news_content strong.article-intro, #news_content h2, #news_content div.teaser_img_container + script + div.mb14 + h2 + br + br,#news_content div.teaser_img_container + script + div.mb14 + h2 + br + br + div.primis_widget + br, #news_content div.teaser_img_container + script + div.mb14 + h2 + br + br + div.primis_widget + br + br + h2, #news_content div.teaser_img_container + script + div.mb14 + h2 + br + br + div.primis_widget + br + br + h2 + br + br, #news_content div.teaser_img_container + script + div.mb14 + h2 + br + br + div.primis_widget + br + br + h2 + br + br + script + div.ws_contentAd300 + br + br, #news_content div.teaser_img_container + script + div.mb14 + h2 + br + br + div.primis_widget + br + br + h2 + br + br + script + div.ws_contentAd300 + br + br + h2, #news_content div.teaser_img_container + script + div.mb14 + h2 + br + br + div.primis_widget + br + br + h2 + br + br + script + div.ws_contentAd300 + br + br + h2 + br + br, #news_content div.summary_box, #news_content div.changelog_list, #news_content";
+    private static final String NDR_CSS_QUERY = "article p, article h2";
+    private static final String T_ONLINE_CSS_QUERY = "article div[data-testid=\"StreamLayout.Stream\"] p, article div[data-testid=\"StreamLayout.Stream\"] h3, article div[data-testid=\"StreamLayout.Stream\"] ul:not([data-testid=\"RelatedArticles.List\"]) li";
+    private static final String DOMREPTOTAL_CSS_QUERY = "article .post-title, article .entry-inner p";
+    private static final String NTV_CSS_QUERY = "article.article .article__text p, article.article .article__text h2, article[class^='article-index_article__'] p," +
+            " article[class^='article-index_article__'] h2";
+    private static final String TAGESSCHAU_CSS_QUERY = "#content article > *:not(div.meldungsfooter)";
+    private static final String ZDF_HEUTE_CSS_QUERY = "main > div";
+    private static final String HEISE_CSS_QUERY = "article > *:not(p.printversion__back-to-article)";
+    private static final String BW_CSS_QUERY = "article > header, article > .article__body";
+    private static final String T3N_CSS_QUERY = "div.c-entry > div > p:not(.tg-crosslinks), div.c-entry > p:not(.tg-crosslinks), div.c-entry h2";
+    private static final String DEFAULT_CSS_QUERY = "article";
+
+    private static final List<SiteExtractor> BUILT_IN = List.of(
+            new SiteExtractor("tagesschau.de", TAGESSCHAU_CSS_QUERY, null),
+            new SiteExtractor("zdfheute.de", ZDF_HEUTE_CSS_QUERY, null),
+            new SiteExtractor("heise.de", HEISE_CSS_QUERY, "view=print"),
+            new SiteExtractor("baden-wuerttemberg.de", BW_CSS_QUERY, null),
+            new SiteExtractor("swr.de", SWR_CSS_QUERY, null),
+            new SiteExtractor("deutschlandfunk.de", DEUTSCHLANDFUNK_CSS_QUERY, null),
+            new SiteExtractor("t3n.de", T3N_CSS_QUERY, null),
+            new SiteExtractor("winfuture.de", WINFUTURE_CSS_QUERY, null),
+            new SiteExtractor("ndr.de", NDR_CSS_QUERY, null),
+            new SiteExtractor("t-online.de", T_ONLINE_CSS_QUERY, null),
+            new SiteExtractor("domreptotal.com", DOMREPTOTAL_CSS_QUERY, null),
+            new SiteExtractor("ntv.de", NTV_CSS_QUERY, null),
+            new SiteExtractor("n-tv.de", NTV_CSS_QUERY, null)
+    );
+
+    private static final SiteExtractor DEFAULT = new SiteExtractor("*", DEFAULT_CSS_QUERY, null);
+
+    // Wird beim Neuladen komplett ersetzt, Leser sehen immer einen konsistenten Stand
+    private static volatile Map<String, SiteExtractor> extractors = index(BUILT_IN, List.of());
+
+    private SiteExtractorRegistry() {
+    }
+
+    /**
+     * Sucht den Extraktor für eine URL, zuerst für den vollständigen Host, dann für die übergeordneten Domains.
+     *
+     * @param url Die URL des Artikels.
+     * @return Der Extraktor oder null, wenn keiner passt.
+     */
+    public static SiteExtractor find(final String url) {
+        String host = hostOf(url);
+        if (host == null) {
+            return null;
+        }
+        final Map<String, SiteExtractor> current = extractors;
+        while (true) {
+            final SiteExtractor extractor = current.get(host);
+            if (extractor != null) {
+                return extractor;
+            }
+            final int dot = host.indexOf('.');
+            if (dot < 0) {
+                return null;
+            }
+            host = host.substring(dot + 1);
+        }
+    }
+
+    public static SiteExtractor defaultExtractor() {
+        return DEFAULT;
+    }
+
+    /**
+     * Ersetzt die konfigurierten Extraktoren. Sie gehen den eingebauten mit gleichem Host vor.
+     * Zähler von Extraktoren, deren Selektor sich nicht geändert hat, bleiben erhalten.
+     *
+     * @param configured Die Extraktoren aus der Datenbank.
+     */
+    public static synchronized void replaceConfigured(final Collection<SiteExtractor> configured) {
+        final Map<String, SiteExtractor> current = extractors;
+        final List<SiteExtractor> merged = new ArrayList<>(configured.size());
+        for (SiteExtractor extractor : configured) {
+            final SiteExtractor existing = current.get(extractor.getHostSuffix());
+            final boolean unchanged = existing != null
+                    && existing.getCssQuery().equals(extractor.getCssQuery())
+                    && Objects.equals(existing.getAppendQuery(), extractor.getAppendQuery());
+            merged.add(unchanged ? existing : extractor);
+        }
+        extractors = index(BUILT_IN, merged);
+    }
+
+    /**
+     * @return Treffer und Fehlschläge pro Extraktor, die mit den meisten Fehlschlägen zuerst.
+     */
+    public static List<SiteExtractor.Stats> stats() {
+        final List<SiteExtractor.Stats> stats = new ArrayList<>(extractors.values().stream().distinct().map(SiteExtractor::stats).toList());
+        stats.add(DEFAULT.stats());
+        stats.sort(Comparator.comparingLong(SiteExtractor.Stats::failures).reversed());
+        return stats;
+    }
+
+    private static Map<String, SiteExtractor> index(final List<SiteExtractor> builtIn, final List<SiteExtractor> configured) {
+        final Map<String, SiteExtractor> index = new HashMap<>();
+        builtIn.forEach(extractor -> index.put(extractor.getHostSuffix(), extractor));
+        configured.forEach(extractor -> index.put(extractor.getHostSuffix(), extractor));
+        return Map.copyOf(index);
+    }
+
+    private static String hostOf(final String url) {
+        try {
+            final String host = new URI(url.trim()).getHost();
+            return host == null ? null : host.toLowerCase(Locale.ROOT);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package de.hexix;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import io.quarkus.panache.common.Sort;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Ein Toot, der auf das Posten wartet.
+ * Nach erfolgreichem Posten wird der Eintrag gelöscht und durch einen {@link PostedEntry} ersetzt.
+ */
+@Entity
+@Table(name = "status_outbox")
+public class StatusOutboxEntry extends PanacheEntityBase {
+
+    public enum State {
+        PENDING,
+        // Auf Mastodon gepostet, der PostedEntry steht noch aus
+        SENT,
+        FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "status_outbox_id_generator")
+    @SequenceGenerator(name = "status_outbox_id_generator", sequenceName = "status_outbox_id_seq", allocationSize = 1)
+    @Column(name = "id")
+    private Long id;
+
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "feed_id")
+    private MonitoredFeed feed;
+
+    @Column(name = "entry_guid", nullable = false, columnDefinition = "TEXT")
+    private String entryGuid;
+
+    @Column(name = "idempotency_key", nullable = false, unique = true, columnDefinition = "TEXT")
+    private String idempotencyKey;
+
+    @Column(name = "status_text", nullable = false, columnDefinition = "TEXT")
+    private String statusText;
+
+    @Column(name = "visibility", nullable = false)
+    private String visibility;
+
+    @Column(name = "language")
+    private String language;
+
+    @Column(name = "ai_toot")
+    private Boolean aiToot;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false)
+    private State state = State.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt = Instant.now();
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "mastodon_status_id", columnDefinition = "TEXT")
+    private String mastodonStatusId;
+
+    // Erster Fehlschlag, nach dem offen ist, ob Mastodon den Toot schon angenommen hat
+    @Column(name = "uncertain_since")
+    private Instant uncertainSince;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt = Instant.now();
+
+    public StatusOutboxEntry() {
+    }
+
+    /**
+     * Lädt die fälligen, noch offenen Einträge in der Reihenfolge, in der sie abgelegt wurden.
+     *
+     * @param now   Der aktuelle Zeitpunkt.
+     * @param limit Die maximale Anzahl an Einträgen.
+     * @return Die fälligen Einträge.
+     */
+    public static List<StatusOutboxEntry> findDue(final Instant now, final int limit) {
+        return StatusOutboxEntry.<StatusOutboxEntry>find("state = ?1 and nextAttemptAt <= ?2", Sort.by("id"), State.PENDING, now)
+                .range(0, limit - 1)
+                .list();
+    }
+
+    /**
+     * Lädt die IDs der bereits geposteten Einträge, deren {@link PostedEntry} noch fehlt.
+     *
+     * @return Die IDs.
+     */
+    public static List<Long> findSentIds() {
+        return getEntityManager()
+                .createQuery("select o.id from StatusOutboxEntry o where o.state = ?1 order by o.id", Long.class)
+                .setParameter(1, State.SENT)
+                .getResultList();
+    }
+
+    /**
+     * Lädt die endgültig fehlgeschlagenen Einträge, die älteste zuerst.
+     *
+     * @return Die Einträge.
+     */
+    public static List<StatusOutboxEntry> findFailed() {
+        return list("state = ?1", Sort.by("id"), State.FAILED);
+    }
+
+    /**
+     * Lädt die GUIDs aller Einträge eines Feeds, die noch im Ausgang liegen (auch endgültig fehlgeschlagene).
+     *
+     * @param feedId Die ID des Feeds.
+     * @return Die GUIDs.
+     */
+    public static List<String> findGuids(final Long feedId) {
+        return getEntityManager()
+                .createQuery("select o.entryGuid from StatusOutboxEntry o where o.feed.id = ?1", String.class)
+                .setParameter(1, feedId)
+                .getResultList();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public MonitoredFeed getFeed() {
+        return feed;
+    }
+
+    public void setFeed(final MonitoredFeed feed) {
+        this.feed = feed;
+    }
+
+    public String getEntryGuid() {
+        return entryGuid;
+    }
+
+    public void setEntryGuid(final String entryGuid) {
+        this.entryGuid = entryGuid;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(final String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String getStatusText() {
+        return statusText;
+    }
+
+    public void setStatusText(final String statusText) {
+        this.statusText = statusText;
+    }
+
+    public String getVisibility() {
+        return visibility;
+    }
+
+    public void setVisibility(final String visibility) {
+        this.visibility = visibility;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public void setLanguage(final String language) {
+        this.language = language;
+    }
+
+    public Boolean getAiToot() {
+        return aiToot;
+    }
+
+    public void setAiToot(final Boolean aiToot) {
+        this.aiToot = aiToot;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(final State state) {
+        this.state = state;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(final int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(final Instant nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(final String lastError) {
+        this.lastError = lastError;
+    }
+
+    public String getMastodonStatusId() {
+        return mastodonStatusId;
+    }
+
+    public void setMastodonStatusId(final String mastodonStatusId) {
+        this.mastodonStatusId = mastodonStatusId;
+    }
+
+    public Instant getUncertainSince() {
+        return uncertainSince;
+    }
+
+    public void setUncertainSince(final Instant uncertainSince) {
+        this.uncertainSince = uncertainSince;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
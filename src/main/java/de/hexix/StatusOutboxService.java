@@ -0,0 +1,373 @@
+package de.hexix;
+
+import de.hexix.mastodon.api.MastodonDtos;
+import de.hexix.mastodon.resource.MastodonClient;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Entkoppelt das Erkennen neuer Feed-Einträge vom Posten auf Mastodon.
+ * <p>
+ * Der Feed-Abruf legt Toots nur im Ausgang ({@link StatusOutboxEntry}) ab. {@link #drain()} postet sie anschließend
+ * mit Idempotency-Key, wertet die X-RateLimit-Header von Mastodon aus und wiederholt fehlgeschlagene Versuche mit Backoff.
+ * Nach erfolgreichem Post wird zuerst die Status-ID in einer eigenen Transaktion am Eintrag gespeichert, erst danach der {@link PostedEntry}
+ * geschrieben. Scheitert der zweite Schritt, holt der nächste Lauf ihn nach, ohne erneut zu posten.
+ * <p>
+ * Nach einem Netzwerkfehler, 5xx oder 408 ist offen, ob Mastodon den Toot schon angenommen hat. Mastodon merkt sich einen
+ * Idempotency-Key aber nur etwa eine Stunde; solche Einträge werden deshalb nur innerhalb von {@code idempotencyWindow}
+ * wiederholt und danach als FAILED abgelegt, statt einen doppelten Toot zu riskieren. Fehlgeschlagene Einträge lassen sich
+ * über {@link #findFailed()}, {@link #requeue(Long)} und {@link #delete(Long)} prüfen und auflösen; {@link #purgeFailed()}
+ * räumt eindeutig abgelehnte nach {@code failedRetention} auf.
+ */
+@ApplicationScoped
+public class StatusOutboxService {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    @Inject
+    @RestClient
+    MastodonClient mastodonClient;
+
+    @ConfigProperty(name = "mastodon.access.token")
+    String accessToken;
+
+    @ConfigProperty(name = "feed2Mastodon.outbox.batchSize", defaultValue = "20")
+    int batchSize;
+
+    @ConfigProperty(name = "feed2Mastodon.outbox.maxAttempts", defaultValue = "10")
+    int maxAttempts;
+
+    @ConfigProperty(name = "feed2Mastodon.outbox.retryDelay", defaultValue = "30s")
+    Duration retryDelay;
+
+    @ConfigProperty(name = "feed2Mastodon.outbox.idempotencyWindow", defaultValue = "50m")
+    Duration idempotencyWindow;
+
+    @ConfigProperty(name = "feed2Mastodon.outbox.failedRetention", defaultValue = "7d")
+    Duration failedRetention;
+
+    @Inject
+    PostedEntryGuidCache postedEntryGuidCache;
+
+    // Bis zu diesem Zeitpunkt wird wegen des Rate-Limits nicht gepostet
+    private volatile Instant pausedUntil = Instant.EPOCH;
+
+    /**
+     * Legt einen Toot im Ausgang ab.
+     *
+     * @param feed      Der Feed, aus dem der Eintrag stammt.
+     * @param entryGuid Die GUID des Eintrags.
+     * @param payload   Der zu postende Status.
+     * @param aiToot    true, wenn der Text von der KI erzeugt wurde.
+     */
+    @Transactional
+    public void enqueue(final MonitoredFeed feed, final String entryGuid, final MastodonDtos.StatusPayload payload, final boolean aiToot) {
+        final StatusOutboxEntry entry = new StatusOutboxEntry();
+        entry.setFeed(MonitoredFeed.findById(feed.getId()));
+        entry.setEntryGuid(entryGuid);
+        entry.setIdempotencyKey(UUID.randomUUID().toString());
+        entry.setStatusText(payload.status());
+        entry.setVisibility(payload.visibility());
+        entry.setLanguage(payload.language());
+        entry.setAiToot(aiToot);
+        entry.persist();
+    }
+
+    /**
+     * Postet alle fälligen Toots aus dem Ausgang, bis das Rate-Limit erreicht ist.
+     */
+    public void drain() {
+        completeSentEntries();
+        while (Instant.now().isAfter(pausedUntil)) {
+            final List<StatusOutboxEntry> dueEntries = findDue();
+            if (dueEntries.isEmpty()) {
+                return;
+            }
+            for (StatusOutboxEntry entry : dueEntries) {
+                if (!Instant.now().isAfter(pausedUntil)) {
+                    return;
+                }
+                post(entry);
+            }
+        }
+    }
+
+    private void completeSentEntries() {
+        for (Long outboxId : findSentIds()) {
+            try {
+                markPosted(outboxId);
+            } catch (Exception e) {
+                LOG.errorf(e, "Geposteter Toot %d konnte nicht als gepostet vermerkt werden", outboxId);
+            }
+        }
+    }
+
+    @Transactional
+    List<Long> findSentIds() {
+        return StatusOutboxEntry.findSentIds();
+    }
+
+    @Transactional
+    List<StatusOutboxEntry> findDue() {
+        return StatusOutboxEntry.findDue(Instant.now(), batchSize);
+    }
+
+    private void post(final StatusOutboxEntry entry) {
+        if (entry.getUncertainSince() != null && Instant.now().isAfter(retryDeadline(entry.getUncertainSince()))) {
+            // z.B. nach langer Rate-Limit-Pause oder Ausfall: der Key schützt nicht mehr vor einem doppelten Toot
+            giveUpUncertain(entry.getId());
+            return;
+        }
+        final MastodonDtos.StatusPayload payload = new MastodonDtos.StatusPayload(entry.getStatusText(), entry.getVisibility(), entry.getLanguage());
+        Response response;
+        try {
+            response = mastodonClient.postStatusIdempotent("Bearer " + accessToken, entry.getIdempotencyKey(), payload);
+        } catch (WebApplicationException e) {
+            response = e.getResponse();
+        } catch (Exception e) {
+            // Netzwerkfehler o.ä.: später erneut versuchen
+            LOG.warnf("Toot %d konnte nicht gesendet werden: %s", entry.getId(), e.getMessage());
+            scheduleRetry(entry.getId(), e.getMessage(), true, true);
+            return;
+        }
+
+        try {
+            updateRateLimit(response);
+            final int status = response.getStatus();
+            if (response.getStatusInfo().getFamily() == Response.Status.Family.SUCCESSFUL) {
+                final MastodonDtos.MastodonStatus posted = response.readEntity(MastodonDtos.MastodonStatus.class);
+                // Zuerst nur die Status-ID sichern; ab hier wird der Eintrag nie wieder gepostet
+                markSent(entry.getId(), posted.id());
+                try {
+                    markPosted(entry.getId());
+                    LOG.info("Erfolgreich getootet und in DB gespeichert. Status-ID: " + posted.id());
+                } catch (Exception e) {
+                    LOG.errorf(e, "Toot %d ist gepostet (Status-ID %s), der Eintrag wird beim nächsten Lauf nachgetragen", entry.getId(), posted.id());
+                }
+            } else if (status == 429) {
+                // Nicht als Fehlversuch werten, nur bis zum Reset warten
+                LOG.warnf("Mastodon Rate-Limit erreicht, pausiere bis %s", pausedUntil);
+                scheduleRetry(entry.getId(), "HTTP 429", false, false);
+            } else if (status >= 500 || status == 408) {
+                scheduleRetry(entry.getId(), "HTTP " + status, true, true);
+            } else {
+                // z.B. 422: ein erneuter Versuch würde genauso scheitern
+                LOG.errorf("Toot %d wurde von Mastodon abgelehnt (HTTP %d)", entry.getId(), status);
+                markFailed(entry.getId(), "HTTP " + status);
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    private void updateRateLimit(final Response response) {
+        final String remaining = response.getHeaderString("X-RateLimit-Remaining");
+        final String reset = response.getHeaderString("X-RateLimit-Reset");
+        if (response.getStatus() != 429 && (remaining == null || !remaining.trim().equals("0"))) {
+            return;
+        }
+        Instant resetAt = Instant.now().plus(retryDelay);
+        if (reset != null) {
+            try {
+                resetAt = OffsetDateTime.parse(reset.trim()).toInstant();
+            } catch (Exception e) {
+                LOG.debugf("X-RateLimit-Reset nicht lesbar: %s", reset);
+            }
+        }
+        pausedUntil = resetAt;
+    }
+
+    @Transactional
+    void markSent(final Long outboxId, final String mastodonStatusId) {
+        StatusOutboxEntry.update("state = ?1, mastodonStatusId = ?2 where id = ?3", StatusOutboxEntry.State.SENT, mastodonStatusId, outboxId);
+    }
+
+    @Transactional
+    void markPosted(final Long outboxId) {
+        final StatusOutboxEntry entry = StatusOutboxEntry.findById(outboxId);
+        final PostedEntry postedEntry = new PostedEntry();
+        postedEntry.setFeed(entry.getFeed());
+        postedEntry.setEntryGuid(entry.getEntryGuid());
+        postedEntry.setMastodonStatusId(entry.getMastodonStatusId());
+        postedEntry.setPostedAt(Instant.now());
+        postedEntry.setAiToot(Boolean.TRUE.equals(entry.getAiToot()));
+        postedEntry.persist();
+        entry.delete();
+    }
+
+    /**
+     * Plant den nächsten Versuch.
+     *
+     * @param countAttempt false, wenn nur das Rate-Limit abgewartet wird.
+     * @param uncertain    true, wenn Mastodon den Toot trotz des Fehlers angenommen haben könnte.
+     */
+    @Transactional
+    void scheduleRetry(final Long outboxId, final String error, final boolean countAttempt, final boolean uncertain) {
+        final Instant now = Instant.now();
+        final StatusOutboxEntry entry = StatusOutboxEntry.findById(outboxId);
+        entry.setLastError(error);
+        if (uncertain && entry.getUncertainSince() == null) {
+            entry.setUncertainSince(now);
+        }
+        if (!countAttempt) {
+            entry.setNextAttemptAt(pausedUntil);
+            return;
+        }
+        entry.setAttempts(entry.getAttempts() + 1);
+        if (entry.getAttempts() >= maxAttempts) {
+            LOG.errorf("Toot %d nach %d Versuchen aufgegeben: %s", outboxId, entry.getAttempts(), error);
+            entry.setState(StatusOutboxEntry.State.FAILED);
+            return;
+        }
+        final Instant nextAttemptAt = nextAttemptAt(entry.getAttempts(), entry.getUncertainSince(), now);
+        if (nextAttemptAt == null) {
+            giveUpUncertain(entry);
+            return;
+        }
+        entry.setNextAttemptAt(nextAttemptAt);
+    }
+
+    /**
+     * Berechnet den nächsten Versuch mit exponentiellem Backoff (30s, 1m, 2m, 4m, ...).
+     * Ist offen, ob der Toot schon angekommen ist, liegt der Versuch spätestens kurz vor Ablauf von {@code idempotencyWindow};
+     * der Abstand von {@code retryDelay} lässt dem Ausgang Zeit, ihn noch innerhalb des Fensters abzuarbeiten.
+     *
+     * @param attempts       Die bisherigen Fehlversuche.
+     * @param uncertainSince Der erste unklare Fehlschlag oder null.
+     * @param now            Der aktuelle Zeitpunkt.
+     * @return Der Zeitpunkt des nächsten Versuchs oder null, wenn innerhalb des Fensters keiner mehr möglich ist.
+     */
+    Instant nextAttemptAt(final int attempts, final Instant uncertainSince, final Instant now) {
+        final Instant next = now.plus(retryDelay.multipliedBy(1L << Math.min(attempts - 1, 10)));
+        if (uncertainSince == null) {
+            return next;
+        }
+        final Instant lastAttempt = retryDeadline(uncertainSince).minus(retryDelay);
+        if (!next.isAfter(lastAttempt)) {
+            return next;
+        }
+        return now.isBefore(lastAttempt) ? lastAttempt : null;
+    }
+
+    private Instant retryDeadline(final Instant uncertainSince) {
+        return uncertainSince.plus(idempotencyWindow);
+    }
+
+    @Transactional
+    void giveUpUncertain(final Long outboxId) {
+        giveUpUncertain(StatusOutboxEntry.findById(outboxId));
+    }
+
+    private void giveUpUncertain(final StatusOutboxEntry entry) {
+        LOG.errorf("Toot %d nicht erneut gesendet: der Idempotency-Key ist nicht mehr sicher gültig und der Toot könnte schon gepostet sein (%s)",
+                entry.getId(), entry.getLastError());
+        entry.setState(StatusOutboxEntry.State.FAILED);
+        entry.setLastError("Idempotency-Key abgelaufen, Toot evtl. schon gepostet: " + entry.getLastError());
+    }
+
+    @Transactional
+    void markFailed(final Long outboxId, final String error) {
+        final StatusOutboxEntry entry = StatusOutboxEntry.findById(outboxId);
+        entry.setState(StatusOutboxEntry.State.FAILED);
+        entry.setLastError(error);
+    }
+
+    /**
+     * Lädt die endgültig fehlgeschlagenen Toots.
+     *
+     * @return Die Einträge, ältester zuerst.
+     */
+    @Transactional
+    public List<FailedToot> findFailed() {
+        return StatusOutboxEntry.findFailed().stream().map(FailedToot::of).toList();
+    }
+
+    /**
+     * Legt einen fehlgeschlagenen Toot mit neuem Idempotency-Key wieder in den Ausgang.
+     * Bei einem unklaren Fehlschlag sollte vorher geprüft werden, ob der Toot nicht doch gepostet wurde.
+     *
+     * @param outboxId Die ID des Eintrags.
+     * @return false, wenn es keinen fehlgeschlagenen Eintrag mit dieser ID gibt.
+     */
+    @Transactional
+    public boolean requeue(final Long outboxId) {
+        final StatusOutboxEntry entry = StatusOutboxEntry.findById(outboxId);
+        if (entry == null || entry.getState() != StatusOutboxEntry.State.FAILED) {
+            return false;
+        }
+        entry.setState(StatusOutboxEntry.State.PENDING);
+        entry.setIdempotencyKey(UUID.randomUUID().toString());
+        entry.setAttempts(0);
+        entry.setUncertainSince(null);
+        entry.setNextAttemptAt(Instant.now());
+        return true;
+    }
+
+    /**
+     * Löscht einen fehlgeschlagenen Toot. Seine GUID blockiert den Feed-Eintrag danach nicht mehr;
+     * steht der Eintrag noch im Feed, wird er beim nächsten Abruf neu abgelegt.
+     *
+     * @param outboxId Die ID des Eintrags.
+     * @return false, wenn es keinen fehlgeschlagenen Eintrag mit dieser ID gibt.
+     */
+    @Transactional
+    public boolean delete(final Long outboxId) {
+        final StatusOutboxEntry entry = StatusOutboxEntry.findById(outboxId);
+        if (entry == null || entry.getState() != StatusOutboxEntry.State.FAILED) {
+            return false;
+        }
+        entry.delete();
+        postedEntryGuidCache.forget(entry.getFeed().getId(), entry.getEntryGuid());
+        return true;
+    }
+
+    /**
+     * Löscht fehlgeschlagene Toots, die älter als {@code failedRetention} sind. Unklare Fehlschläge bleiben liegen,
+     * bis sie von Hand aufgelöst werden, weil ein neuer Versuch den Toot doppelt posten könnte.
+     */
+    @Transactional
+    public void purgeFailed() {
+        final List<StatusOutboxEntry> failed = StatusOutboxEntry.findFailed();
+        if (!failed.isEmpty()) {
+            LOG.warnf("%d fehlgeschlagene Toots im Ausgang", failed.size());
+        }
+        final Instant before = Instant.now().minus(failedRetention);
+        int purged = 0;
+        for (StatusOutboxEntry entry : failed) {
+            if (entry.getUncertainSince() == null && entry.getCreatedAt().isBefore(before)) {
+                entry.delete();
+                postedEntryGuidCache.forget(entry.getFeed().getId(), entry.getEntryGuid());
+                purged++;
+            }
+        }
+        if (purged > 0) {
+            LOG.infof("%d fehlgeschlagene Toots aus dem Ausgang gelöscht", purged);
+        }
+    }
+
+    /**
+     * Ein endgültig fehlgeschlagener Toot.
+     *
+     * @param uncertain true, wenn der Toot trotz des Fehlers gepostet worden sein könnte.
+     */
+    public record FailedToot(Long id, Long feedId, String entryGuid, String statusText, int attempts, String lastError,
+                             boolean uncertain, Instant createdAt) {
+
+        static FailedToot of(final StatusOutboxEntry entry) {
+            return new FailedToot(entry.getId(), entry.getFeed().getId(), entry.getEntryGuid(), entry.getStatusText(),
+                    entry.getAttempts(), entry.getLastError(), entry.getUncertainSince() != null, entry.getCreatedAt());
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package de.hexix;
+
+import de.hexix.mastodon.Embedding;
+import de.hexix.mastodon.api.MastodonDtos;
+import de.hexix.util.VectorMath;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Entscheidet vor dem Speichern, ob ein Post aus dem öffentlichen Stream überhaupt weiterverarbeitet wird.
+ * <p>
+ * Abgelehnte Posts werden weder gespeichert noch an Ollama geschickt. Geprüft werden in dieser Reihenfolge: Erlaubnisliste
+ * (immer zulassen), Sperrliste, Boosts, Bot-Accounts, Sprache, Mindestlänge, bereits gesehene Links und optional eine
+ * günstige Vorbewertung. Ohne Konfiguration greift nur die Sperrliste, alle anderen Regeln sind zuschaltbar. Die Vorbewertung
+ * vergleicht gehashte Wortvektoren mit einem Wortprofil aus den Favoriten und braucht daher kein Embedding. Alle Regeln zählen
+ * mit, siehe {@link #stats()}.
+ * <p>
+ * Läuft im Stream-Thread und fragt daher nie die Datenbank ab; das Wortprofil wird von {@link #refreshLexicalProfile()} gesetzt.
+ */
+@ApplicationScoped
+public class StreamAdmissionFilter {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]{3,}");
+
+    /**
+     * Anzahl der Dimensionen des gehashten Wortvektors.
+     */
+    static final int LEXICAL_DIMENSIONS = 4096;
+
+    public enum Rule {
+        ADMITTED, ALLOWED_ACCOUNT, DENIED_ACCOUNT, REBLOG, BOT, LANGUAGE, TOO_SHORT, DUPLICATE_URL, LOW_PRE_SCORE
+    }
+
+    @ConfigProperty(name = "feed2Mastodon.admission.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "feed2Mastodon.admission.languages")
+    Optional<Set<String>> languages;
+
+    @ConfigProperty(name = "feed2Mastodon.admission.allowUnknownLanguage", defaultValue = "true")
+    boolean allowUnknownLanguage;
+
+    @ConfigProperty(name = "feed2Mastodon.admission.allowAccounts")
+    Optional<Set<String>> allowAccounts;
+
+    @ConfigProperty(name = "feed2Mastodon.admission.denyAccounts")
+    Optional<Set<String>> denyAccounts;
+
+    @ConfigProperty(name = "feed2Mastodon.admission.minTextLength", defaultValue = "0")
+    int minTextLength;
+
+    @ConfigProperty(name = "feed2Mastodon.admission.rejectBots", defaultValue = "false")
+    boolean rejectBots;
+
+    @ConfigProperty(name = "feed2Mastodon.admission.rejectReblogs", defaultValue = "false")
+    boolean rejectReblogs;
+
+    // 0 schaltet die Prüfung auf bereits gesehene Links ab
+    @ConfigProperty(name = "feed2Mastodon.admission.duplicateUrlCacheSize", defaultValue = "0")
+    int duplicateUrlCacheSize;
+
+    @ConfigProperty(name = "feed2Mastodon.admission.preScore.enabled", defaultValue = "false")
+    boolean preScoreEnabled;
+
+    @ConfigProperty(name = "feed2Mastodon.admission.preScore.minSimilarity", defaultValue = "0.05")
+    double preScoreMinSimilarity;
+
+    private final Map<Rule, AtomicLong> counters = new EnumMap<>(Rule.class);
+
+    // Zuletzt gesehene, normalisierte Links
+    private final Map<String, Boolean> seenUrls = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+            return size() > duplicateUrlCacheSize;
+        }
+    };
+
+    private volatile float[] lexicalProfile;
+
+    public StreamAdmissionFilter() {
+        for (Rule rule : Rule.values()) {
+            counters.put(rule, new AtomicLong());
+        }
+    }
+
+    /**
+     * Prüft einen Status aus dem Stream.
+     *
+     * @return {@link Rule#ADMITTED} oder {@link Rule#ALLOWED_ACCOUNT}, wenn er gespeichert werden soll, sonst die ablehnende Regel.
+     */
+    public Rule check(final MastodonDtos.StreamStatus status) {
+        final Rule rule = enabled ? evaluate(status) : Rule.ADMITTED;
+        counters.get(rule).incrementAndGet();
+        return rule;
+    }
+
+    public static boolean isAdmitted(final Rule rule) {
+        return rule == Rule.ADMITTED || rule == Rule.ALLOWED_ACCOUNT;
+    }
+
+    private Rule evaluate(final MastodonDtos.StreamStatus status) {
+        final String acct = status.acct() == null ? "" : status.acct().toLowerCase(Locale.ROOT);
+        final Document document = Jsoup.parse(status.content() == null ? "" : status.content());
+        final List<String> urls = externalUrls(document);
+
+        if (matches(allowAccounts, acct)) {
+            remember(urls);
+            return Rule.ALLOWED_ACCOUNT;
+        }
+        if (matches(denyAccounts, acct)) {
+            return Rule.DENIED_ACCOUNT;
+        }
+        if (rejectReblogs && status.reblog()) {
+            return Rule.REBLOG;
+        }
+        if (rejectBots && status.bot()) {
+            return Rule.BOT;
+        }
+        if (languages.isPresent() && !languages.get().isEmpty()) {
+            final String language = status.language();
+            if (language == null ? !allowUnknownLanguage : !languages.get().contains(language.toLowerCase(Locale.ROOT))) {
+                return Rule.LANGUAGE;
+            }
+        }
+        final String text = document.text();
+        // Kurze Posts mit Link bleiben, der Artikel liefert den Text
+        if (urls.isEmpty() && text.strip().length() < minTextLength) {
+            return Rule.TOO_SHORT;
+        }
+        if (duplicateUrlCacheSize > 0 && !urls.isEmpty() && allSeen(urls)) {
+            return Rule.DUPLICATE_URL;
+        }
+        final float[] profile = lexicalProfile;
+        if (preScoreEnabled && profile != null) {
+            final float similarity = VectorMath.dot(profile, lexicalVector(text));
+            if (similarity < preScoreMinSimilarity) {
+                return Rule.LOW_PRE_SCORE;
+            }
+        }
+        remember(urls);
+        return Rule.ADMITTED;
+    }
+
+    private static boolean matches(final Optional<Set<String>> accounts, final String acct) {
+        return accounts.isPresent() && accounts.get().stream().anyMatch(account -> account.equalsIgnoreCase(acct));
+    }
+
+    private static List<String> externalUrls(final Document document) {
+        final List<String> urls = new ArrayList<>();
+        // Erwähnungen und Hashtags sind Links auf Mastodon selbst
+        for (Element link : document.select("a[href]:not(.mention):not(.hashtag)")) {
+            final String href = link.attr("href");
+            if (href.startsWith("http")) {
+                urls.add(ArticleCache.normalizeUrl(href));
+            }
+        }
+        return urls;
+    }
+
+    private boolean allSeen(final List<String> urls) {
+        synchronized (seenUrls) {
+            return urls.stream().allMatch(seenUrls::containsKey);
+        }
+    }
+
+    private void remember(final List<String> urls) {
+        if (duplicateUrlCacheSize <= 0) {
+            return;
+        }
+        synchronized (seenUrls) {
+            urls.forEach(url -> seenUrls.put(url, Boolean.TRUE));
+        }
+    }
+
+    /**
+     * Baut das Wortprofil für die Vorbewertung aus den Texten der positiv bewerteten Favoriten neu auf.
+     */
+    @Transactional
+    public void refreshLexicalProfile() {
+        if (!preScoreEnabled) {
+            return;
+        }
+        final List<String> texts = Embedding.findAllPositiveTexts();
+        if (texts.isEmpty()) {
+            lexicalProfile = null;
+            return;
+        }
+        final float[] sum = new float[LEXICAL_DIMENSIONS];
+        for (String text : texts) {
+            final float[] vector = lexicalVector(text);
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += vector[i];
+            }
+        }
+        lexicalProfile = VectorMath.normalize(sum);
+        LOG.infof("Wortprofil für die Vorbewertung aus %d Favoriten aufgebaut", texts.size());
+    }
+
+    /**
+     * Gehashter, normalisierter Wortvektor (logarithmische Häufigkeit) eines Textes.
+     */
+    static float[] lexicalVector(final String text) {
+        final float[] vector = new float[LEXICAL_DIMENSIONS];
+        if (text == null) {
+            return vector;
+        }
+        final Map<String, Long> counts = WORD.matcher(text.toLowerCase(Locale.ROOT)).results()
+                .collect(Collectors.groupingBy(match -> match.group(), Collectors.counting()));
+        counts.forEach((word, count) -> vector[Math.floorMod(word.hashCode(), LEXICAL_DIMENSIONS)] += (float) (1 + Math.log(count)));
+        return VectorMath.normalize(vector);
+    }
+
+    /**
+     * Zähler pro Regel seit dem Start.
+     */
+    public Map<String, Long> stats() {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        counters.forEach((rule, counter) -> stats.put(rule.name(), counter.get()));
+        return stats;
+    }
+}
@@ -0,0 +1,201 @@
+package de.hexix;
+
+import com.rometools.rome.feed.synd.SyndContent;
+import com.rometools.rome.feed.synd.SyndContentImpl;
+import com.rometools.rome.feed.synd.SyndEntry;
+import com.rometools.rome.feed.synd.SyndEntryImpl;
+import com.rometools.rome.io.impl.DateParser;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Liest RSS- und Atom-Feeds Element für Element per StAX, statt wie {@link com.rometools.rome.io.SyndFeedInput}
+ * das ganze Dokument als DOM aufzubauen.
+ * <p>
+ * Gedacht für sehr große, archivartige Feeds: Sobald mehrere Einträge in Folge älter als die Grenze sind,
+ * wird das Lesen abgebrochen. Befüllt werden nur die Felder, die beim Posten verwendet werden.
+ */
+public class StreamingFeedParser {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    // Namensräume der ausgewerteten Elemente; alles andere (z.B. media:*, itunes:*) wird übersprungen
+    private static final Set<String> FEED_NAMESPACES = Set.of("", "http://purl.org/rss/1.0/", "http://www.w3.org/2005/Atom", "http://purl.org/atom/ns#");
+    private static final String CONTENT_NAMESPACE = "http://purl.org/rss/1.0/modules/content/";
+    private static final String DC_NAMESPACE = "http://purl.org/dc/elements/1.1/";
+
+    private enum Namespace {FEED, CONTENT, DC, OTHER}
+
+    private final Instant notBefore;
+    private final int maxConsecutiveOld;
+
+    /**
+     * @param notBefore         Ältere Einträge werden verworfen (null = alle übernehmen). Einträge genau zu diesem Zeitpunkt
+     *                          bleiben, ob sie neu sind, entscheidet der Aufrufer anhand der GUID.
+     * @param maxConsecutiveOld Nach so vielen zu alten Einträgen in Folge wird abgebrochen; Feeds sind nicht immer streng sortiert.
+     */
+    public StreamingFeedParser(final Instant notBefore, final int maxConsecutiveOld) {
+        this.notBefore = notBefore;
+        this.maxConsecutiveOld = maxConsecutiveOld;
+    }
+
+    public List<SyndEntry> parse(final InputStream inputStream) throws XMLStreamException {
+        final List<SyndEntry> entries = new ArrayList<>();
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(inputStream);
+        try {
+            int consecutiveOld = 0;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                final String name = reader.getLocalName();
+                if (namespace(reader) != Namespace.FEED || (!"item".equals(name) && !"entry".equals(name))) {
+                    continue;
+                }
+                final SyndEntry entry = readEntry(reader);
+                final Date date = entry.getPublishedDate() != null ? entry.getPublishedDate() : entry.getUpdatedDate();
+                if (notBefore != null && date != null && date.toInstant().isBefore(notBefore)) {
+                    if (++consecutiveOld >= maxConsecutiveOld) {
+                        break;
+                    }
+                    continue;
+                }
+                consecutiveOld = 0;
+                entries.add(entry);
+            }
+        } finally {
+            reader.close();
+        }
+        return entries;
+    }
+
+    private SyndEntry readEntry(final XMLStreamReader reader) throws XMLStreamException {
+        final SyndEntryImpl entry = new SyndEntryImpl();
+        final Links links = new Links();
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            final String name = reader.getLocalName();
+            switch (namespace(reader)) {
+                case FEED -> readFeedElement(reader, entry, name, links);
+                case CONTENT -> {
+                    final String value = readText(reader);
+                    if ("encoded".equals(name)) {
+                        entry.setContents(List.of(content(value)));
+                    }
+                }
+                case DC -> {
+                    final String value = readText(reader);
+                    if ("date".equals(name) && entry.getPublishedDate() == null) {
+                        entry.setPublishedDate(parseDate(value));
+                    }
+                }
+                case OTHER -> readText(reader);
+            }
+        }
+        if (entry.getLink() == null) {
+            entry.setLink(links.atomLink);
+        }
+        entry.setUri(links.guid != null ? links.guid : entry.getLink());
+        return entry;
+    }
+
+    // Zwischenstand eines Eintrags, der erst am Ende übernommen wird
+    private static final class Links {
+        private String guid;
+        private String atomLink;
+    }
+
+    private static void readFeedElement(final XMLStreamReader reader, final SyndEntryImpl entry, final String name, final Links links)
+            throws XMLStreamException {
+        switch (name) {
+            case "title" -> entry.setTitle(readText(reader));
+            case "link" -> {
+                final String href = reader.getAttributeValue(null, "href");
+                if (href != null) {
+                    // Atom: bevorzugt der alternate-Link
+                    final String rel = reader.getAttributeValue(null, "rel");
+                    if (links.atomLink == null || rel == null || "alternate".equals(rel)) {
+                        links.atomLink = href;
+                    }
+                    readText(reader);
+                } else {
+                    entry.setLink(readText(reader));
+                }
+            }
+            case "guid", "id" -> links.guid = readText(reader);
+            case "description", "summary" -> entry.setDescription(content(readText(reader)));
+            case "content" -> entry.setContents(List.of(content(readText(reader))));
+            case "pubDate", "published", "issued" -> entry.setPublishedDate(parseDate(readText(reader)));
+            case "updated", "modified" -> entry.setUpdatedDate(parseDate(readText(reader)));
+            default -> readText(reader);
+        }
+    }
+
+    private static Namespace namespace(final XMLStreamReader reader) {
+        final String uri = reader.getNamespaceURI();
+        if (uri == null || FEED_NAMESPACES.contains(uri)) {
+            return Namespace.FEED;
+        }
+        return switch (uri) {
+            case CONTENT_NAMESPACE -> Namespace.CONTENT;
+            case DC_NAMESPACE -> Namespace.DC;
+            default -> Namespace.OTHER;
+        };
+    }
+
+    /**
+     * Liest den gesamten Text bis zum schließenden Tag des aktuellen Elements, auch über verschachtelte Elemente hinweg
+     * (z.B. Atom-Inhalte vom Typ xhtml).
+     */
+    private static String readText(final XMLStreamReader reader) throws XMLStreamException {
+        final StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> depth++;
+                case XMLStreamConstants.END_ELEMENT -> depth--;
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE ->
+                        text.append(reader.getText());
+                default -> {
+                }
+            }
+        }
+        return text.toString().trim();
+    }
+
+    private static SyndContent content(final String value) {
+        final SyndContentImpl content = new SyndContentImpl();
+        content.setType("text/html");
+        content.setValue(value);
+        return content;
+    }
+
+    private static Date parseDate(final String value) {
+        return value == null || value.isEmpty() ? null : DateParser.parseDate(value, Locale.ENGLISH);
+    }
+
+    private static XMLInputFactory createFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Keine DTDs oder externen Entitäten aus fremden Feeds auflösen
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
@@ -0,0 +1,232 @@
+package de.hexix.ai;
+
+import de.hexix.ai.dto.EmbeddingRequest;
+import de.hexix.ai.dto.EmbeddingResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Fasst die Textabschnitte vieler Posts zu wenigen {@code /api/embed}-Aufrufen zusammen.
+ * <p>
+ * Alle Abschnitte werden nach Modell und {@code truncate} gruppiert und in Batches mit höchstens {@link #maxInputs} Texten
+ * bzw. {@link #maxChars} Zeichen gepackt. Bis zu {@link #maxInFlight} Batches laufen gleichzeitig, damit Ollama zwischen zwei
+ * Anfragen nicht leerläuft. Die Ergebnisse werden wieder dem jeweiligen Schlüssel in der ursprünglichen Reihenfolge zugeordnet.
+ * Vor dem Aufruf wird der {@link EmbeddingCache} gefragt, danach werden die neuen Vektoren dort abgelegt.
+ * Lehnt Ollama einen Batch ab (z.B. weil ohne {@code truncate} ein Abschnitt zu lang ist), wird er halbiert und erneut
+ * gesendet, bis nur noch die fehlerhaften Texte übrig sind.
+ */
+@ApplicationScoped
+public class EmbeddingBatchClient {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    @Inject
+    @RestClient
+    OllamaRestClient ollamaRestClient;
+
+    @Inject
+    EmbeddingCache embeddingCache;
+
+    @ConfigProperty(name = "feed2Mastodon.embeddingBatch.maxInputs", defaultValue = "32")
+    int maxInputs;
+
+    @ConfigProperty(name = "feed2Mastodon.embeddingBatch.maxChars", defaultValue = "32000")
+    int maxChars;
+
+    @ConfigProperty(name = "feed2Mastodon.embeddingBatch.maxInFlight", defaultValue = "2")
+    int maxInFlight;
+
+    private ExecutorService executor;
+    private Semaphore inFlight;
+
+    @PostConstruct
+    void init() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        inFlight = new Semaphore(maxInFlight);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    record Chunk<K>(K key, int index) {}
+
+    record Group(String model, Boolean truncate) {}
+
+    // Ein eindeutiger Text und alle Stellen, an denen er angefragt wurde
+    record Text<K>(Group group, String cacheKey, String text, List<Chunk<K>> chunks) {}
+
+    record Batch<K>(Group group, List<Text<K>> texts) {}
+
+    /**
+     * Berechnet die Vektoren aller Anfragen. Gleiche Texte werden nur einmal berechnet, bekannte Texte kommen aus dem {@link EmbeddingCache}.
+     *
+     * @param requestsByKey Die Anfragen pro Schlüssel (z.B. Mastodon-ID); jede Anfrage darf mehrere Texte enthalten.
+     * @return Die Vektoren pro Schlüssel in der Reihenfolge der Texte. Schlüssel, bei denen ein Batch fehlgeschlagen ist, fehlen.
+     */
+    public <K> Map<K, List<double[]>> embed(final Map<K, List<EmbeddingRequest>> requestsByKey) {
+        final Map<K, double[][]> results = new LinkedHashMap<>();
+        final Map<String, Text<K>> texts = new LinkedHashMap<>();
+        for (Map.Entry<K, List<EmbeddingRequest>> entry : requestsByKey.entrySet()) {
+            int index = 0;
+            for (EmbeddingRequest request : entry.getValue()) {
+                final Group group = new Group(request.model(), request.truncate());
+                for (String text : request.input()) {
+                    final String cacheKey = EmbeddingCache.key(request.model(), text);
+                    texts.computeIfAbsent(cacheKey, k -> new Text<>(group, k, text, new ArrayList<>()))
+                            .chunks().add(new Chunk<>(entry.getKey(), index++));
+                }
+            }
+            results.put(entry.getKey(), new double[index][]);
+        }
+
+        final Map<String, double[]> cached = embeddingCache.getAll(texts.keySet());
+        final Map<Group, List<Text<K>>> textsByGroup = new LinkedHashMap<>();
+        for (Text<K> text : texts.values()) {
+            final double[] vector = cached.get(text.cacheKey());
+            if (vector != null) {
+                fill(results, text, vector);
+            } else {
+                textsByGroup.computeIfAbsent(text.group(), g -> new ArrayList<>()).add(text);
+            }
+        }
+
+        final List<Batch<K>> batches = pack(textsByGroup);
+        final List<Future<List<double[]>>> futures = new ArrayList<>(batches.size());
+        for (Batch<K> batch : batches) {
+            futures.add(executor.submit(() -> send(batch)));
+        }
+
+        final Set<K> failed = new HashSet<>();
+        for (int i = 0; i < batches.size(); i++) {
+            final Batch<K> batch = batches.get(i);
+            try {
+                try {
+                    accept(results, batch, futures.get(i).get());
+                } catch (ExecutionException e) {
+                    retry(results, batch, e.getCause(), failed);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                markFailed(batch, failed);
+            }
+        }
+
+        final Map<K, List<double[]>> byKey = new LinkedHashMap<>();
+        results.forEach((key, vectors) -> {
+            if (!failed.contains(key)) {
+                byKey.put(key, List.of(vectors));
+            }
+        });
+        if (!texts.isEmpty()) {
+            LOG.debugf("%d Texte: %d aus dem Cache, %d in %d Batches berechnet", texts.size(), cached.size(),
+                    textsByGroup.values().stream().mapToInt(List::size).sum(), batches.size());
+        }
+        return byKey;
+    }
+
+    private <K> void accept(final Map<K, double[][]> results, final Batch<K> batch, final List<double[]> vectors) {
+        final Map<String, double[]> computed = new LinkedHashMap<>();
+        for (int j = 0; j < batch.texts().size(); j++) {
+            final Text<K> text = batch.texts().get(j);
+            fill(results, text, vectors.get(j));
+            computed.put(text.cacheKey(), vectors.get(j));
+        }
+        embeddingCache.putAll(batch.group().model(), computed);
+    }
+
+    /**
+     * Sendet die beiden Hälften eines fehlgeschlagenen Batches einzeln, damit nur die Schlüssel der fehlerhaften Texte
+     * ausfallen. {@link #pack} bildet bei jedem Lauf dieselben Batches, ohne Aufteilen würden sonst immer dieselben Posts scheitern.
+     */
+    private <K> void retry(final Map<K, double[][]> results, final Batch<K> batch, final Throwable cause, final Set<K> failed)
+            throws InterruptedException {
+        final List<Text<K>> texts = batch.texts();
+        if (texts.size() == 1) {
+            final Text<K> text = texts.getFirst();
+            LOG.errorf(cause, "Text mit %d Zeichen für %s konnte nicht berechnet werden", text.text().length(),
+                    text.chunks().stream().map(Chunk::key).distinct().toList());
+            markFailed(batch, failed);
+            return;
+        }
+        LOG.warnf("Batch mit %d Texten fehlgeschlagen, versuche ihn aufgeteilt erneut: %s", texts.size(), cause.getMessage());
+        final int half = texts.size() / 2;
+        for (List<Text<K>> part : List.of(texts.subList(0, half), texts.subList(half, texts.size()))) {
+            final Batch<K> smaller = new Batch<>(batch.group(), part);
+            try {
+                accept(results, smaller, send(smaller));
+            } catch (RuntimeException e) {
+                retry(results, smaller, e, failed);
+            }
+        }
+    }
+
+    private static <K> void markFailed(final Batch<K> batch, final Set<K> failed) {
+        batch.texts().forEach(text -> text.chunks().forEach(chunk -> failed.add(chunk.key())));
+    }
+
+    private static <K> void fill(final Map<K, double[][]> results, final Text<K> text, final double[] vector) {
+        for (Chunk<K> chunk : text.chunks()) {
+            results.get(chunk.key())[chunk.index()] = vector;
+        }
+    }
+
+    <K> List<Batch<K>> pack(final Map<Group, List<Text<K>>> textsByGroup) {
+        final List<Batch<K>> batches = new ArrayList<>();
+        for (Map.Entry<Group, List<Text<K>>> entry : textsByGroup.entrySet()) {
+            List<Text<K>> current = new ArrayList<>();
+            int chars = 0;
+            for (Text<K> text : entry.getValue()) {
+                final int length = text.text().length();
+                // Ein einzelner zu langer Abschnitt bekommt einen eigenen Batch
+                if (!current.isEmpty() && (current.size() >= maxInputs || chars + length > maxChars)) {
+                    batches.add(new Batch<>(entry.getKey(), current));
+                    current = new ArrayList<>();
+                    chars = 0;
+                }
+                current.add(text);
+                chars += length;
+            }
+            if (!current.isEmpty()) {
+                batches.add(new Batch<>(entry.getKey(), current));
+            }
+        }
+        return batches;
+    }
+
+    <K> List<double[]> send(final Batch<K> batch) throws InterruptedException {
+        final List<String> input = batch.texts().stream().map(Text::text).toList();
+        inFlight.acquire();
+        final EmbeddingResponse response;
+        try {
+            response = ollamaRestClient.generateEmbeddings(new EmbeddingRequest(batch.group().model(), input, batch.group().truncate()));
+        } finally {
+            inFlight.release();
+        }
+        if (response.embeddings() == null || response.embeddings().size() != input.size()) {
+            throw new IllegalStateException("Ollama lieferte " + (response.embeddings() == null ? 0 : response.embeddings().size())
+                    + " statt " + input.size() + " Vektoren");
+        }
+        return response.embeddings().stream()
+                .map(values -> values.stream().mapToDouble(Double::doubleValue).toArray())
+                .toList();
+    }
+}
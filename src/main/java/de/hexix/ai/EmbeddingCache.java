@@ -0,0 +1,155 @@
+package de.hexix.ai;
+
+import de.hexix.util.HashUtil;
+import de.hexix.util.VektorUtil;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Inhaltsadressierter Cache für lokale Embeddings, damit derselbe Text nicht mehrfach von Ollama berechnet wird.
+ * <p>
+ * Schlüssel ist das Modell plus SHA-256 des normalisierten Textabschnitts (siehe {@link #key(String, String)}).
+ * Vor der Tabelle {@code embedding_cache} liegt eine begrenzte LRU-Stufe im Speicher. Da das Modell Teil des Schlüssels ist,
+ * treffen nach einem Modellwechsel keine alten Vektoren mehr; beim Start werden die Einträge anderer Modelle gelöscht.
+ */
+@ApplicationScoped
+public class EmbeddingCache {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final int LOOKUP_BATCH_SIZE = 500;
+
+    @ConfigProperty(name = "local.model", defaultValue = "granite-embedding:278m")
+    String localModel;
+
+    @ConfigProperty(name = "feed2Mastodon.embeddingCache.maxEntries", defaultValue = "5000")
+    int maxEntries;
+
+    @ConfigProperty(name = "feed2Mastodon.embeddingCache.ttl", defaultValue = "30d")
+    Duration ttl;
+
+    // float32 reicht für Embeddings und halbiert den Speicherbedarf
+    private final Map<String, float[]> memory = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, float[]> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    @Transactional
+    void onStart(@Observes StartupEvent ev) {
+        final long deleted = EmbeddingCacheEntry.deleteOtherModels(localModel);
+        if (deleted > 0) {
+            LOG.infof("%d Embeddings anderer Modelle aus dem Cache gelöscht, aktuelles Modell: %s", deleted, localModel);
+        }
+    }
+
+    /**
+     * Schlüssel für einen Textabschnitt.
+     *
+     * @param model Das Embedding-Modell.
+     * @param text  Der Textabschnitt.
+     * @return Modell und SHA-256 des normalisierten Textes, getrennt durch einen Doppelpunkt.
+     */
+    public static String key(final String model, final String text) {
+        return model + ":" + HashUtil.sha256(normalize(text));
+    }
+
+    /**
+     * Normalisiert einen Text für den Schlüssel: Unicode NFC, Leerraum zusammengefasst und an den Rändern entfernt.
+     */
+    static String normalize(final String text) {
+        if (text == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFC)).replaceAll(" ").strip();
+    }
+
+    /**
+     * Sucht die Vektoren zu den Schlüsseln, zuerst im Speicher, dann in der Tabelle.
+     *
+     * @param cacheKeys Die Schlüssel aus {@link #key(String, String)}.
+     * @return Die gefundenen Vektoren pro Schlüssel; fehlende Schlüssel sind nicht enthalten.
+     */
+    @Transactional
+    public Map<String, double[]> getAll(final Collection<String> cacheKeys) {
+        final Map<String, double[]> found = new HashMap<>();
+        final List<String> missing = new ArrayList<>();
+        synchronized (memory) {
+            for (String cacheKey : cacheKeys) {
+                final float[] vector = memory.get(cacheKey);
+                if (vector != null) {
+                    found.put(cacheKey, VektorUtil.toDoubleArray(vector));
+                } else {
+                    missing.add(cacheKey);
+                }
+            }
+        }
+        for (int i = 0; i < missing.size(); i += LOOKUP_BATCH_SIZE) {
+            final List<String> batch = missing.subList(i, Math.min(i + LOOKUP_BATCH_SIZE, missing.size()));
+            for (EmbeddingCacheEntry entry : EmbeddingCacheEntry.findByKeys(batch)) {
+                final float[] vector = VektorUtil.BinaryVectorCodec.decode(entry.getVector());
+                synchronized (memory) {
+                    memory.put(entry.getCacheKey(), vector);
+                }
+                found.put(entry.getCacheKey(), VektorUtil.toDoubleArray(vector));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Legt frisch berechnete Vektoren im Speicher und in der Tabelle ab.
+     *
+     * @param model   Das Modell, mit dem die Vektoren berechnet wurden.
+     * @param vectors Die Vektoren pro Schlüssel.
+     */
+    public void putAll(final String model, final Map<String, double[]> vectors) {
+        final Map<String, byte[]> encoded = new LinkedHashMap<>();
+        synchronized (memory) {
+            vectors.forEach((cacheKey, vector) -> {
+                final float[] floats = VektorUtil.toFloatArray(vector);
+                memory.put(cacheKey, floats);
+                encoded.put(cacheKey, VektorUtil.BinaryVectorCodec.encode(floats, VektorUtil.BinaryVectorCodec.Encoding.FLOAT32));
+            });
+        }
+        try {
+            persist(model, encoded);
+        } catch (Exception e) {
+            LOG.warnf("Embeddings konnten nicht im Cache gespeichert werden: %s", e.getMessage());
+        }
+    }
+
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    void persist(final String model, final Map<String, byte[]> encoded) {
+        encoded.forEach((cacheKey, vector) -> EmbeddingCacheEntry.insertIfAbsent(cacheKey, model, vector));
+    }
+
+    /**
+     * Löscht Einträge, die älter als {@link #ttl} sind.
+     */
+    @Transactional
+    public void purgeExpired() {
+        final long deleted = EmbeddingCacheEntry.deleteCreatedBefore(Instant.now().minus(ttl));
+        if (deleted > 0) {
+            LOG.infof("%d alte Embeddings aus dem Cache gelöscht", deleted);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package de.hexix.ai;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Persistente Stufe des {@link EmbeddingCache}.
+ */
+@Entity
+@Table(name = "embedding_cache")
+public class EmbeddingCacheEntry extends PanacheEntityBase {
+
+    @Id
+    @Column(name = "cache_key", columnDefinition = "TEXT")
+    private String cacheKey;
+
+    @Column(name = "model", nullable = false, columnDefinition = "TEXT")
+    private String model;
+
+    @Column(name = "vector", nullable = false)
+    private byte[] vector;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public EmbeddingCacheEntry() {
+    }
+
+    public static List<EmbeddingCacheEntry> findByKeys(final Collection<String> cacheKeys) {
+        return list("cacheKey in ?1", cacheKeys);
+    }
+
+    /**
+     * Legt einen Eintrag an; hat ein paralleler Lauf denselben Text schon gespeichert, bleibt dessen Eintrag bestehen.
+     */
+    public static void insertIfAbsent(final String cacheKey, final String model, final byte[] vector) {
+        getEntityManager().createNativeQuery("""
+                        INSERT INTO embedding_cache (cache_key, model, vector, created_at)
+                        VALUES (?1, ?2, ?3, NOW())
+                        ON CONFLICT (cache_key) DO NOTHING
+                        """)
+                .setParameter(1, cacheKey)
+                .setParameter(2, model)
+                .setParameter(3, vector)
+                .executeUpdate();
+    }
+
+    public static long deleteOtherModels(final String model) {
+        return delete("model <> ?1", model);
+    }
+
+    public static long deleteCreatedBefore(final Instant createdAt) {
+        return delete("createdAt < ?1", createdAt);
+    }
+
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public byte[] getVector() {
+        return vector;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,211 @@
+package de.hexix.ai;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Gemeinsames Kontingent für Gemini-Anfragen, pro Modell im Speicher gehalten.
+ * <p>
+ * Jedes Modell hat zwei Token-Buckets, einen für Anfragen und einen für (geschätzte) Token, die sich über das konfigurierte
+ * Zeitfenster gleichmäßig wieder auffüllen. Eine Anfrage wird nur gestartet, wenn beide Buckets genug enthalten.
+ * Die Tabelle {@code gemini_requests} dient nur noch der Nachvollziehbarkeit und wird für die Begrenzung nicht mehr abgefragt.
+ */
+@ApplicationScoped
+public class GeminiRateLimiter {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    /**
+     * Grobe Schätzung für Gemini: etwa vier Zeichen pro Token.
+     */
+    private static final int CHARS_PER_TOKEN = 4;
+
+    /**
+     * Standardkontingent als {@code anfragen/token/zeitfenster}.
+     */
+    @ConfigProperty(name = "feed2Mastodon.gemini.defaultLimit", defaultValue = "3/250000/10m")
+    String defaultLimit;
+
+    /**
+     * Kontingente pro Modell als {@code modell=anfragen/token/zeitfenster}, durch Kommas getrennt.
+     */
+    @ConfigProperty(name = "feed2Mastodon.gemini.limits", defaultValue = "gemini-embedding-001=100/30000/1m")
+    String limits;
+
+    private final Map<String, Limit> limitByModel = new HashMap<>();
+    private final Map<String, Buckets> bucketsByModel = new ConcurrentHashMap<>();
+
+    // Modelle ohne wartende Arbeit, bis zum angegebenen Zeitpunkt wird nicht erneut danach gesucht
+    private final Map<String, Instant> idleUntil = new ConcurrentHashMap<>();
+
+    private Limit fallback;
+
+    record Limit(int requests, long tokens, Duration window) {
+
+        static Limit parse(final String spec) {
+            final String[] parts = spec.trim().split("/");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Ungültiges Gemini-Kontingent: " + spec);
+            }
+            // Kurzform wie in application.properties (30s, 10m, 1d) oder ISO-8601
+            final String window = parts[2].trim().toUpperCase(Locale.ROOT);
+            final String iso = window.startsWith("P") ? window : window.endsWith("D") ? "P" + window : "PT" + window;
+            return new Limit(Integer.parseInt(parts[0].trim()), Long.parseLong(parts[1].trim()), Duration.parse(iso));
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        fallback = Limit.parse(defaultLimit);
+        if (limits != null) {
+            for (String entry : limits.split(",")) {
+                final int separator = entry.indexOf('=');
+                if (separator > 0) {
+                    limitByModel.put(entry.substring(0, separator).trim(), Limit.parse(entry.substring(separator + 1)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Schätzt die Token eines Textes.
+     */
+    public static int estimateTokens(final String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return Math.max(1, (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN);
+    }
+
+    /**
+     * Versucht, eine Anfrage mit der geschätzten Tokenzahl zu starten.
+     *
+     * @return true, wenn das Kontingent reicht; es ist dann bereits abgezogen.
+     */
+    public boolean tryAcquire(final String model, final long tokens) {
+        final boolean acquired = buckets(model).tryAcquire(tokens);
+        if (!acquired) {
+            LOG.debugf("Gemini-Kontingent für %s erschöpft, Anfrage mit %d Token wird verschoben", model, tokens);
+        }
+        return acquired;
+    }
+
+    /**
+     * Wie viele Token gerade für eine weitere Anfrage zur Verfügung stehen.
+     *
+     * @return Die Token oder 0, wenn keine Anfrage mehr frei ist.
+     */
+    public long availableTokens(final String model) {
+        return buckets(model).availableTokens();
+    }
+
+    /**
+     * Wie lange es dauert, bis eine Anfrage mit der geschätzten Tokenzahl wieder ins Kontingent passt.
+     *
+     * @return {@link Duration#ZERO}, wenn sie sofort möglich ist; höchstens das Zeitfenster des Modells.
+     */
+    public Duration timeUntilAvailable(final String model, final long tokens) {
+        return buckets(model).timeUntilAvailable(tokens);
+    }
+
+    /**
+     * Vermerkt, dass für das Modell gerade nichts zu tun ist, damit die Aufrufer nicht bei jedem Lauf die Datenbank abfragen.
+     */
+    public void markIdle(final String model, final Duration duration) {
+        idleUntil.put(model, Instant.now().plus(duration));
+    }
+
+    /**
+     * Hebt {@link #markIdle(String, Duration)} auf, z.B. wenn neue Arbeit angelegt wurde.
+     */
+    public void wake(final String model) {
+        idleUntil.remove(model);
+    }
+
+    public boolean isIdle(final String model) {
+        final Instant until = idleUntil.get(model);
+        return until != null && Instant.now().isBefore(until);
+    }
+
+    private Buckets buckets(final String model) {
+        return bucketsByModel.computeIfAbsent(model, m -> {
+            final Limit limit = limitByModel.getOrDefault(m, fallback);
+            return new Buckets(new TokenBucket(limit.requests(), limit.window(), System::nanoTime),
+                    new TokenBucket(limit.tokens(), limit.window(), System::nanoTime));
+        });
+    }
+
+    private record Buckets(TokenBucket requests, TokenBucket tokens) {
+
+        synchronized boolean tryAcquire(final long tokenCount) {
+            if (requests.available() < 1 || tokens.available() < tokenCount) {
+                return false;
+            }
+            requests.take(1);
+            tokens.take(tokenCount);
+            return true;
+        }
+
+        synchronized long availableTokens() {
+            return requests.available() < 1 ? 0 : tokens.available();
+        }
+
+        synchronized Duration timeUntilAvailable(final long tokenCount) {
+            final Duration untilRequest = requests.timeUntil(1);
+            final Duration untilTokens = tokens.timeUntil(tokenCount);
+            return untilRequest.compareTo(untilTokens) >= 0 ? untilRequest : untilTokens;
+        }
+    }
+
+    /**
+     * Token-Bucket mit Kapazität {@code capacity}, der sich innerhalb von {@code window} vollständig wieder auffüllt.
+     * Nicht threadsicher, die Aufrufer synchronisieren.
+     */
+    static final class TokenBucket {
+
+        private final long capacity;
+        private final double refillPerNano;
+        private final LongSupplier clock;
+
+        private double level;
+        private long lastRefill;
+
+        TokenBucket(final long capacity, final Duration window, final LongSupplier clock) {
+            this.capacity = capacity;
+            this.refillPerNano = (double) capacity / window.toNanos();
+            this.clock = clock;
+            this.level = capacity;
+            this.lastRefill = clock.getAsLong();
+        }
+
+        long available() {
+            final long now = clock.getAsLong();
+            level = Math.min(capacity, level + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+            return (long) level;
+        }
+
+        void take(final long amount) {
+            level -= amount;
+        }
+
+        /**
+         * Zeit, bis {@code amount} verfügbar ist; mehr als die Kapazität wird nie erreicht, dann gilt das volle Zeitfenster.
+         */
+        Duration timeUntil(final long amount) {
+            available();
+            final double missing = Math.min(amount, capacity) - level;
+            return missing <= 0 ? Duration.ZERO : Duration.ofNanos((long) Math.ceil(missing / refillPerNano));
+        }
+    }
+}
@@ -43,10 +43,6 @@ public class GeminiRequestEntity extends PanacheEntityBase {
     @Column(name = "response_text", columnDefinition = "TEXT")
     private String response;
 
-    public static long countLast10Minutes(String model) {
-        return find("model = ?1 and timestamp > ?2", model, LocalDateTime.now().minusMinutes(10)).count();
-    }
-
     public UUID getUuid() {
         return uuid;
     }
@@ -0,0 +1,238 @@
+package de.hexix.ai;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Zerlegt lange Texte (Artikel, Favoriten) in Abschnitte für lokale Embeddings.
+ * <p>
+ * Geschnitten wird an Absatz- und Satzgrenzen, nur zu lange Sätze werden an Wortgrenzen geteilt. Jeder Abschnitt bleibt
+ * unter der Kontextlänge des Modells aus {@code feed2Mastodon.chunker.budgets} abzüglich {@link #safetyMargin}; am Anfang eines
+ * Abschnitts werden die letzten Sätze des vorherigen wiederholt, solange sie in {@link #overlapTokens} passen, sonst die letzten
+ * Wörter. Token werden über die Zeichenanzahl geschätzt, da der Tokenizer von Ollama nicht zur Verfügung steht; der Abstand
+ * fängt Texte ab, die mehr Token brauchen als geschätzt, denn ohne {@code truncate} lehnt Ollama zu lange Abschnitte ab.
+ */
+@ApplicationScoped
+public class TextChunker {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    private static final Pattern PARAGRAPH = Pattern.compile("\\n\\s*\\n");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * Kontextlänge pro Modell als {@code modell=token}, durch Kommas getrennt.
+     */
+    @ConfigProperty(name = "feed2Mastodon.chunker.budgets", defaultValue = "granite-embedding:278m=512,bge-m3:567m=8192")
+    String budgets;
+
+    @ConfigProperty(name = "feed2Mastodon.chunker.defaultBudget", defaultValue = "512")
+    int defaultBudget;
+
+    /**
+     * Anteil der Kontextlänge, der für Fehler der Token-Schätzung frei bleibt.
+     */
+    @ConfigProperty(name = "feed2Mastodon.chunker.safetyMargin", defaultValue = "0.15")
+    double safetyMargin;
+
+    @ConfigProperty(name = "feed2Mastodon.chunker.overlapTokens", defaultValue = "32")
+    int overlapTokens;
+
+    @ConfigProperty(name = "feed2Mastodon.chunker.charsPerToken", defaultValue = "3.0")
+    double charsPerToken;
+
+    private final Map<String, Integer> budgetByModel = new HashMap<>();
+
+    @PostConstruct
+    void init() {
+        for (String entry : budgets.split(",")) {
+            // Modellnamen enthalten selbst Doppelpunkte, daher am letzten '=' trennen
+            final int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            budgetByModel.put(entry.substring(0, separator).trim().toLowerCase(Locale.ROOT), Integer.parseInt(entry.substring(separator + 1).trim()));
+        }
+    }
+
+    /**
+     * Zerlegt einen Text passend zum Token-Budget des Modells.
+     *
+     * @param model Das Embedding-Modell.
+     * @param text  Der Text.
+     * @return Die Abschnitte, leer bei leerem Text.
+     */
+    public List<String> chunk(final String model, final String text) {
+        final int context = budgetByModel.getOrDefault(model == null ? "" : model.toLowerCase(Locale.ROOT), defaultBudget);
+        final int budget = Math.max(1, (int) (context * (1 - safetyMargin)));
+        return chunk(text, budget, overlapTokens, charsPerToken);
+    }
+
+    /**
+     * Zerlegt einen Text und protokolliert die Anzahl der Abschnitte.
+     *
+     * @param source Bezeichnung der Quelle für das Log, z.B. die Mastodon-ID.
+     */
+    public List<String> chunk(final String model, final String text, final String source) {
+        final List<String> chunks = chunk(model, text);
+        LOG.debugf("%s: %d Zeichen in %d Abschnitte zerlegt", source, text == null ? 0 : text.length(), chunks.size());
+        return chunks;
+    }
+
+    static List<String> chunk(final String text, final int budget, final int overlap, final double charsPerToken) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        final List<Unit> units = new ArrayList<>();
+        for (String paragraph : PARAGRAPH.split(text.strip())) {
+            boolean first = true;
+            for (String sentence : sentences(paragraph)) {
+                for (String part : fit(sentence, budget, charsPerToken)) {
+                    units.add(new Unit(part, first, tokens(part, charsPerToken)));
+                    first = false;
+                }
+            }
+        }
+
+        // Gezählt werden Zeichen inklusive der Trenner, damit der zusammengesetzte Abschnitt sicher ins Budget passt
+        final List<String> chunks = new ArrayList<>();
+        final List<Unit> current = new ArrayList<>();
+        int used = 0;
+        for (Unit unit : units) {
+            if (!current.isEmpty() && tokens(used + separator(unit) + unit.text().length(), charsPerToken) > budget) {
+                chunks.add(join(current));
+                // Überlappung: die letzten Sätze wiederholen, solange sie zusammen mit dem nächsten Satz ins Budget passen
+                final int limit = Math.min(overlap, budget - unit.tokens());
+                final List<Unit> carried = new ArrayList<>();
+                int carriedChars = 0;
+                for (int i = current.size() - 1; i >= 0; i--) {
+                    final Unit previous = current.get(i);
+                    final int next = previous.text().length() + (carried.isEmpty() ? 0 : separator(carried.getFirst()) + carriedChars);
+                    if (tokens(next + separator(unit), charsPerToken) > limit) {
+                        // Ist schon der letzte Satz zu lang, werden wenigstens seine letzten Wörter wiederholt
+                        if (carried.isEmpty()) {
+                            final String tail = tail(previous.text(), limit, charsPerToken);
+                            if (!tail.isEmpty()) {
+                                carried.add(new Unit(tail, false, tokens(tail, charsPerToken)));
+                                carriedChars = tail.length();
+                            }
+                        }
+                        break;
+                    }
+                    carried.addFirst(previous);
+                    carriedChars = next;
+                }
+                current.clear();
+                current.addAll(carried);
+                used = carriedChars;
+            }
+            used += (current.isEmpty() ? 0 : separator(unit)) + unit.text().length();
+            current.add(unit);
+        }
+        if (!current.isEmpty()) {
+            chunks.add(join(current));
+        }
+        return chunks;
+    }
+
+    static int tokens(final String text, final double charsPerToken) {
+        return tokens(text.length(), charsPerToken);
+    }
+
+    private static int tokens(final int chars, final double charsPerToken) {
+        return (int) Math.ceil(chars / charsPerToken);
+    }
+
+    private static int separator(final Unit unit) {
+        return unit.paragraphStart() ? 2 : 1;
+    }
+
+    /**
+     * Die letzten ganzen Wörter eines Satzes, die zusammen mit einem Trenner höchstens {@code limit} Token brauchen.
+     */
+    private static String tail(final String sentence, final int limit, final double charsPerToken) {
+        int start = sentence.length();
+        for (int space = sentence.lastIndexOf(' '); space >= 0; space = sentence.lastIndexOf(' ', space - 1)) {
+            if (tokens(sentence.length() - space, charsPerToken) > limit) {
+                break;
+            }
+            start = space + 1;
+        }
+        return sentence.substring(start);
+    }
+
+    private static List<String> sentences(final String paragraph) {
+        final String normalized = WHITESPACE.matcher(paragraph).replaceAll(" ").strip();
+        final List<String> sentences = new ArrayList<>();
+        if (normalized.isEmpty()) {
+            return sentences;
+        }
+        final BreakIterator iterator = BreakIterator.getSentenceInstance(Locale.GERMAN);
+        iterator.setText(normalized);
+        int start = iterator.first();
+        for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            final String sentence = normalized.substring(start, end).strip();
+            if (!sentence.isEmpty()) {
+                sentences.add(sentence);
+            }
+        }
+        return sentences;
+    }
+
+    /**
+     * Teilt einen zu langen Satz an Wortgrenzen, ein einzelnes zu langes Wort notfalls hart.
+     */
+    private static List<String> fit(final String sentence, final int budget, final double charsPerToken) {
+        if (tokens(sentence, charsPerToken) <= budget) {
+            return List.of(sentence);
+        }
+        final int maxChars = Math.max(1, (int) (budget * charsPerToken));
+        final List<String> parts = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String word : sentence.split(" ")) {
+            while (word.length() > maxChars) {
+                if (!current.isEmpty()) {
+                    parts.add(current.toString());
+                    current = new StringBuilder();
+                }
+                parts.add(word.substring(0, maxChars));
+                word = word.substring(maxChars);
+            }
+            if (!current.isEmpty() && current.length() + 1 + word.length() > maxChars) {
+                parts.add(current.toString());
+                current = new StringBuilder();
+            }
+            if (!current.isEmpty()) {
+                current.append(' ');
+            }
+            current.append(word);
+        }
+        if (!current.isEmpty()) {
+            parts.add(current.toString());
+        }
+        return parts;
+    }
+
+    private static String join(final List<Unit> units) {
+        final StringBuilder sb = new StringBuilder();
+        for (Unit unit : units) {
+            if (!sb.isEmpty()) {
+                sb.append(unit.paragraphStart() ? "\n\n" : " ");
+            }
+            sb.append(unit.text());
+        }
+        return sb.toString();
+    }
+
+    private record Unit(String text, boolean paragraphStart, int tokens) {}
+}
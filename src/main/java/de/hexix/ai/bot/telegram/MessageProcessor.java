@@ -3,11 +3,13 @@ package de.hexix.ai.bot.telegram;
 import de.hexix.JsoupParser;
 import de.hexix.ai.bot.VikiAiService;
 import de.hexix.ai.bot.VikiResponse;
+import de.hexix.mastodon.ProfileContributionChanged;
 import de.hexix.mastodon.PublicMastodonPostEntity;
 import de.hexix.mastodon.PublicMastodonPostRepository;
 import de.hexix.mastodon.api.MastodonDtos;
 import de.hexix.mastodon.resource.MastodonClient;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import org.apache.camel.Exchange;
@@ -48,6 +50,9 @@ public class MessageProcessor implements Processor {
     @Inject
     PublicMastodonPostRepository publicMastodonPostRepository;
 
+    @Inject
+    Event<ProfileContributionChanged> profileContributionChanged;
+
     @ConfigProperty(name = "mastodon.access.token")
     String accessToken;
 
@@ -455,6 +460,7 @@ public class MessageProcessor implements Processor {
 
 
         post.setNegativeWeight(negativeWeight);
+        profileContributionChanged.fire(ProfileContributionChanged.of(post));
 
         // Zuerst versuchen, als MastodonStatus zu parsen (für 'update' oder 'status.update' Events)
 
@@ -15,6 +15,8 @@ import jakarta.persistence.OneToOne;
 import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -64,16 +66,22 @@ public class Embedding extends PanacheEntityBase {
     private TextEntity text;
 
     /**
-     * Die String-Repräsentation des Embedding-Vektors, der von einem externen Dienst generiert wurde.
-     * Wird in der Datenbank persistiert.
+     * Die alte String-Repräsentation des Embedding-Vektors, der von einem externen Dienst generiert wurde.
+     * Wird nicht mehr geschrieben und beim ersten Lesen nach {@link #embeddingVectorBinary} übertragen.
      */
     @OneToOne(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
     @JoinColumn(name = "embedding_vector_string_id", referencedColumnName = "id")
     private TextEntity embeddingVectorString;
 
+    /**
+     * Der Embedding-Vektor des externen Dienstes im Binärformat von {@link VektorUtil.BinaryVectorCodec}.
+     */
+    @Column(name = "embedding_vector")
+    private byte[] embeddingVectorBinary;
+
     /**
      * Das transiente double-Array des externen Embedding-Vektors.
-     * Wird bei Bedarf aus {@link #embeddingVectorString} lazy-geladen.
+     * Wird bei Bedarf aus {@link #embeddingVectorBinary} bzw. noch nicht migrierten {@link #embeddingVectorString} lazy-geladen.
      */
     @Transient
     private double[] embedding;
@@ -92,16 +100,24 @@ public class Embedding extends PanacheEntityBase {
 
 
     /**
-     * Die String-Repräsentation des lokal generierten Embedding-Vektors.
-     * Wird in der Datenbank persistiert.
+     * Die alte String-Repräsentation des lokal generierten Embedding-Vektors.
+     * Wird nicht mehr geschrieben und von {@link EmbeddingVectorBackfill} nach {@link #localEmbeddingVector} übertragen.
      */
     @OneToOne(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
     @JoinColumn(name = "local_embedding_vector_string_id", referencedColumnName = "id")
     private TextEntity localEmbeddingVectorString;
 
+    /**
+     * Der lokal generierte Embedding-Vektor als native pgvector-Spalte.
+     * Ohne feste Dimension, da das lokale Modell konfigurierbar ist.
+     */
+    @JdbcTypeCode(SqlTypes.VECTOR)
+    @Column(name = "local_embedding")
+    private float[] localEmbeddingVector;
+
     /**
      * Das transiente double-Array des lokalen Embedding-Vektors.
-     * Wird bei Bedarf aus {@link #localEmbeddingVectorString} lazy-geladen.
+     * Wird bei Bedarf aus {@link #localEmbeddingVector} bzw. noch nicht migrierten {@link #localEmbeddingVectorString} lazy-geladen.
      */
     @Transient
     private double[] localEmbedding;
@@ -138,10 +154,11 @@ public class Embedding extends PanacheEntityBase {
      * Findet eine Liste von Embeddings, die als nächstes von einem externen Dienst verarbeitet werden sollen.
      * Sucht nach Einträgen, bei denen der Text vorhanden ist, aber noch kein externes Embedding erstellt wurde.
      *
-     * @return Eine Liste von bis zu 3 {@link Embedding}-Objekten, die auf die Erstellung eines externen Embeddings warten.
+     * @param limit Die maximale Anzahl.
+     * @return Eine Liste von bis zu {@code limit} {@link Embedding}-Objekten, die auf die Erstellung eines externen Embeddings warten.
      */
-    public static List<Embedding> findNextEmbeddings() {
-        return find("embeddingCreatedAt is null and text is not null and text.text is not null").range(0, 3).list();
+    public static List<Embedding> findNextEmbeddings(final int limit) {
+        return find("embeddingCreatedAt is null and text is not null and text.text is not null", Sort.by("createdAt")).range(0, limit - 1).list();
     }
 
     /**
@@ -154,17 +171,28 @@ public class Embedding extends PanacheEntityBase {
         return find("localEmbeddingCreatedAt is null and text is not null and text.text is not null", Sort.by("createdAt").descending()).page(0, 10).list();
     }
 
+    /**
+     * Liefert die Texte aller positiv bewerteten Favoriten, ohne die Vektoren zu laden.
+     *
+     * @return Die Texte.
+     */
+    public static List<String> findAllPositiveTexts() {
+        return getEntityManager()
+                .createQuery("SELECT e.text.text FROM Embedding e WHERE e.text.text IS NOT NULL AND e.negativeWeight IS NULL", String.class)
+                .getResultList();
+    }
+
     /**
      * Findet alle Embeddings, für die bereits ein lokales Embedding generiert wurde.
      *
      * @return Eine Liste aller {@link Embedding}-Objekte mit einem existierenden lokalen Embedding-Vektor.
      */
     public static List<Embedding> findAllLocalEmbeddings() {
-        return find("localEmbeddingVectorString is not null").list();
+        return find("localEmbeddingVector is not null or localEmbeddingVectorString is not null").list();
     }
 
     public static List<Embedding> findAllCalcedEmbeddings() {
-        return find("embeddingVectorString is not null and localEmbeddingVectorString is not null and text is not null and  text.text is not null and createdAt < ?1", LocalDateTime.now().minusDays(30)).list();
+        return find("(embeddingVectorBinary is not null or embeddingVectorString is not null) and (localEmbeddingVector is not null or localEmbeddingVectorString is not null) and text is not null and  text.text is not null and createdAt < ?1", LocalDateTime.now().minusDays(30)).list();
     }
 
     public UUID getUuid() {
@@ -233,63 +261,72 @@ public class Embedding extends PanacheEntityBase {
 
     /**
      * Gibt den externen Embedding-Vektor als double-Array zurück.
-     * Wenn der Vektor noch nicht geladen ist, wird er aus der String-Repräsentation {@link #embeddingVectorString} konvertiert.
+     * Gelesen wird aus {@link #embeddingVectorBinary}. Noch nicht migrierte Zeilen werden einmal aus {@link #embeddingVectorString}
+     * geparst und dabei ins Binärformat übertragen; der Text wird gelöscht, sobald die Transaktion geschrieben wird.
      *
      * @return Das double-Array des externen Embeddings oder null, wenn keine Daten vorhanden sind.
      */
     public double[] getEmbedding() {
-        if (embedding == null && embeddingVectorString != null) {
-            this.embedding = VektorUtil.DoubleArrayConverter.stringToArray(embeddingVectorString.getText());
+        if (embedding == null) {
+            if (embeddingVectorBinary != null) {
+                this.embedding = VektorUtil.toDoubleArray(VektorUtil.BinaryVectorCodec.decode(embeddingVectorBinary));
+            } else if (embeddingVectorString != null) {
+                this.embedding = VektorUtil.DoubleArrayConverter.stringToArray(embeddingVectorString.getText());
+                this.embeddingVectorBinary = VektorUtil.BinaryVectorCodec.encode(embedding, VektorUtil.BinaryVectorCodec.Encoding.FLOAT32);
+                this.embeddingVectorString = null;
+            }
         }
         return embedding;
     }
 
     /**
      * Setzt den externen Embedding-Vektor.
-     * Konvertiert das übergebene double-Array in seine String-Repräsentation und speichert es in {@link #embeddingVectorString}.
+     * Speichert ihn im Binärformat in {@link #embeddingVectorBinary} und entfernt eine eventuell noch vorhandene String-Repräsentation.
      * Setzt außerdem den Erstellungszeitstempel {@link #embeddingCreatedAt} auf den aktuellen Zeitpunkt, falls das Embedding gesetzt wird.
      *
      * @param embedding Das double-Array des externen Embeddings.
      */
     public void setEmbedding(final double[] embedding) {
         this.embedding = embedding;
-        final String text = VektorUtil.DoubleArrayConverter.arrayToString(embedding);
-
+        this.embeddingVectorBinary = VektorUtil.BinaryVectorCodec.encode(embedding, VektorUtil.BinaryVectorCodec.Encoding.FLOAT32);
 
-        if (text != null) {
+        if (embedding != null) {
             this.embeddingCreatedAt = LocalDateTime.now();
-            this.embeddingVectorString = new TextEntity(text);
+            this.embeddingVectorString = null;
         }
     }
 
     /**
      * Gibt den lokalen Embedding-Vektor als double-Array zurück.
-     * Wenn der Vektor noch nicht geladen ist, wird er aus der String-Repräsentation {@link #localEmbeddingVectorString} konvertiert.
+     * Gelesen wird aus der nativen Spalte {@link #localEmbeddingVector}; nur noch nicht migrierte Zeilen werden aus {@link #localEmbeddingVectorString} geparst.
      *
      * @return Das double-Array des lokalen Embeddings oder null, wenn keine Daten vorhanden sind.
      */
     public double[] getLocalEmbedding() {
-        if (localEmbedding == null && localEmbeddingVectorString != null) {
-            this.localEmbedding = VektorUtil.DoubleArrayConverter.stringToArray(localEmbeddingVectorString.getText());
+        if (localEmbedding == null) {
+            if (localEmbeddingVector != null) {
+                this.localEmbedding = VektorUtil.toDoubleArray(localEmbeddingVector);
+            } else if (localEmbeddingVectorString != null) {
+                this.localEmbedding = VektorUtil.DoubleArrayConverter.stringToArray(localEmbeddingVectorString.getText());
+            }
         }
         return localEmbedding;
     }
 
     /**
      * Setzt den lokalen Embedding-Vektor.
-     * Konvertiert das übergebene double-Array in seine String-Repräsentation und speichert es in {@link #localEmbeddingVectorString}.
+     * Speichert ihn in der nativen Spalte {@link #localEmbeddingVector} und entfernt eine eventuell noch vorhandene String-Repräsentation.
      * Setzt außerdem den Erstellungszeitstempel {@link #localEmbeddingCreatedAt} auf den aktuellen Zeitpunkt, falls das Embedding gesetzt wird.
      *
      * @param localEmbedding Das double-Array des lokalen Embeddings.
      */
     public void setLocalEmbedding(final double[] localEmbedding) {
         this.localEmbedding = localEmbedding;
-        final String text = VektorUtil.DoubleArrayConverter.arrayToString(localEmbedding);
-
+        this.localEmbeddingVector = VektorUtil.toFloatArray(localEmbedding);
 
-        if (text != null) {
+        if (localEmbedding != null) {
             this.localEmbeddingCreatedAt = LocalDateTime.now();
-            this.localEmbeddingVectorString = new TextEntity(text);
+            this.localEmbeddingVectorString = null;
         }
     }
 
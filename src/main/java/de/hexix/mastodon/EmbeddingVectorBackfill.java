@@ -0,0 +1,102 @@
+package de.hexix.mastodon;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Überträgt die alten, kommagetrennten Vektoren aus {@code text_contents} in die nativen pgvector-Spalten
+ * {@code embeddings.local_embedding} und {@code mastodon_posts.embedding}.
+ * <p>
+ * Die Umwandlung passiert komplett in PostgreSQL ({@code '[' || content || ']'::vector}), die Texte werden danach gelöscht.
+ * Jeder Batch läuft in einer eigenen, kurzen Transaktion.
+ */
+@ApplicationScoped
+public class EmbeddingVectorBackfill {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    // Leere Texte lassen sich nicht in einen Vektor umwandeln, der Verweis wird trotzdem entfernt
+    private static final String BACKFILL_EMBEDDINGS = """
+            WITH batch AS (
+                SELECT e.id, e.local_embedding_vector_string_id AS text_id
+                FROM embeddings e
+                WHERE e.local_embedding_vector_string_id IS NOT NULL
+                LIMIT ?1
+                FOR UPDATE SKIP LOCKED
+            ), moved AS (
+                UPDATE embeddings e
+                SET local_embedding = CASE
+                        WHEN e.local_embedding IS NOT NULL OR t.content IS NULL OR t.content = '' THEN e.local_embedding
+                        ELSE ('[' || t.content || ']')::vector END,
+                    local_embedding_vector_string_id = NULL
+                FROM batch b
+                JOIN text_contents t ON t.id = b.text_id
+                WHERE e.id = b.id
+                RETURNING b.text_id
+            )
+            DELETE FROM text_contents WHERE id IN (SELECT text_id FROM moved)
+            """;
+
+    private static final String BACKFILL_POSTS = """
+            WITH batch AS (
+                SELECT p.id, p.embedding_id AS text_id
+                FROM mastodon_posts p
+                WHERE p.embedding_id IS NOT NULL
+                LIMIT ?1
+                FOR UPDATE SKIP LOCKED
+            ), moved AS (
+                UPDATE mastodon_posts p
+                SET embedding = CASE
+                        WHEN p.embedding IS NOT NULL OR t.content IS NULL OR t.content = '' THEN p.embedding
+                        ELSE ('[' || t.content || ']')::vector END,
+                    embedding_id = NULL
+                FROM batch b
+                JOIN text_contents t ON t.id = b.text_id
+                WHERE p.id = b.id
+                RETURNING b.text_id
+            )
+            DELETE FROM text_contents WHERE id IN (SELECT text_id FROM moved)
+            """;
+
+    @Inject
+    EntityManager em;
+
+    @ConfigProperty(name = "feed2Mastodon.vectorBackfill.batchSize", defaultValue = "500")
+    int batchSize;
+
+    private volatile boolean done;
+
+    /**
+     * Überträgt Batches, bis keine alten Vektoren mehr übrig sind. Danach kehrt der Aufruf sofort zurück.
+     */
+    public void backfill() {
+        if (done) {
+            return;
+        }
+        int embeddings = 0;
+        int posts = 0;
+        int moved;
+        do {
+            moved = backfillBatch(BACKFILL_EMBEDDINGS);
+            embeddings += moved;
+        } while (moved > 0);
+        do {
+            moved = backfillBatch(BACKFILL_POSTS);
+            posts += moved;
+        } while (moved > 0);
+
+        if (embeddings > 0 || posts > 0) {
+            LOG.infof("%d Embeddings und %d Posts auf native Vektoren umgestellt", embeddings, posts);
+        }
+        done = true;
+    }
+
+    @Transactional
+    int backfillBatch(final String sql) {
+        return em.createNativeQuery(sql).setParameter(1, batchSize).executeUpdate();
+    }
+}
@@ -3,24 +3,39 @@ package de.hexix.mastodon;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.hexix.JsoupParser;
+import de.hexix.PublicPostPipeline;
+import de.hexix.StreamAdmissionFilter;
 import de.hexix.ai.OllamaRestClient;
 import de.hexix.mastodon.api.MastodonDtos;
+import de.hexix.mastodon.api.StreamStatusDecoder;
 import de.hexix.mastodon.resource.MastodonClient;
+import de.hexix.util.HashUtil;
 import io.quarkus.logging.Log;
 import io.quarkus.runtime.StartupEvent;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.mutiny.infrastructure.Infrastructure; // Wichtig für runOn()
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
 import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 import org.jboss.logging.Logger;
+import org.jboss.resteasy.reactive.client.SseEvent;
 import org.jsoup.Jsoup;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 
 /**
@@ -31,6 +46,12 @@ import java.time.Duration;
 public class MastodonStreamProcessor {
 
     final static Logger LOG = Logger.getLogger(JsoupParser.class);
+
+    // Mastodon liefert höchstens 40 Einträge pro Seite
+    private static final int BACKFILL_PAGE_SIZE = 40;
+
+    private final StreamCursor publicCursor = new StreamCursor("public");
+    private final StreamCursor directCursor = new StreamCursor("direct");
     // Injiziert den MastodonStreamingService für den Zugriff auf den Stream
     @Inject
     @RestClient
@@ -51,6 +72,24 @@ public class MastodonStreamProcessor {
     @Inject
     PublicMastodonPostRepository publicMastodonPostRepository;
 
+    @Inject
+    Event<ProfileContributionChanged> profileContributionChanged;
+
+    @Inject
+    PublicPostPipeline publicPostPipeline;
+
+    @Inject
+    StreamAdmissionFilter streamAdmissionFilter;
+
+
+    @ConfigProperty(name = "feed2Mastodon.stream.batchSize", defaultValue = "200")
+    int publicBatchSize;
+
+    @ConfigProperty(name = "feed2Mastodon.stream.batchWindow", defaultValue = "500ms")
+    Duration publicBatchWindow;
+
+    @ConfigProperty(name = "feed2Mastodon.stream.backfillMaxPages", defaultValue = "25")
+    int backfillMaxPages;
 
     @ConfigProperty(name = "mastodon.access.token")
     String accessToken;
@@ -66,6 +105,11 @@ public class MastodonStreamProcessor {
      */
     void onStart(@Observes StartupEvent ev) {
         LOG.info("Anwendung startet, abonniere Mastodon Stream...");
+        try {
+            loadStreamPositions();
+        } catch (Exception e) {
+            LOG.warn("Stream-Positionen konnten nicht geladen werden, es wird nichts nachgeladen", e);
+        }
         subscribeToMastodonPublicStream();
         subscribeToMastodonDirectStream();
     }
@@ -74,16 +118,25 @@ public class MastodonStreamProcessor {
      * Abonniert den Mastodon-Stream und definiert die Verarbeitungs- und Wiederverbindungslogik.
      */
     private void subscribeToMastodonPublicStream() {
-        final Multi<String> publicStream = mastodonStreamingService.streamPublicTimeline("Bearer " + privateAccessToken);
+        // Bei jeder (Wieder-)Verbindung wird die Lücke seit dem letzten gesehenen Status parallel zum Live-Stream nachgeladen
+        final Multi<PublicEvent> publicStream = Multi.createFrom().deferred(() -> Multi.createBy().merging().streams(
+                backfill(publicCursor, minId -> mastodonClient.getPublicTimeline("Bearer " + privateAccessToken, minId, BACKFILL_PAGE_SIZE).stream()
+                        .map(status -> new PublicEvent(PublicEvent.Type.UPDATE, status.id(), MastodonDtos.StreamStatus.of(status))).toList(), PublicEvent::id),
+                mastodonStreamingService.streamPublicTimeline("Bearer " + privateAccessToken)
+                        // Dieselbe robuste Logik für den öffentlichen Stream.
+                        .onCompletion().failWith(new RuntimeException("Public-Stream wurde unerwartet beendet. Starte Wiederverbindung."))
+                        .onItem().transformToIterable(this::parsePublicEvent)));
         publicStream
-                // Dieselbe robuste Logik für den öffentlichen Stream.
-                .onCompletion().failWith(new RuntimeException("Public-Stream wurde unerwartet beendet. Starte Wiederverbindung."))
                 // KORREKTUR: Protokolliert den Fehler und gibt `true` zurück, um den Wiederholungsversuch zu signalisieren.
                 .onFailure().invoke(throwable -> LOG.error("Fehler im Public-Stream. Wiederholungsversuch wird gestartet...", throwable)).onFailure()
                 .retry().withBackOff(Duration.ofSeconds(5), Duration.ofMinutes(1)).withJitter(0.5).indefinitely()
-                .onItem().call(this::processDataPayload)
+                // Überschneidung von Nachladen und Live-Stream entfernen, danach der Vorfilter
+                .onItem().transformToIterable(this::admitPublicEvent)
+                // Gesammelt speichern: höchstens batchSize Posts oder nach batchWindow, je nachdem was zuerst eintritt
+                .group().intoLists().of(publicBatchSize, publicBatchWindow)
+                .onItem().call(this::persistPublicBatch)
                 .subscribe().with(
-                        dataPayload -> LOG.debugf("Public-Payload erfolgreich verarbeitet."),
+                        batch -> LOG.debugf("Public-Batch mit %d Posts verarbeitet.", batch.size()),
                         failure -> {
                             LOG.fatal("Public-Stream ist endgültig fehlgeschlagen. Starte den gesamten Abonnementprozess in 30 Sekunden neu.", failure);
                             Uni.createFrom().item(1)
@@ -98,11 +151,15 @@ public class MastodonStreamProcessor {
      * Abonniert den Mastodon-Stream und definiert die Verarbeitungs- und Wiederverbindungslogik.
      */
     private void subscribeToMastodonDirectStream() {
-        final Multi<String> directStream = mastodonStreamingService.mastodonStreamingDirect("Bearer " + accessToken);
+        // Wie beim öffentlichen Stream: verpasste Direktnachrichten (z.B. negatives Feedback) werden nachgeladen
+        final Multi<MastodonDtos.DirectStatus> directStream = Multi.createFrom().deferred(() -> Multi.createBy().merging().streams(
+                backfill(directCursor, minId -> mastodonClient.getConversations("Bearer " + accessToken, minId, BACKFILL_PAGE_SIZE), MastodonStreamProcessor::directStatusId),
+                mastodonStreamingService.mastodonStreamingDirect("Bearer " + accessToken)
+                        // WICHTIGE ÄNDERUNG: Behandelt eine unerwartete Beendigung des Streams als Fehler.
+                        // Ein Event-Stream sollte theoretisch nie von selbst enden. Wenn doch, wollen wir uns neu verbinden.
+                        .onCompletion().failWith(new RuntimeException("Direct-Stream wurde unerwartet beendet. Starte Wiederverbindung."))
+                        .onItem().transformToIterable(this::parseDirectEvent)));
         directStream
-                // WICHTIGE ÄNDERUNG: Behandelt eine unerwartete Beendigung des Streams als Fehler.
-                // Ein Event-Stream sollte theoretisch nie von selbst enden. Wenn doch, wollen wir uns neu verbinden.
-                .onCompletion().failWith(new RuntimeException("Direct-Stream wurde unerwartet beendet. Starte Wiederverbindung."))
                 // Protokolliert den Fehler (entweder von der Verbindung oder von onCompletion) und löst den Wiederholungsversuch aus.
                 .onFailure().invoke(throwable -> LOG.error("Fehler im Direct-Stream. Wiederholungsversuch wird gestartet...", throwable)).onFailure()
                 // Verbesserte Wiederholungslogik mit exponentiellem Backoff und Jitter.
@@ -110,7 +167,16 @@ public class MastodonStreamProcessor {
                 .retry().withBackOff(Duration.ofSeconds(5), Duration.ofMinutes(1)).withJitter(0.5).indefinitely()
                 // Verarbeitet jedes Element asynchron. `call` sorgt für Back-Pressure, d.h. das nächste Element
                 // wird erst angefordert, wenn die Verarbeitung des aktuellen abgeschlossen ist.
-                .onItem().call(this::processDirectPayload)
+                .select().where(directStatus -> directCursor.markSeen(directStatusId(directStatus)))
+                // Die Position rückt erst weiter, wenn die Nachricht verarbeitet ist
+                .onItem().call(directStatus -> processDirectStatus(directStatus).invoke(handled -> {
+                    final List<String> statusIds = List.of(directStatusId(directStatus));
+                    if (handled) {
+                        directCursor.commit(statusIds);
+                    } else {
+                        directCursor.fail(statusIds);
+                    }
+                }))
                 // Abonniert den Stream und startet die Verarbeitung.
                 .subscribe().with(
                         dataPayload -> LOG.debugf("Direct-Payload erfolgreich verarbeitet."),
@@ -127,12 +193,30 @@ public class MastodonStreamProcessor {
 
     }
 
-    private Uni<?> processDirectPayload(String dataPayload) {
-        if (dataPayload == null || dataPayload.isBlank()) {
-            return Uni.createFrom().voidItem();
+    private List<MastodonDtos.DirectStatus> parseDirectEvent(final SseEvent<String> event) {
+        final String dataPayload = event.data();
+        // Nur Unterhaltungen enthalten Direktnachrichten, der Rest (z.B. delete) wird nicht gelesen
+        if (!"conversation".equals(event.name()) || dataPayload == null || dataPayload.isBlank()) {
+            return List.of();
         }
         try {
-            MastodonDtos.DirectStatus directStatus = objectMapper.readValue(dataPayload, MastodonDtos.DirectStatus.class);
+            final MastodonDtos.DirectStatus directStatus = objectMapper.readValue(dataPayload, MastodonDtos.DirectStatus.class);
+            return directStatus.lastStatus() == null ? List.of() : List.of(directStatus);
+        } catch (JsonProcessingException e) {
+            LOG.warn("Es ist ein Fehler beim Parsen des Mastodon Status aufgetreten", e);
+            return List.of();
+        }
+    }
+
+    private static String directStatusId(final MastodonDtos.DirectStatus directStatus) {
+        return directStatus.lastStatus().id();
+    }
+
+    /**
+     * @return true, wenn die Nachricht erledigt ist; false, wenn die Bewertung nicht gespeichert werden konnte.
+     */
+    private Uni<Boolean> processDirectStatus(final MastodonDtos.DirectStatus directStatus) {
+        try {
             final String replyId = directStatus.lastStatus().inReplyToId();
 
             final String rawContent = directStatus.lastStatus().content();
@@ -147,31 +231,30 @@ public class MastodonStreamProcessor {
                 Double negativeWeight = Double.parseDouble(negativs[negativs.length - 1].trim());
 
 
+                // Diese blockierende Operation wird auf einem Worker-Thread ausgeführt
                 return Uni.createFrom().item(() -> {
-
-
                             try {
                                 createPostAndUpdate(replyId, negativeWeight, noUrl);
+                            } catch (Exception e) {
+                                Log.errorf(e, "Fehler beim Speichern des Mastodon-Posts (ID: %s): %s", replyId, e.getMessage());
+                                return false;
+                            }
+                            try {
                                 mastodonClient.deleteStatus("Bearer " + privateAccessToken, directStatus.lastStatus().id());
                             }catch (Exception e){
                                 LOG.errorf(e, "Fehler beim löschen der Direct Nachricht Id: %s", directStatus.lastStatus().id());
                             }
-                            // Diese blockierende Operation wird nun auf einem Worker-Thread ausgeführt
-                            return Uni.createFrom().voidItem(); // Uni<Void> benötigt einen Wert, null ist für Void ok
-                        }).runSubscriptionOn(Infrastructure.getDefaultWorkerPool())
-                        .onFailure().invoke(e -> {
-                            Log.errorf(e, "Fehler beim Speichern des Mastodon-Posts (ID: %s): %s", replyId, e.getMessage());
-                        })
-                        .onItem().ignore().andContinueWithNull();
+                            return true;
+                        }).runSubscriptionOn(Infrastructure.getDefaultWorkerPool());
 
             }
 
-            } catch (JsonProcessingException e) {
-            LOG.warn("Es ist ein Fehler beim Parsen des Mastodon Status aufgetreten", e);
+        } catch (Exception e) {
+            LOG.warn("Es ist ein Fehler beim Verarbeiten der Direktnachricht aufgetreten", e);
         }
 
 
-        return Uni.createFrom().voidItem();
+        return Uni.createFrom().item(true);
     }
 
 
@@ -200,6 +283,7 @@ public class MastodonStreamProcessor {
 
 
         post.setNegativeWeight(negativeWeight);
+        profileContributionChanged.fire(ProfileContributionChanged.of(post));
 
         // Zuerst versuchen, als MastodonStatus zu parsen (für 'update' oder 'status.update' Events)
 
@@ -207,76 +291,334 @@ public class MastodonStreamProcessor {
 
 
     /**
-     * Verarbeitet die empfangene Daten-Payload vom Mastodon-Stream.
-     * Versucht, die Payload als MastodonStatus zu parsen oder als Delete-Ereignis zu identifizieren.
-     * Diese Methode gibt nun ein Uni<Void> zurück, das abgeschlossen wird, wenn die Verarbeitung
-     * (einschließlich des asynchronen Ollama-Aufrufs) abgeschlossen ist.
+     * Ein Ereignis des öffentlichen Streams. Bei {@link Type#DELETE} und {@link Type#REJECTED} ist nur die ID gesetzt.
+     */
+    private record PublicEvent(Type type, String id, MastodonDtos.StreamStatus status) {
+
+        // REJECTED: vom Vorfilter abgelehnter neuer Status, der nur noch für die Stream-Position zählt
+        enum Type {UPDATE, EDIT, DELETE, REJECTED}
+    }
+
+    /**
+     * Wertet ein Ereignis des öffentlichen Streams anhand seines Namens aus.
+     * Neue und bearbeitete Status werden mit dem {@link StreamStatusDecoder} gelesen, Delete-Ereignisse enthalten nur die ID.
      *
-     * @param dataPayload Der rohe String-Inhalt des "data"-Feldes eines SSE-Ereignisses.
-     * @return Ein Uni<Void>, das den Abschluss der Verarbeitung anzeigt.
+     * @param event Das SSE-Ereignis mit Namen und "data"-Feld.
+     * @return Das Ereignis oder eine leere Liste.
      */
-    private Uni<Void> processDataPayload(String dataPayload) {
+    private List<PublicEvent> parsePublicEvent(final SseEvent<String> event) {
+        final String dataPayload = event.data();
         if (dataPayload == null || dataPayload.isBlank()) {
-            return Uni.createFrom().voidItem();
+            return List.of();
         }
+        final String name = event.name() == null ? "update" : event.name();
         try {
+            switch (name) {
+                case "update" -> {
+                    final MastodonDtos.StreamStatus status = StreamStatusDecoder.decode(dataPayload);
+                    return List.of(new PublicEvent(PublicEvent.Type.UPDATE, status.id(), status));
+                }
+                case "status.update" -> {
+                    final MastodonDtos.StreamStatus status = StreamStatusDecoder.decode(dataPayload);
+                    return List.of(new PublicEvent(PublicEvent.Type.EDIT, status.id(), status));
+                }
+                case "delete" -> {
+                    return List.of(new PublicEvent(PublicEvent.Type.DELETE, dataPayload.strip(), null));
+                }
+                default -> LOG.debugf("Ereignis %s wird ignoriert", name);
+            }
+        } catch (Exception e) {
+            Log.error("Fehler beim Verarbeiten des Ereignisses " + name + ": " + dataPayload + " - Fehler: " + e.getMessage(), e);
+        }
+        return List.of();
+    }
 
+    /**
+     * Lässt einen neuen Status nur einmal durch (Live-Stream und Nachladen überschneiden sich) und nur, wenn der {@link StreamAdmissionFilter} zustimmt.
+     * Abgelehnte Posts erreichen weder die Datenbank noch Ollama, laufen aber als {@link PublicEvent.Type#REJECTED} mit durch den Batch,
+     * damit die Position erst nach dem Speichern der vorherigen Posts über sie hinausrückt.
+     * Bearbeitungen und Löschungen betreffen nur gespeicherte Posts und bleiben immer erhalten.
+     */
+    private List<PublicEvent> admitPublicEvent(final PublicEvent event) {
+        if (event.type() != PublicEvent.Type.UPDATE) {
+            return List.of(event);
+        }
+        if (!publicCursor.markSeen(event.id())) {
+            return List.of();
+        }
+        final StreamAdmissionFilter.Rule rule = streamAdmissionFilter.check(event.status());
+        if (!StreamAdmissionFilter.isAdmitted(rule)) {
+            LOG.debugf("Status %s abgelehnt: %s", event.id(), rule);
+            return List.of(new PublicEvent(PublicEvent.Type.REJECTED, event.id(), null));
+        }
+        return List.of(event);
+    }
 
+    /**
+     * Lädt alle Einträge seit der letzten gesehenen ID eines Streams über die REST-API nach, älteste zuerst.
+     * Ohne bekannte Position (erster Start) wird nichts nachgeladen. Fehler beim Nachladen beenden nur das Nachladen, nicht den Live-Stream.
+     *
+     * @param cursor Die Position des Streams.
+     * @param page   Lädt eine Seite ab der übergebenen min_id, neueste zuerst.
+     * @param idOf   Die Status-ID eines Eintrags.
+     */
+    private <T> Multi<T> backfill(final StreamCursor cursor, final Function<String, List<T>> page, final Function<T, String> idOf) {
+        final String since = cursor.resume();
+        if (since == null) {
+            return Multi.createFrom().empty();
+        }
+        return Uni.createFrom().item(() -> loadGap(cursor.name, since, page, idOf))
+                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool())
+                .onItem().transformToMulti(items -> Multi.createFrom().iterable(items))
+                .onFailure().invoke(e -> LOG.warnf(e, "Nachladen des %s-Streams seit %s fehlgeschlagen", cursor.name, since))
+                .onFailure().recoverWithCompletion();
+    }
 
-            MastodonDtos.MastodonStatus status = objectMapper.readValue(dataPayload, MastodonDtos.MastodonStatus.class);
+    private <T> List<T> loadGap(final String stream, final String since, final Function<String, List<T>> page, final Function<T, String> idOf) {
+        final List<T> items = new ArrayList<>();
+        String minId = since;
+        for (int i = 0; i < backfillMaxPages; i++) {
+            final List<T> batch = new ArrayList<>(page.apply(minId));
+            if (batch.isEmpty()) {
+                break;
+            }
+            batch.sort(Comparator.comparing(idOf, MastodonStreamProcessor::compareIds));
+            items.addAll(batch);
+            minId = idOf.apply(batch.getLast());
+            if (batch.size() < BACKFILL_PAGE_SIZE) {
+                break;
+            }
+            if (i == backfillMaxPages - 1) {
+                LOG.warnf("Lücke im %s-Stream nach %d Seiten nicht vollständig nachgeladen, weiter ab %s live", stream, backfillMaxPages, minId);
+            }
+        }
+        if (!items.isEmpty()) {
+            LOG.infof("%d Einträge im %s-Stream seit %s nachgeladen", items.size(), stream, since);
+        }
+        return items;
+    }
+
+    /**
+     * Vergleicht Mastodon-IDs. Sie sind numerische Strings ohne führende Nullen, eine längere ID ist also immer die neuere.
+     */
+    static int compareIds(final String a, final String b) {
+        if (a.length() != b.length()) {
+            return Integer.compare(a.length(), b.length());
+        }
+        return a.compareTo(b);
+    }
+
+    /**
+     * Speichert die Positionen der Streams, sofern sie sich geändert haben.
+     */
+    @Transactional
+    public void persistStreamPositions() {
+        for (StreamCursor cursor : List.of(publicCursor, directCursor)) {
+            final String lastStatusId = cursor.lastStatusId();
+            if (lastStatusId != null && !lastStatusId.equals(cursor.persistedId)) {
+                StreamPosition.upsert(cursor.name, lastStatusId);
+                cursor.persistedId = lastStatusId;
+            }
+        }
+    }
 
-            if(status.account().acct().contains("heiseonlineenglish@social.heise.de")){
-                return Uni.createFrom().voidItem();
+    @Transactional
+    void loadStreamPositions() {
+        for (StreamCursor cursor : List.of(publicCursor, directCursor)) {
+            final String lastStatusId = StreamPosition.findLastStatusId(cursor.name);
+            if (lastStatusId != null) {
+                cursor.restore(lastStatusId);
+                cursor.persistedId = lastStatusId;
+                LOG.infof("%s-Stream wird ab Status %s fortgesetzt", cursor.name, lastStatusId);
             }
+        }
+    }
 
-            final PublicMastodonPostEntity post = getPublicMastodonPostEntity(status, false);
+    /**
+     * Position eines Streams und die IDs seiner jüngsten Einträge.
+     * <p>
+     * Die IDs dienen nur dazu, die Überschneidung von Nachladen und Live-Stream zu entfernen. Die Position (höchste
+     * verarbeitete ID) rückt erst mit {@link #commit} weiter, also nachdem die Einträge gespeichert sind. Schlägt eine
+     * Verarbeitung fehl, werden ihre IDs vergessen und die Position bis zur nächsten Verbindung festgehalten, damit das
+     * Nachladen dann ab dort auch die fehlgeschlagenen Einträge erneut holt.
+     */
+    static final class StreamCursor {
 
-            // WICHTIGE ÄNDERUNG: post.persist() auf einen Worker-Thread auslagern
-            return Uni.createFrom().item(() -> {
-                        final PublicMastodonPostEntity currentEntity = publicMastodonPostRepository.findByMastodonId(status.id()).orElse(null);
+        private static final int RECENT_IDS = 5000;
 
-                        if (currentEntity == null) {
-                            // Zuerst versuchen, als MastodonStatus zu parsen (für 'update' oder 'status.update' Events)
-                            publicMastodonPostRepository.persist(post);
-                        }
+        final String name;
+        private String lastStatusId;
+        // true nach einem Fehlschlag, bis das nächste Nachladen ab der Position beginnt
+        private boolean held;
+        private volatile String persistedId;
 
+        private final Map<String, Boolean> recentIds = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                return size() > RECENT_IDS;
+            }
+        };
 
-                         // Diese blockierende Operation wird nun auf einem Worker-Thread ausgeführt
-                        return Uni.createFrom().voidItem(); // Uni<Void> benötigt einen Wert, null ist für Void ok
-                    }).runSubscriptionOn(Infrastructure.getDefaultWorkerPool())
-                    .onFailure().invoke(e -> {
-                        Log.errorf(e,"Fehler beim Speichern des Mastodon-Posts (ID: %s): %s", status.id(), e.getMessage());
-                    })
-                    .onItem().ignore().andContinueWithNull();
+        StreamCursor(final String name) {
+            this.name = name;
+        }
 
+        /**
+         * Merkt sich eine ID, ohne die Position zu verändern.
+         *
+         * @return true, wenn die ID noch nicht gesehen wurde.
+         */
+        synchronized boolean markSeen(final String statusId) {
+            return statusId != null && recentIds.put(statusId, Boolean.TRUE) == null;
+        }
 
-        } catch (JsonProcessingException e) {
-            // Wenn es kein MastodonStatus-JSON ist, könnte es ein Delete-Ereignis sein (nur ein ID-String)
-            try {
-                // Versuchen, die Payload als Long (ID) zu parsen
-                Long.parseLong(dataPayload);
-                LOG.infof("Empfangenes Delete-Ereignis (ID: %s)\n", dataPayload);
-            } catch (NumberFormatException nfe) {
-                // Es ist weder ein Status-JSON noch eine numerische ID.
-                // Behandeln Sie andere unbekannte Datentypen oder protokollieren Sie den Fehler.
-                Log.error("Unbekanntes Datenformat empfangen: " + dataPayload + " - Fehler: " + nfe.getMessage(), nfe);
+        /**
+         * Rückt die Position auf die höchste der erfolgreich verarbeiteten IDs vor, außer sie wird gerade festgehalten.
+         */
+        synchronized void commit(final Collection<String> statusIds) {
+            if (held) {
+                return;
             }
-            return Uni.createFrom().voidItem(); // Sofortiger Abschluss für nicht-Status-Payloads
-        } catch (Exception e) {
-            // Allgemeine Fehlerbehandlung für andere unerwartete Probleme
-            Log.error("Fehler beim Verarbeiten des Ereignisses: " + dataPayload + " - Fehler: " + e.getMessage(), e);
-            return Uni.createFrom().voidItem(); // Sofortiger Abschluss bei allgemeinen Fehlern
+            for (String statusId : statusIds) {
+                if (lastStatusId == null || compareIds(statusId, lastStatusId) > 0) {
+                    lastStatusId = statusId;
+                }
+            }
+        }
+
+        /**
+         * Vergisst die IDs fehlgeschlagener Einträge und hält die Position fest, bis {@link #resume()} aufgerufen wird.
+         */
+        synchronized void fail(final Collection<String> statusIds) {
+            statusIds.forEach(recentIds::remove);
+            held = true;
+        }
+
+        /**
+         * Gibt die Position für das Nachladen bei einer (neuen) Verbindung frei.
+         *
+         * @return Die Position, ab der nachgeladen wird, oder null ohne bekannte Position.
+         */
+        synchronized String resume() {
+            held = false;
+            return lastStatusId;
+        }
+
+        /**
+         * Setzt die gespeicherte Position beim Start.
+         */
+        synchronized void restore(final String statusId) {
+            recentIds.put(statusId, Boolean.TRUE);
+            if (lastStatusId == null || compareIds(statusId, lastStatusId) > 0) {
+                lastStatusId = statusId;
+            }
+        }
+
+        synchronized String lastStatusId() {
+            return lastStatusId;
         }
     }
 
+    /**
+     * Speichert einen Batch neuer Posts mit einer Anweisung auf einem Worker-Thread und übergibt die tatsächlich neuen an die Pipeline.
+     * Doppelte IDs im Batch werden vorher entfernt, bereits gespeicherte überspringt die Datenbank.
+     * Erst danach rückt die Position des Streams über die neuen und abgelehnten Status des Batches hinaus.
+     *
+     * @param statuses Die Status aus dem Stream.
+     * @return Ein Uni<Void>, das den Abschluss der Verarbeitung anzeigt.
+     */
+    private Uni<Void> persistPublicBatch(final List<PublicEvent> events) {
+        if (events.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+        // Innerhalb eines Batches gewinnt das letzte Ereignis: ein gleich wieder gelöschter Post wird gar nicht erst gespeichert
+        final Map<String, MastodonDtos.StreamStatus> byId = new LinkedHashMap<>();
+        final Map<String, MastodonDtos.StreamStatus> edits = new LinkedHashMap<>();
+        final Set<String> deletes = new LinkedHashSet<>();
+        final List<String> statusIds = new ArrayList<>();
+        for (PublicEvent event : events) {
+            switch (event.type()) {
+                case UPDATE -> {
+                    byId.putIfAbsent(event.id(), event.status());
+                    statusIds.add(event.id());
+                }
+                case REJECTED -> statusIds.add(event.id());
+                case EDIT -> {
+                    if (byId.containsKey(event.id())) {
+                        byId.put(event.id(), event.status());
+                    } else {
+                        edits.put(event.id(), event.status());
+                    }
+                }
+                case DELETE -> {
+                    byId.remove(event.id());
+                    edits.remove(event.id());
+                    deletes.add(event.id());
+                }
+            }
+        }
+
+        return Uni.createFrom().item(() -> {
+                    if (!byId.isEmpty()) {
+                        final List<PublicMastodonPostRepository.NewPost> posts = byId.values().stream().map(this::toNewPost).toList();
+                        final List<String> inserted = publicMastodonPostRepository.insertNewPosts(posts);
+                        LOG.debugf("%d von %d Posts neu gespeichert", inserted.size(), posts.size());
+
+                        // Nach dem ersten abgelehnten Post nicht weiter anbieten, sonst hält jeder Post den Stream bis zu offerTimeout auf
+                        for (int i = 0; i < inserted.size(); i++) {
+                            if (!publicPostPipeline.submit(byId.get(inserted.get(i)))) {
+                                LOG.debugf("%d neue Posts bleiben für den Aufräum-Lauf liegen", inserted.size() - i);
+                                break;
+                            }
+                        }
+                    }
+                    edits.values().forEach(this::applyEdit);
+                    if (!deletes.isEmpty()) {
+                        final List<String> deleted = publicMastodonPostRepository.deletePosts(deletes);
+                        deleted.forEach(publicPostPipeline::cancel);
+                        if (!deleted.isEmpty()) {
+                            LOG.debugf("%d von %d gelöschten Status waren gespeichert und wurden entfernt", deleted.size(), deletes.size());
+                        }
+                    }
+                    return events;
+                }).runSubscriptionOn(Infrastructure.getDefaultWorkerPool())
+                .invoke(() -> publicCursor.commit(statusIds))
+                .onFailure().invoke(e -> {
+                    Log.errorf(e, "Fehler beim Speichern von %d Mastodon-Ereignissen: %s", events.size(), e.getMessage());
+                    publicCursor.fail(statusIds);
+                })
+                .onFailure().recoverWithNull()
+                .replaceWithVoid();
+    }
 
+    /**
+     * Übernimmt eine Bearbeitung. Nur wenn sich der Inhalt tatsächlich geändert hat, werden Text und Vektor neu berechnet;
+     * unveränderte Artikel und Abschnitte kommen dabei aus {@link de.hexix.ArticleCache} und {@link de.hexix.ai.EmbeddingCache}.
+     */
+    private void applyEdit(final MastodonDtos.StreamStatus status) {
+        final String text = Jsoup.parse(status.content() == null ? "" : status.content()).text();
+        if (publicMastodonPostRepository.replaceContent(status.id(), HashUtil.sha256(status.content()), text)) {
+            publicPostPipeline.cancel(status.id());
+            publicPostPipeline.submit(status);
+            LOG.debugf("Bearbeiteter Status %s wird neu verarbeitet", status.id());
+        }
+    }
 
+    private PublicMastodonPostRepository.NewPost toNewPost(final MastodonDtos.StreamStatus status) {
+        final PublicMastodonPostEntity post = getPublicMastodonPostEntity(status, false);
+        return new PublicMastodonPostRepository.NewPost(post.getMastodonId(), post.getStatusOriginalUrl(), post.getInternMastodonUrl(),
+                post.getPostText() == null ? null : post.getPostText().getText(), HashUtil.sha256(status.content()));
+    }
 
     private PublicMastodonPostEntity getPublicMastodonPostEntity(final MastodonDtos.MastodonStatus status, boolean noUrl) {
+        return getPublicMastodonPostEntity(MastodonDtos.StreamStatus.of(status), noUrl);
+    }
+
+    private PublicMastodonPostEntity getPublicMastodonPostEntity(final MastodonDtos.StreamStatus status, boolean noUrl) {
         final PublicMastodonPostEntity post = new PublicMastodonPostEntity();
         post.setMastodonId(status.id());
         post.setStatusOriginalUrl(status.url());
-        post.setInternMastodonUrl("https://mastodon.hexix.de/@" + status.account().acct() + "/" + status.id());
+        post.setInternMastodonUrl("https://mastodon.hexix.de/@" + status.acct() + "/" + status.id());
 
         final String text = Jsoup.parse(status.content()).text();
 
@@ -290,7 +632,7 @@ public class MastodonStreamProcessor {
         post.setNoURL(noUrl);
 
         LOG.infof("Empfangener Status (ID: %s, Account: %s, Inhalt: \"%s\", URL: %s)\n",
-                status.id(), status.account().username(), text.substring(0, Math.min(20, text.length())) + "...", post.getStatusOriginalUrl());
+                status.id(), status.username(), text.substring(0, Math.min(20, text.length())) + "...", post.getStatusOriginalUrl());
 
 
         return post;
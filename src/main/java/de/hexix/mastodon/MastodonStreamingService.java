@@ -8,11 +8,12 @@ import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
 import org.eclipse.microprofile.rest.client.annotation.ClientHeaderParam;
 import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
+import org.jboss.resteasy.reactive.client.SseEvent;
 
 /**
  * Quarkus RestClient Interface für die Mastodon Streaming API.
  * Hört auf den öffentlichen Zeitstrahl mittels Server-Sent Events (SSE).
- * Liefert jeden empfangenen SSE-Ereignis-Payload als String.
+ * Liefert jedes empfangene SSE-Ereignis mit seinem Namen ({@code update}, {@code delete}, ...) und dem Payload als String.
  */
 @RegisterRestClient(baseUri = "https://mastodon.hexix.de")
 // Fügt den Authorization Bearer Token als Header hinzu.
@@ -24,21 +25,21 @@ public interface MastodonStreamingService {
      * Streamt den öffentlichen Zeitstrahl von Mastodon.
      * Der Endpunkt ist /api/v1/streaming/public.
      *
-     * @return Ein Multi<String>, das jeden empfangenen SSE-Ereignis-Payload (den "data"-Teil) als String liefert.
+     * @return Ein Multi, das jedes empfangene SSE-Ereignis mit Namen ("event") und Payload ("data") liefert.
      */
     @GET
     @Path("/api/v1/streaming/public")
     @Produces(MediaType.SERVER_SENT_EVENTS) // Wichtig: Definiert den Medientyp als Server-Sent Events
-    Multi<String> streamPublicTimeline(@HeaderParam("Authorization") String accessToken);
+    Multi<SseEvent<String>> streamPublicTimeline(@HeaderParam("Authorization") String accessToken);
 
     /**
      * Streamt den direct Zeitstrahl von Mastodon.
      * Der Endpunkt ist /api/v1/streaming/direct.
      *
-     * @return Ein Multi<String>, das jeden empfangenen SSE-Ereignis-Payload (den "data"-Teil) als String liefert.
+     * @return Ein Multi, das jedes empfangene SSE-Ereignis mit Namen ("event") und Payload ("data") liefert.
      */
     @GET
     @Path("/api/v1/streaming/direct")
     @Produces(MediaType.SERVER_SENT_EVENTS) // Wichtig: Definiert den Medientyp als Server-Sent Events
-    Multi<String> mastodonStreamingDirect(@HeaderParam("Authorization") String accessToken);
+    Multi<SseEvent<String>> mastodonStreamingDirect(@HeaderParam("Authorization") String accessToken);
 }
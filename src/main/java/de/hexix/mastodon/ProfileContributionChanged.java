@@ -0,0 +1,32 @@
+package de.hexix.mastodon;
+
+/**
+ * CDI-Ereignis, wenn sich der Beitrag eines Embeddings oder eines negativ bewerteten Posts zum Profilvektor ändert.
+ * Wird nach erfolgreichem Commit von {@link ProfileVectorService} verarbeitet.
+ *
+ * @param key    Eindeutiger Schlüssel der Quelle, z.B. {@code embedding:42} oder {@code post:1100...}.
+ * @param vector Der aktuelle Vektor oder null, wenn die Quelle keinen (mehr) hat.
+ * @param weight Das vorzeichenbehaftete Gewicht; 0 entfernt den Beitrag.
+ */
+public record ProfileContributionChanged(String key, double[] vector, double weight) {
+
+    /**
+     * Favoriten zählen positiv mit 1.0, Embeddings mit negativem Gewicht werden abgezogen.
+     */
+    public static ProfileContributionChanged of(final Embedding embedding) {
+        final double weight = embedding.getNegativeWeight() == null ? 1.0 : -embedding.getNegativeWeight();
+        return new ProfileContributionChanged("embedding:" + embedding.getId(), embedding.getLocalEmbedding(), weight);
+    }
+
+    /**
+     * Öffentliche Posts zählen nur mit ihrem negativen Gewicht; ohne Gewicht wird ein eventueller Beitrag entfernt.
+     */
+    public static ProfileContributionChanged of(final PublicMastodonPostEntity post) {
+        final double weight = post.getNegativeWeight() == null ? 0.0 : -post.getNegativeWeight();
+        return new ProfileContributionChanged("post:" + post.getMastodonId(), post.getEmbeddingVector(), weight);
+    }
+
+    boolean isRemoval() {
+        return vector == null || vector.length == 0 || weight == 0.0;
+    }
+}
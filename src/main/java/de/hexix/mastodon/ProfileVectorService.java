@@ -0,0 +1,273 @@
+package de.hexix.mastodon;
+
+import de.hexix.util.VectorMath;
+import de.hexix.util.VektorUtil;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hält den Profilvektor (gewichtete Summe der Favoriten minus der negativ bewerteten Embeddings und Posts) im Speicher.
+ * <p>
+ * Statt ihn jede Minute aus allen Embeddings neu zu berechnen, wird die laufende Summe bei jedem
+ * {@link ProfileContributionChanged} nach dem Commit angepasst und der normalisierte Vektor nur bei Änderungen neu gebildet.
+ * Der normalisierte Stand wird regelmäßig als {@link ProfileVectorSnapshot} gespeichert und beim Start sofort geladen;
+ * die Summe selbst wird danach einmalig aus der Datenbank aufgebaut.
+ * <p>
+ * Ein Neuaufbau liest die Datenbank und summiert ohne die Sperre des Dienstes; Ereignisse während des Aufbaus werden weiter
+ * auf die alte Summe angewendet und zusätzlich gepuffert. Erst zum Austausch wird kurz gesperrt und der Puffer nachgezogen.
+ */
+@ApplicationScoped
+public class ProfileVectorService {
+
+    final Logger LOG = Logger.getLogger(this.getClass());
+
+    private static final int SNAPSHOTS_TO_KEEP = 10;
+
+    @Inject
+    PublicMastodonPostRepository publicMastodonPostRepository;
+
+    // Hält gleichzeitige Neuaufbauten auseinander, ohne die Ereignisse zu blockieren
+    private final Object rebuildLock = new Object();
+
+    // Ereignisse vor dem ersten Aufbau und während eines Aufbaus, die danach in ihrer Reihenfolge nachgezogen werden
+    private final List<ProfileContributionChanged> pending = new ArrayList<>();
+
+    private ProfileSum current = new ProfileSum();
+    private boolean loaded;
+    private boolean rebuilding;
+    private boolean dirty;
+
+    // Wird nur ersetzt, nie verändert, und kann daher ohne Sperre gelesen werden
+    private volatile Profile profile;
+
+    private record Contribution(double[] vector, double weight) {}
+
+    /**
+     * Der normalisierte Vektor und derselbe Vektor als float32 für VectorMath, damit Leser nie einen gemischten Stand sehen.
+     */
+    private record Profile(double[] vector, float[] floats) {}
+
+    @Transactional
+    void onStart(@Observes StartupEvent ev) {
+        final ProfileVectorSnapshot snapshot = ProfileVectorSnapshot.findLatest();
+        if (snapshot != null) {
+            final float[] floats = VektorUtil.BinaryVectorCodec.decode(snapshot.getVector());
+            profile = new Profile(VektorUtil.toDoubleArray(floats), floats);
+            LOG.infof("Profilvektor aus Stand vom %s geladen (%d Beiträge)", snapshot.getCreatedAt(), snapshot.getContributions());
+        }
+        Thread.ofVirtual().name("profile-vector-rebuild").start(this::rebuild);
+    }
+
+    /**
+     * Baut die Summe vollständig aus der Datenbank neu auf, z.B. beim Start oder um Rundungsfehler zu verwerfen.
+     */
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                rebuilding = true;
+            }
+            final ProfileSum rebuilt = new ProfileSum();
+            try {
+                for (ProfileContributionChanged event : loadContributions()) {
+                    rebuilt.apply(event);
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    rebuilding = false;
+                    // Nach dem ersten Aufbau stecken die Ereignisse schon in der alten Summe
+                    if (loaded) {
+                        pending.clear();
+                    }
+                }
+                throw e;
+            }
+            synchronized (this) {
+                // Die Abfragen können vor dem Commit eines gepufferten Ereignisses gelaufen sein; erneutes Anwenden ist unschädlich
+                for (ProfileContributionChanged event : pending) {
+                    rebuilt.apply(event);
+                }
+                pending.clear();
+                current = rebuilt;
+                rebuilding = false;
+                loaded = true;
+                refresh();
+            }
+            LOG.infof("Profilvektor aus %d Beiträgen aufgebaut", rebuilt.size());
+        }
+    }
+
+    /**
+     * Lädt alle Beiträge aus der Datenbank, in einer eigenen Transaktion und ohne Sperre.
+     */
+    @Transactional
+    List<ProfileContributionChanged> loadContributions() {
+        final List<ProfileContributionChanged> events = new ArrayList<>();
+        for (Embedding embedding : Embedding.findAllLocalEmbeddings()) {
+            events.add(ProfileContributionChanged.of(embedding));
+        }
+        for (PublicMastodonPostEntity post : publicMastodonPostRepository.findAllNegativPosts()) {
+            events.add(ProfileContributionChanged.of(post));
+        }
+        return events;
+    }
+
+    /**
+     * Übernimmt eine Änderung, sobald die auslösende Transaktion erfolgreich war.
+     */
+    void onContributionChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) final ProfileContributionChanged event) {
+        synchronized (this) {
+            if (!loaded || rebuilding) {
+                pending.add(event);
+            }
+            if (loaded && current.apply(event)) {
+                refresh();
+            }
+        }
+    }
+
+    /**
+     * Der normalisierte Profilvektor.
+     *
+     * @return Der Vektor.
+     * @throws IllegalArgumentException Wenn noch keine Favoriten mit lokalem Embedding vorhanden sind.
+     */
+    public double[] profileVector() {
+        return currentProfile().vector();
+    }
+
+    /**
+     * Kosinus-Ähnlichkeit eines Vektors zum Profil.
+     *
+     * @throws IllegalArgumentException Wenn die Dimension nicht zum Profil passt.
+     */
+    public double score(final double[] vector) {
+        return VectorMath.cosine(profileFloats(), VektorUtil.toFloatArray(vector));
+    }
+
+    /**
+     * Bewertet viele Kandidaten auf einmal. Da Profil und Kandidaten normalisiert sind, ist das je ein Skalarprodukt.
+     *
+     * @param normalizedCandidates Die mit {@link VectorMath#normalize(float[])} normalisierten Vektoren.
+     * @return Die Ähnlichkeit pro Kandidat, {@link Float#NaN} bei abweichender Dimension.
+     */
+    public float[] scoreAll(final float[][] normalizedCandidates) {
+        return VectorMath.scoreAll(profileFloats(), normalizedCandidates);
+    }
+
+    private float[] profileFloats() {
+        return currentProfile().floats();
+    }
+
+    private Profile currentProfile() {
+        Profile result = profile;
+        if (result == null) {
+            synchronized (rebuildLock) {
+                if (!isLoaded()) {
+                    rebuild();
+                }
+            }
+            result = profile;
+        }
+        if (result == null) {
+            throw new IllegalArgumentException("Kann keinen Vektor erstellen, keine Vektoren vorhanden.");
+        }
+        return result;
+    }
+
+    private synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Speichert den aktuellen Stand, wenn er sich seit dem letzten Speichern geändert hat.
+     */
+    @Transactional
+    public void persistSnapshot() {
+        final double[] vector;
+        final int count;
+        synchronized (this) {
+            if (!dirty || profile == null) {
+                return;
+            }
+            vector = profile.vector();
+            count = current.size();
+            dirty = false;
+        }
+        new ProfileVectorSnapshot(VektorUtil.BinaryVectorCodec.encode(vector, VektorUtil.BinaryVectorCodec.Encoding.FLOAT32), count).persist();
+        ProfileVectorSnapshot.deleteAllButLatest(SNAPSHOTS_TO_KEEP);
+        LOG.debugf("Profilvektor mit %d Beiträgen gespeichert", count);
+    }
+
+    private void refresh() {
+        if (current.sum == null) {
+            profile = null;
+        } else {
+            final double[] vector = VektorUtil.normalize(current.sum.clone());
+            profile = new Profile(vector, VektorUtil.toFloatArray(vector));
+        }
+        dirty = true;
+    }
+
+    /**
+     * Anzahl der aktuell berücksichtigten Embeddings und Posts.
+     */
+    public synchronized int contributionCount() {
+        return current.size();
+    }
+
+    /**
+     * Die laufende Summe mit dem Beitrag pro Quelle, damit wiederholte Ereignisse nicht doppelt zählen
+     * und alte Beiträge abgezogen werden können.
+     */
+    private final class ProfileSum {
+        private final Map<String, Contribution> contributions = new HashMap<>();
+        private double[] sum;
+
+        /**
+         * Zieht den alten Beitrag der Quelle ab und addiert den neuen.
+         *
+         * @return true, wenn sich die Summe geändert hat.
+         */
+        private boolean apply(final ProfileContributionChanged event) {
+            final Contribution previous = contributions.remove(event.key());
+            if (previous != null) {
+                add(previous.vector(), -previous.weight());
+            }
+            if (!event.isRemoval()) {
+                if (sum != null && event.vector().length != sum.length) {
+                    LOG.warnf("Beitrag %s hat Dimension %d statt %d und wird ignoriert", event.key(), event.vector().length, sum.length);
+                } else {
+                    contributions.put(event.key(), new Contribution(event.vector(), event.weight()));
+                    add(event.vector(), event.weight());
+                }
+            }
+            if (contributions.isEmpty()) {
+                sum = null;
+            }
+            return previous != null || !event.isRemoval();
+        }
+
+        private void add(final double[] vector, final double weight) {
+            if (sum == null) {
+                sum = new double[vector.length];
+            }
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += vector[i] * weight;
+            }
+        }
+
+        private int size() {
+            return contributions.size();
+        }
+    }
+}
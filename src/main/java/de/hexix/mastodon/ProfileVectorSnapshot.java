@@ -0,0 +1,75 @@
+package de.hexix.mastodon;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Gespeicherter Stand des normalisierten Profilvektors, damit nach einem Neustart sofort bewertet werden kann.
+ * Der Vektor liegt im Format von {@link de.hexix.util.VektorUtil.BinaryVectorCodec}.
+ */
+@Entity
+@Table(name = "profile_vector_snapshots")
+public class ProfileVectorSnapshot extends PanacheEntityBase {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt = Instant.now();
+
+    @Column(name = "contributions", nullable = false)
+    private int contributions;
+
+    @Column(name = "vector", nullable = false)
+    private byte[] vector;
+
+    public ProfileVectorSnapshot() {
+    }
+
+    public ProfileVectorSnapshot(final byte[] vector, final int contributions) {
+        this.vector = vector;
+        this.contributions = contributions;
+    }
+
+    /**
+     * Der zuletzt gespeicherte Stand oder null.
+     */
+    public static ProfileVectorSnapshot findLatest() {
+        return ProfileVectorSnapshot.<ProfileVectorSnapshot>find("order by createdAt desc").firstResult();
+    }
+
+    /**
+     * Löscht alle bis auf die neuesten Stände.
+     *
+     * @param keep Anzahl der zu behaltenden Stände.
+     */
+    public static long deleteAllButLatest(final int keep) {
+        final ProfileVectorSnapshot oldest = ProfileVectorSnapshot.<ProfileVectorSnapshot>find("order by createdAt desc").page(keep, 1).firstResult();
+        return oldest == null ? 0 : delete("createdAt <= ?1", oldest.getCreatedAt());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public int getContributions() {
+        return contributions;
+    }
+
+    public byte[] getVector() {
+        return vector;
+    }
+}
@@ -16,6 +16,8 @@ import jakarta.persistence.OneToOne;
 import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.util.Arrays;
 
@@ -31,11 +33,11 @@ import java.util.Arrays;
                 query = "SELECT p FROM PublicMastodonPostEntity p " +
                         "LEFT JOIN p.postText pt " +
                         "LEFT JOIN p.urlText ut " +
-                        "WHERE p.embeddingVectorString IS NULL AND (pt.text IS NOT NULL OR ut.text IS NOT NULL) ORDER BY p.createdAt DESC"
+                        "WHERE p.embedding IS NULL AND p.embeddingVectorString IS NULL AND (pt.text IS NOT NULL OR ut.text IS NOT NULL) ORDER BY p.createdAt DESC"
         ),
         @NamedQuery(
                 name = PublicMastodonPostEntity.FIND_ALL_COMPARABLE,
-                query = "SELECT p FROM PublicMastodonPostEntity p WHERE p.embeddingVectorString IS NOT NULL AND p.cosDistance IS NULL"
+                query = "SELECT p FROM PublicMastodonPostEntity p WHERE (p.embedding IS NOT NULL OR p.embeddingVectorString IS NOT NULL) AND p.cosDistance IS NULL"
         ),
         @NamedQuery(
                 name = PublicMastodonPostEntity.FIND_BY_MASTODON_ID,
@@ -43,21 +45,21 @@ import java.util.Arrays;
         ),
         @NamedQuery(
                 name = PublicMastodonPostEntity.FIND_ALL_NEGATIVE_POSTS,
-                query = "SELECT p FROM PublicMastodonPostEntity p WHERE p.negativeWeight IS NOT NULL AND p.embeddingVectorString IS NOT NULL"
+                query = "SELECT p FROM PublicMastodonPostEntity p WHERE p.negativeWeight IS NOT NULL AND (p.embedding IS NOT NULL OR p.embeddingVectorString IS NOT NULL)"
         ),
         @NamedQuery(
                 name = PublicMastodonPostEntity.FIND_ALL_CALCED_EMBEDDINGS,
                 query = "SELECT p FROM PublicMastodonPostEntity p " +
                         "LEFT JOIN p.postText pt " +
                         "LEFT JOIN p.urlText ut " +
-                        "WHERE p.embeddingVectorString IS NOT NULL AND (pt.text IS NOT NULL OR ut.text IS NOT NULL) AND p.createdAt < :date"
+                        "WHERE (p.embedding IS NOT NULL OR p.embeddingVectorString IS NOT NULL) AND (pt.text IS NOT NULL OR ut.text IS NOT NULL) AND p.createdAt < :date"
         ),
         @NamedQuery(
                 name = PublicMastodonPostEntity.FIND_ALL_NO_EMBEDDING_AND_TEXT,
                 query = "SELECT p FROM PublicMastodonPostEntity p " +
                         "LEFT JOIN p.postText pt " +
                         "LEFT JOIN p.urlText ut " +
-                        "WHERE p.embeddingVectorString IS NULL AND (pt.text IS NULL OR ut.text IS NULL) AND p.urlText IS NULL"
+                        "WHERE p.embedding IS NULL AND p.embeddingVectorString IS NULL AND (pt.text IS NULL OR ut.text IS NULL) AND p.urlText IS NULL"
         ),
         @NamedQuery(
                 name = PublicMastodonPostEntity.FIND_BY_NO_VIKI_COMMENT,
@@ -104,10 +106,16 @@ public class PublicMastodonPostEntity extends BaseEntity {
     @Column(name = "cosinus_distance")
     Double cosDistance;
 
+    // Alte String-Repräsentation, wird nur noch gelesen und von EmbeddingVectorBackfill nach embedding übertragen
     @OneToOne(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
     @JoinColumn(name = "embedding_id", referencedColumnName = "id")
     TextEntity embeddingVectorString;
 
+    // Native pgvector-Spalte ohne feste Dimension, da das lokale Modell konfigurierbar ist
+    @JdbcTypeCode(SqlTypes.VECTOR)
+    @Column(name = "embedding")
+    float[] embedding;
+
     @Transient
     double[] embeddingVector;
 
@@ -139,6 +147,14 @@ public class PublicMastodonPostEntity extends BaseEntity {
     @Column(name = "embedding_model", columnDefinition = "TEXT")
     private String localModel;
 
+    // SHA-256 des HTML-Inhalts, um echte Bearbeitungen von wiederholten status.update-Ereignissen zu unterscheiden
+    @Column(name = "content_hash", columnDefinition = "TEXT")
+    private String contentHash;
+
+    // Wird bei jeder Bearbeitung erhöht, damit Ergebnisse für den alten Inhalt verworfen werden können
+    @Column(name = "content_version", nullable = false)
+    private int contentVersion;
+
 
     public String getMastodonId() {
         return mastodonId;
@@ -181,18 +197,32 @@ public class PublicMastodonPostEntity extends BaseEntity {
     }
 
     public double[] getEmbeddingVector() {
-        if (embeddingVector == null && embeddingVectorString != null) {
-            embeddingVector = VektorUtil.DoubleArrayConverter.stringToArray(embeddingVectorString.getText());
+        if (embeddingVector == null) {
+            if (embedding != null) {
+                embeddingVector = VektorUtil.toDoubleArray(embedding);
+            } else if (embeddingVectorString != null) {
+                embeddingVector = VektorUtil.DoubleArrayConverter.stringToArray(embeddingVectorString.getText());
+            }
         }
 
         return embeddingVector;
     }
 
+    /**
+     * Der Vektor als float32 wie in der nativen Spalte, ohne Umweg über double.
+     */
+    public float[] getEmbeddingFloats() {
+        if (embedding != null) {
+            return embedding;
+        }
+        return VektorUtil.toFloatArray(getEmbeddingVector());
+    }
+
     public void setEmbeddingVector(final double[] embeddingVector) {
         this.embeddingVector = embeddingVector;
-        final String embeddingVectorString1 = VektorUtil.DoubleArrayConverter.arrayToString(embeddingVector);
-        if(embeddingVectorString1 != null){
-            embeddingVectorString = new TextEntity(embeddingVectorString1);
+        this.embedding = VektorUtil.toFloatArray(embeddingVector);
+        if(embeddingVector != null){
+            embeddingVectorString = null;
         }
 
     }
@@ -223,6 +253,7 @@ public class PublicMastodonPostEntity extends BaseEntity {
 
     public void removeEmbeddingVektor() {
         embeddingVector = null;
+        embedding = null;
         embeddingVectorString = null;
     }
 
@@ -242,6 +273,22 @@ public class PublicMastodonPostEntity extends BaseEntity {
         return localModel;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(final String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public int getContentVersion() {
+        return contentVersion;
+    }
+
+    public void setContentVersion(final int contentVersion) {
+        this.contentVersion = contentVersion;
+    }
+
     public String getInternMastodonUrl() {
         return internMastodonUrl;
     }
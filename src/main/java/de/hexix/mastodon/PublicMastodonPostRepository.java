@@ -1,14 +1,20 @@
 package de.hexix.mastodon;
 
+import de.hexix.util.VektorUtil;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
+import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import jakarta.transaction.Transactional;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
 
 /**
  * Repository-Klasse für den Zugriff auf PublicMastodonPostEntity-Objekte.
@@ -17,9 +23,268 @@ import java.util.Optional;
 @ApplicationScoped
 public class PublicMastodonPostRepository {
 
+    // Bewertet die neuen Posts mit passender Dimension in einem Schritt und liefert nur die Kandidaten über der Schwelle zurück.
+    // Kandidaten jenseits der besten ?3 bleiben unbewertet und treten im nächsten Durchlauf wieder an.
+    private static final String SCORE_UNSCORED = """
+            WITH ranked AS (
+                SELECT id, 1 - (embedding <=> CAST(?1 AS vector)) AS score,
+                       row_number() OVER (ORDER BY embedding <=> CAST(?1 AS vector)) AS rank
+                FROM mastodon_posts
+                WHERE cosinus_distance IS NULL AND embedding IS NOT NULL AND vector_dims(embedding) = %d
+            ), scored AS (
+                UPDATE mastodon_posts m
+                SET cosinus_distance = r.score
+                FROM ranked r
+                WHERE m.id = r.id AND m.cosinus_distance IS NULL AND (r.score <= ?2 OR r.rank <= ?3)
+                RETURNING m.mastodon_id, m.cosinus_distance
+            )
+            SELECT mastodon_id, cosinus_distance FROM scored
+            WHERE cosinus_distance > ?2
+            ORDER BY cosinus_distance DESC
+            """;
+
+    // Dimensionen mit eigenem HNSW-Index (V22), nur diese können per Index gesucht werden
+    private static final Set<Integer> INDEXED_DIMENSIONS = Set.of(768, 1024);
+
     @Inject
     EntityManager em;
 
+    /**
+     * Ein in der Datenbank bewerteter Post.
+     *
+     * @param mastodonId  Die Mastodon-ID des Posts.
+     * @param cosDistance Die Kosinus-Ähnlichkeit zum Profilvektor.
+     */
+    public record ScoredPost(String mastodonId, double cosDistance) {}
+
+    /**
+     * Berechnet die Kosinus-Ähnlichkeit aller noch nicht bewerteten Posts zum Profilvektor direkt in PostgreSQL
+     * und speichert sie in {@code cosinus_distance}. Posts mit anderer Dimension (z.B. nach einem Modellwechsel) bleiben unbewertet.
+     * Es werden keine Entities geladen, Speicherbedarf und Laufzeit hängen nur von der Anzahl neuer Posts ab.
+     * Von den Kandidaten über der Schwelle werden nur die besten {@code limit} gespeichert; die übrigen bleiben unbewertet,
+     * damit sie im nächsten Durchlauf erneut angeboten werden, statt ohne Boost als erledigt zu gelten.
+     *
+     * @param profileVector  Der Profilvektor.
+     * @param minCosDistance Nur Posts mit größerer Ähnlichkeit werden zurückgegeben.
+     * @param limit          Die maximale Anzahl an Kandidaten.
+     * @return Die Kandidaten über der Schwelle, absteigend nach Ähnlichkeit.
+     */
+    public List<ScoredPost> scoreUnscored(final double[] profileVector, final double minCosDistance, final int limit) {
+        em.flush();
+        final List<Object[]> rows = em.createNativeQuery(scoreUnscoredSql(profileVector.length), Object[].class)
+                .setParameter(1, VektorUtil.toPgVectorLiteral(profileVector))
+                .setParameter(2, minCosDistance)
+                .setParameter(3, limit)
+                .getResultList();
+        return rows.stream().map(row -> new ScoredPost((String) row[0], ((Number) row[1]).doubleValue())).toList();
+    }
+
+    /**
+     * Sucht die dem Profilvektor ähnlichsten Posts über den HNSW-Index (approximativ).
+     * Für Dimensionen ohne Index wird exakt, aber ohne Index sortiert.
+     *
+     * @param profileVector Der Profilvektor.
+     * @param limit         Maximale Anzahl der Ergebnisse (top-k).
+     * @return Die ähnlichsten Posts, absteigend nach Ähnlichkeit.
+     */
+    @SuppressWarnings("unchecked")
+    public List<PublicMastodonPostEntity> findMostSimilar(final double[] profileVector, final int limit) {
+        return em.createNativeQuery(mostSimilarSql(profileVector.length), PublicMastodonPostEntity.class)
+                .setParameter(1, VektorUtil.toPgVectorLiteral(profileVector))
+                .setParameter(2, limit)
+                .getResultList();
+    }
+
+    /*
+     * Die Dimension steht als Literal im SQL und nicht als Parameter: Nur dann kann PostgreSQL auch mit einem generischen Plan
+     * beweisen, dass das Prädikat dem des partiellen Index aus V22 entspricht. Sie ist eine Vektorlänge, also keine Nutzereingabe.
+     */
+    static String scoreUnscoredSql(final int dims) {
+        return SCORE_UNSCORED.formatted(dims);
+    }
+
+    static String mostSimilarSql(final int dims) {
+        // Auch der Sortierausdruck muss exakt dem Index entsprechen
+        final String expression = INDEXED_DIMENSIONS.contains(dims) ? "(embedding::vector(" + dims + "))" : "embedding";
+        return "SELECT * FROM mastodon_posts WHERE embedding IS NOT NULL AND vector_dims(embedding) = " + dims + " " +
+                "ORDER BY " + expression + " <=> CAST(?1 AS vector) LIMIT ?2";
+    }
+
+    /**
+     * Setzt die Ähnlichkeit eines Posts nur, wenn er noch nicht bewertet ist.
+     * Damit entscheidet genau einer von mehreren parallelen Bewertern über den Boost.
+     *
+     * @param mastodonId     Die Mastodon-ID des Posts.
+     * @param contentVersion Der Inhaltsstand, zu dem der Vektor gehört, siehe {@link PublicMastodonPostEntity#getContentVersion()}.
+     * @param cosDistance    Die Ähnlichkeit.
+     * @return true, wenn dieser Aufruf die Bewertung gesetzt hat; false auch, wenn der Post inzwischen bearbeitet wurde.
+     */
+    @Transactional
+    public boolean claimCosDistance(final String mastodonId, final int contentVersion, final double cosDistance) {
+        return em.createNativeQuery("UPDATE mastodon_posts SET cosinus_distance = ?1 WHERE mastodon_id = ?2 AND content_version = ?3 AND cosinus_distance IS NULL")
+                .setParameter(1, cosDistance)
+                .setParameter(2, mastodonId)
+                .setParameter(3, contentVersion)
+                .executeUpdate() > 0;
+    }
+
+    /**
+     * Sperrt einen Post bis zum Ende der laufenden Transaktion, wenn er noch den erwarteten Inhaltsstand hat.
+     * Eine gleichzeitige Bearbeitung wartet dann, bis die Transaktion abgeschlossen ist, und überschreibt deren Ergebnis.
+     *
+     * @param mastodonId     Die Mastodon-ID des Posts.
+     * @param contentVersion Der Inhaltsstand, für den gerechnet wurde.
+     * @return false, wenn der Post fehlt oder inzwischen bearbeitet wurde.
+     */
+    @Transactional
+    public boolean lockContentVersion(final String mastodonId, final int contentVersion) {
+        return !em.createNativeQuery("SELECT 1 FROM mastodon_posts WHERE mastodon_id = ?1 AND content_version = ?2 FOR UPDATE")
+                .setParameter(1, mastodonId)
+                .setParameter(2, contentVersion)
+                .getResultList().isEmpty();
+    }
+
+    /**
+     * Ein neuer Post aus dem öffentlichen Stream, wie er gesammelt gespeichert wird.
+     *
+     * @param mastodonId        Die Mastodon-ID.
+     * @param statusOriginalUrl Die URL auf der Ursprungsinstanz.
+     * @param internMastodonUrl Die URL auf der eigenen Instanz.
+     * @param text              Der Text des Posts oder null.
+     * @param contentHash       Der Hash des HTML-Inhalts, siehe {@link PublicMastodonPostEntity#getContentHash()}.
+     */
+    public record NewPost(String mastodonId, String statusOriginalUrl, String internMastodonUrl, String text, String contentHash) {}
+
+    /**
+     * Speichert mehrere neue Posts mit einer Anweisung. Bereits vorhandene Mastodon-IDs werden übersprungen
+     * ({@code ON CONFLICT (mastodon_id) DO NOTHING}), die Texte werden in derselben Anweisung in {@code text_contents} angelegt,
+     * und zwar nur für die tatsächlich eingefügten Posts.
+     *
+     * @param posts Die Posts, jede Mastodon-ID höchstens einmal.
+     * @return Die Mastodon-IDs der tatsächlich neu angelegten Posts.
+     */
+    @Transactional
+    public List<String> insertNewPosts(final List<NewPost> posts) {
+        if (posts.isEmpty()) {
+            return List.of();
+        }
+        final StringJoiner values = new StringJoiner(", ");
+        for (int i = 0; i < posts.size(); i++) {
+            final int p = i * 5;
+            values.add("(CAST(?%d AS text), NULLIF(CAST(?%d AS text), ''), NULLIF(CAST(?%d AS text), ''), NULLIF(CAST(?%d AS text), ''), NULLIF(CAST(?%d AS text), ''))"
+                    .formatted(p + 1, p + 2, p + 3, p + 4, p + 5));
+        }
+        // Die Text-IDs werden vorab aus der Sequenz gezogen, damit Post und Text in einer Anweisung verknüpft werden können.
+        // Die Texte folgen den Posts: der Fremdschlüssel wird erst am Ende der Anweisung geprüft, und ein per ON CONFLICT
+        // übersprungener Post hinterlässt so keinen verwaisten Text.
+        final String sql = """
+                WITH input (mastodon_id, status_original_url, intern_mastodon_url, content, content_hash) AS (VALUES %s),
+                fresh AS (
+                    SELECT i.*, CASE WHEN i.content IS NOT NULL THEN nextval('text_contents_id_seq') END AS text_id
+                    FROM input i
+                    WHERE NOT EXISTS (SELECT 1 FROM mastodon_posts p WHERE p.mastodon_id = i.mastodon_id)
+                ),
+                inserted AS (
+                    INSERT INTO mastodon_posts (mastodon_id, post_text_id, status_original_url, intern_mastodon_url, content_hash, no_url, viki_commented, created_at, updated_at)
+                    SELECT mastodon_id, text_id, status_original_url, intern_mastodon_url, content_hash, FALSE, FALSE, NOW(), NOW() FROM fresh
+                    ON CONFLICT (mastodon_id) DO NOTHING
+                    RETURNING mastodon_id, post_text_id
+                ),
+                texts AS (
+                    INSERT INTO text_contents (id, content, created_at, updated_at)
+                    SELECT f.text_id, f.content, NOW(), NOW() FROM fresh f JOIN inserted i ON i.post_text_id = f.text_id
+                )
+                SELECT mastodon_id FROM inserted
+                """.formatted(values);
+
+        final Query query = em.createNativeQuery(sql, String.class);
+        for (int i = 0; i < posts.size(); i++) {
+            final NewPost post = posts.get(i);
+            final int p = i * 5;
+            query.setParameter(p + 1, post.mastodonId());
+            query.setParameter(p + 2, Objects.requireNonNullElse(post.statusOriginalUrl(), ""));
+            query.setParameter(p + 3, Objects.requireNonNullElse(post.internMastodonUrl(), ""));
+            query.setParameter(p + 4, Objects.requireNonNullElse(post.text(), ""));
+            query.setParameter(p + 5, Objects.requireNonNullElse(post.contentHash(), ""));
+        }
+        @SuppressWarnings("unchecked")
+        final List<String> inserted = query.getResultList();
+        return inserted;
+    }
+
+    /**
+     * Löscht auf Mastodon gelöschte Posts samt Post-, Link- und altem Vektortext mit einer Anweisung.
+     * Negativ bewertete Posts bleiben erhalten, da sie weiter in den Profilvektor eingehen.
+     *
+     * @param mastodonIds Die Mastodon-IDs aus den Delete-Ereignissen; unbekannte IDs werden ignoriert.
+     * @return Die Mastodon-IDs der tatsächlich gelöschten Posts.
+     */
+    @Transactional
+    public List<String> deletePosts(final Collection<String> mastodonIds) {
+        if (mastodonIds.isEmpty()) {
+            return List.of();
+        }
+        // Die Fremdschlüssel auf text_contents werden erst am Ende der Anweisung geprüft, beide Löschungen sind dann erledigt
+        final String sql = """
+                WITH removed AS (
+                    DELETE FROM mastodon_posts
+                    WHERE mastodon_id IN (:mastodonIds) AND negative_weight IS NULL
+                    RETURNING mastodon_id, post_text_id, url_text_id, embedding_id
+                ),
+                texts AS (
+                    DELETE FROM text_contents t USING removed r
+                    WHERE t.id IN (r.post_text_id, r.url_text_id, r.embedding_id)
+                )
+                SELECT mastodon_id FROM removed
+                """;
+        @SuppressWarnings("unchecked")
+        final List<String> deleted = em.createNativeQuery(sql, String.class)
+                .setParameter("mastodonIds", mastodonIds)
+                .getResultList();
+        return deleted;
+    }
+
+    /**
+     * Übernimmt den bearbeiteten Inhalt eines Posts, wenn sich sein Hash geändert hat.
+     * Linktext, Vektor und Bewertung werden verworfen und der Inhaltsstand erhöht, damit der Post neu verarbeitet wird
+     * und noch laufende Berechnungen für den alten Inhalt nichts mehr speichern. Negativ bewertete Posts bleiben unverändert,
+     * die Bewertung bezieht sich auf den Inhalt, den der Nutzer gesehen hat.
+     *
+     * @param mastodonId  Die Mastodon-ID des Posts.
+     * @param contentHash Der Hash des neuen HTML-Inhalts.
+     * @param text        Der neue Text des Posts.
+     * @return true, wenn der Post neu verarbeitet werden muss.
+     */
+    @Transactional
+    public boolean replaceContent(final String mastodonId, final String contentHash, final String text) {
+        final PublicMastodonPostEntity post = findByMastodonId(mastodonId).orElse(null);
+        if (post == null || post.getNegativeWeight() != null || Objects.equals(post.getContentHash(), contentHash)) {
+            return false;
+        }
+        final TextEntity textEntity = new TextEntity(text);
+        post.setPostText(textEntity.getText() == null || textEntity.getText().isBlank() ? null : textEntity);
+        post.setUrlText(null);
+        post.removeEmbeddingVektor();
+        post.setCosDistance(null);
+        post.setContentHash(contentHash);
+        post.setContentVersion(post.getContentVersion() + 1);
+        return true;
+    }
+
+    /**
+     * Setzt die Ähnlichkeit eines Posts, ohne ihn zu laden (z.B. um fehlgeschlagene Boosts zu markieren).
+     *
+     * @param mastodonId  Die Mastodon-ID des Posts.
+     * @param cosDistance Die neue Ähnlichkeit.
+     */
+    @Transactional
+    public void updateCosDistance(final String mastodonId, final double cosDistance) {
+        em.createNativeQuery("UPDATE mastodon_posts SET cosinus_distance = ?1 WHERE mastodon_id = ?2")
+                .setParameter(1, cosDistance)
+                .setParameter(2, mastodonId)
+                .executeUpdate();
+    }
+
     /**
      * Finds the next 10 PublicMastodonPostEntity objects that do not have an embedding vector string.
      * @return A list of PublicMastodonPostEntity objects matching the criteria.
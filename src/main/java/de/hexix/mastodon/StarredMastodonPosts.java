@@ -1,24 +1,25 @@
 package de.hexix.mastodon;
 
 import com.google.genai.types.ContentEmbedding;
-import de.hexix.ai.GeminiRequestEntity;
+import de.hexix.ai.EmbeddingBatchClient;
+import de.hexix.ai.GeminiRateLimiter;
 import de.hexix.ai.GenerateEmbeddingTextInput;
-import de.hexix.ai.OllamaRestClient;
+import de.hexix.ai.TextChunker;
 import de.hexix.ai.dto.EmbeddingRequest;
-import de.hexix.ai.dto.EmbeddingResponse;
 import de.hexix.mastodon.api.MastodonDtos;
 import de.hexix.mastodon.resource.FavouritesService;
 import de.hexix.util.VektorUtil;
 import jakarta.enterprise.context.RequestScoped;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.eclipse.microprofile.rest.client.inject.RestClient;
 import org.jboss.logging.Logger;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -36,16 +37,32 @@ public class StarredMastodonPosts {
     @Inject
     GenerateEmbeddingTextInput generateEmbeddingTextInput;
 
+    @Inject
+    EmbeddingBatchClient embeddingBatchClient;
+
+    @Inject
+    TextChunker textChunker;
+
+    @Inject
+    Event<ProfileContributionChanged> profileContributionChanged;
+
     @ConfigProperty(name = "local.model", defaultValue = "granite-embedding:278m")
     String localModel;
 
     @ConfigProperty(name = "gemini.embedding.model")
     String geminiModel;
 
+    @ConfigProperty(name = "feed2Mastodon.gemini.maxBatchSize", defaultValue = "100")
+    int geminiMaxBatchSize;
+
+    @ConfigProperty(name = "feed2Mastodon.gemini.maxInputTokens", defaultValue = "2048")
+    int geminiMaxInputTokens;
+
+    @ConfigProperty(name = "feed2Mastodon.gemini.idleRecheck", defaultValue = "5m")
+    Duration geminiIdleRecheck;
 
     @Inject
-    @RestClient
-    OllamaRestClient ollamaRestClient;
+    GeminiRateLimiter geminiRateLimiter;
 
 
     public void collectNewStarredPosts(){
@@ -57,31 +74,62 @@ public class StarredMastodonPosts {
 
 
         newFavourites.forEach(mastodonStatus -> favouritesService.createEmbedding(mastodonStatus));
+        if(!newFavourites.isEmpty()){
+            // Neue Favoriten warten auf ihr Gemini-Embedding
+            geminiRateLimiter.wake(geminiModel);
+        }
     }
 
+    /**
+     * Berechnet die Gemini-Embeddings der wartenden Favoriten. Pro Aufruf werden so viele Texte in eine Anfrage gepackt,
+     * wie das Token-Kontingent des {@link GeminiRateLimiter} zulässt.
+     */
     @Transactional
     public void generateEmbeddings() {
 
         String model = geminiModel;
 
-        final long countLast10Minutes = GeminiRequestEntity.countLast10Minutes(model);
+        // Ohne freies Kontingent oder bei zuletzt leerem Rückstand gar nicht erst die Datenbank abfragen
+        final long availableTokens = geminiRateLimiter.availableTokens(model);
+        if (availableTokens <= 0 || geminiRateLimiter.isIdle(model)) {
+            return;
+        }
 
-        if(countLast10Minutes < 3) {
-            final List<Embedding> nextEmbedding = Embedding.findNextEmbeddings();
+        final List<Embedding> pending = Embedding.findNextEmbeddings(geminiMaxBatchSize);
+        if (pending.isEmpty()) {
+            geminiRateLimiter.markIdle(model, geminiIdleRecheck);
+            return;
+        }
 
-            final Map<UUID, ContentEmbedding> results = generateEmbeddingTextInput.getEmbedding(model, nextEmbedding.stream().collect(Collectors.toMap(Embedding::getUuid, embedding -> embedding.getText().getText())));
+        final List<Embedding> nextEmbedding = new ArrayList<>();
+        long tokens = 0;
+        for (Embedding embedding : pending) {
+            // Gemini kürzt zu lange Texte selbst, mehr als maxInputTokens wird daher nicht berechnet
+            final long embeddingTokens = Math.min(geminiMaxInputTokens, GeminiRateLimiter.estimateTokens(embedding.getText().getText()));
+            if (tokens + embeddingTokens > availableTokens) {
+                break;
+            }
+            nextEmbedding.add(embedding);
+            tokens += embeddingTokens;
+        }
 
-            nextEmbedding.forEach(embedding -> {
-                final ContentEmbedding result = results.get(embedding.getUuid());
+        if (nextEmbedding.isEmpty() || !geminiRateLimiter.tryAcquire(model, tokens)) {
+            return;
+        }
 
-                if(result !=null && result.values().isPresent()) {
-                    embedding.setEmbedding(Arrays.stream(result.values().get().<Float>toArray(new Float[0])).mapToDouble(Float::doubleValue).toArray());
-                }else{
-                    LOG.infof("Embedding (%s) has no result", embedding.getUuid());
-                }
+        final Map<UUID, ContentEmbedding> results = generateEmbeddingTextInput.getEmbedding(model, nextEmbedding.stream().collect(Collectors.toMap(Embedding::getUuid, embedding -> embedding.getText().getText())));
 
-            });
-        }
+        nextEmbedding.forEach(embedding -> {
+            final ContentEmbedding result = results.get(embedding.getUuid());
+
+            if(result !=null && result.values().isPresent()) {
+                embedding.setEmbedding(Arrays.stream(result.values().get().<Float>toArray(new Float[0])).mapToDouble(Float::doubleValue).toArray());
+            }else{
+                LOG.infof("Embedding (%s) has no result", embedding.getUuid());
+            }
+
+        });
+        LOG.debugf("%d Gemini-Embeddings mit ca. %d Token berechnet, %d warten noch", nextEmbedding.size(), tokens, pending.size() - nextEmbedding.size());
     }
 
     @Transactional
@@ -93,23 +141,23 @@ public class StarredMastodonPosts {
     public void generateLocalEmbeddings(){
         final List<Embedding> nextEmbeddings = getNextEmbeddings();
 
-
+        Map<Long, List<EmbeddingRequest>> requests = new LinkedHashMap<>();
         for (Embedding embedding : nextEmbeddings) {
 
-            final List<String> splitText = splitByLength(embedding.getText().getText(), "bge-m3:567m".equalsIgnoreCase(localModel) ? 8000 : 500);
-
-            List<double[]> responses = new ArrayList<>();
+            final List<String> splitText = textChunker.chunk(localModel, embedding.getText().getText(), "Favorit " + embedding.getUuid());
+            requests.put(embedding.getId(), List.of(new EmbeddingRequest(localModel, splitText, false)));
+        }
 
-            for (String text : splitText) {
-                EmbeddingRequest request = new EmbeddingRequest(localModel, List.of(text), false);
-                final EmbeddingResponse response = ollamaRestClient.generateEmbeddings(request);
+        // Alle Abschnitte aller Favoriten in wenigen Batches berechnen
+        final Map<Long, List<double[]>> responses = embeddingBatchClient.embed(requests);
 
-                responses.add(response.embeddings().getFirst().stream().mapToDouble(Double::doubleValue).toArray());
+        for (Embedding embedding : nextEmbeddings) {
+            final List<double[]> vectors = responses.get(embedding.getId());
+            if (vectors == null || vectors.isEmpty()) {
+                continue;
             }
 
-
-
-            final double[] profileVector = VektorUtil.createProfileVector(responses);
+            final double[] profileVector = VektorUtil.createProfileVector(vectors);
 
             saveEmbedding(embedding.getId(), profileVector);
 
@@ -128,21 +176,6 @@ public class StarredMastodonPosts {
         embedding.setLocalEmbedding(profileVector);
 
         embedding.setLocalEmbeddingModel(localModel);
-    }
-
-
-
-
-    public static List<String> splitByLength(String str, int laenge) {
-        if(str == null){
-            return Collections.emptyList();
-        }
-        List<String> teile = new ArrayList<>();
-        int laengeStr = str.length();
-        for (int i = 0; i < laengeStr; i += (laenge - 20)) {
-            // Stellt sicher, dass der letzte Teil nicht über das String-Ende hinausgeht
-            teile.add(str.substring(i, Math.min(laengeStr, i + laenge)));
-        }
-        return teile;
+        profileContributionChanged.fire(ProfileContributionChanged.of(embedding));
     }
 }
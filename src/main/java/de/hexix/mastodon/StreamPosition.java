@@ -0,0 +1,65 @@
+package de.hexix.mastodon;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Zuletzt verarbeitete Status-ID eines Mastodon-Streams, siehe {@link MastodonStreamProcessor}.
+ */
+@Entity
+@Table(name = "stream_positions")
+public class StreamPosition extends PanacheEntityBase {
+
+    @Id
+    @Column(name = "stream")
+    private String stream;
+
+    @Column(name = "last_status_id", nullable = false, columnDefinition = "TEXT")
+    private String lastStatusId;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    public StreamPosition() {
+    }
+
+    public static String findLastStatusId(final String stream) {
+        final StreamPosition position = findById(stream);
+        return position == null ? null : position.getLastStatusId();
+    }
+
+    /**
+     * Speichert die Position, eine ältere ID überschreibt nie eine neuere.
+     */
+    public static void upsert(final String stream, final String lastStatusId) {
+        getEntityManager().createNativeQuery("""
+                        INSERT INTO stream_positions (stream, last_status_id, updated_at)
+                        VALUES (?1, ?2, NOW())
+                        ON CONFLICT (stream) DO UPDATE
+                        SET last_status_id = EXCLUDED.last_status_id, updated_at = EXCLUDED.updated_at
+                        WHERE length(stream_positions.last_status_id) < length(EXCLUDED.last_status_id)
+                           OR (length(stream_positions.last_status_id) = length(EXCLUDED.last_status_id)
+                               AND stream_positions.last_status_id < EXCLUDED.last_status_id)
+                        """)
+                .setParameter(1, stream)
+                .setParameter(2, lastStatusId)
+                .executeUpdate();
+    }
+
+    public String getStream() {
+        return stream;
+    }
+
+    public String getLastStatusId() {
+        return lastStatusId;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+}
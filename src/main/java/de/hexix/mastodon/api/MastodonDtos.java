@@ -20,8 +20,8 @@ public class MastodonDtos {
     public record StatusPayload(String status, String visibility, String language) {}
 
     // Record, um die Antwort von /verify_credentials abzubilden
-    // Wir brauchen hier nur die ID.
-    public record MastodonAccount(String id, String username, String acct) {}
+    // Wir brauchen hier nur die ID, für den öffentlichen Stream zusätzlich das Bot-Kennzeichen.
+    public record MastodonAccount(String id, String username, String acct, Boolean bot) {}
 
     /**
      * Request-Body für das Boosten eines Status, um die Sichtbarkeit zu steuern.
@@ -30,6 +30,25 @@ public class MastodonDtos {
 
     public record DirectStatus(String id, boolean unread, List<MastodonAccount> accounts, @JsonProperty("last_status") MastodonStatus lastStatus){}
 
+    /**
+     * Die Felder eines Status, die für den öffentlichen Stream gebraucht werden.
+     * Wird von {@link StreamStatusDecoder} direkt aus dem JSON gelesen, ohne Karte, Medien usw. zu binden.
+     *
+     * @param reblog true, wenn der Status ein Boost eines anderen Status ist.
+     */
+    public record StreamStatus(String id, String url, String content, String language, String acct, String username, boolean bot, boolean reblog) {
+
+        /**
+         * Projektion eines vollständig gelesenen Status, z.B. aus der REST-API.
+         */
+        public static StreamStatus of(final MastodonStatus status) {
+            final MastodonAccount account = status.account();
+            return new StreamStatus(status.id(), status.url(), status.content(), status.language(),
+                    account == null ? null : account.acct(), account == null ? null : account.username(),
+                    account != null && Boolean.TRUE.equals(account.bot()), status.reblog() != null && status.reblog().isPresent());
+        }
+    }
+
     public record MastodonSearchResult(
             List<MastodonAccount> accounts,
             List<MastodonStatus> statuses
@@ -0,0 +1,82 @@
+package de.hexix.mastodon.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Liest einen Status aus dem Mastodon-Stream mit einem {@link JsonParser} direkt in einen {@link MastodonDtos.StreamStatus}.
+ * <p>
+ * Alle anderen Felder (Karte, Medien, Emojis, Erwähnungen, ...) werden übersprungen, ohne Objekte dafür anzulegen.
+ * Das spart auf dem öffentlichen Stream die meiste Zeit und Speicher gegenüber dem Binden des vollständigen {@link MastodonDtos.MastodonStatus}.
+ */
+public final class StreamStatusDecoder {
+
+    // Thread-sicher und teuer in der Erzeugung, daher nur einmal
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private StreamStatusDecoder() {
+    }
+
+    /**
+     * @param json Die Daten eines {@code update}- oder {@code status.update}-Ereignisses.
+     * @throws IOException Wenn die Daten kein Status-Objekt sind.
+     */
+    public static MastodonDtos.StreamStatus decode(final String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Status-Objekt erwartet");
+            }
+            String id = null;
+            String url = null;
+            String content = null;
+            String language = null;
+            Account account = Account.NONE;
+            boolean reblog = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.currentName();
+                final JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "id" -> id = parser.getValueAsString();
+                    case "url" -> url = parser.getValueAsString();
+                    case "content" -> content = parser.getValueAsString();
+                    case "language" -> language = parser.getValueAsString();
+                    case "account" -> account = value == JsonToken.START_OBJECT ? readAccount(parser) : Account.NONE;
+                    case "reblog" -> {
+                        reblog = value == JsonToken.START_OBJECT;
+                        parser.skipChildren();
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            if (id == null) {
+                throw new JsonParseException(parser, "Status ohne ID");
+            }
+            return new MastodonDtos.StreamStatus(id, url, content, language, account.acct(), account.username(), account.bot(), reblog);
+        }
+    }
+
+    private record Account(String acct, String username, boolean bot) {
+        static final Account NONE = new Account(null, null, false);
+    }
+
+    private static Account readAccount(final JsonParser parser) throws IOException {
+        String acct = null;
+        String username = null;
+        boolean bot = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.currentName();
+            final JsonToken value = parser.nextToken();
+            switch (field) {
+                case "acct" -> acct = parser.getValueAsString();
+                case "username" -> username = parser.getValueAsString();
+                case "bot" -> bot = value == JsonToken.VALUE_TRUE;
+                default -> parser.skipChildren();
+            }
+        }
+        return new Account(acct, username, bot);
+    }
+}
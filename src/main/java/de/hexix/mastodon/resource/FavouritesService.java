@@ -1,6 +1,6 @@
 package de.hexix.mastodon.resource;
 
-import de.hexix.JsoupParser;
+import de.hexix.ArticleCache;
 import de.hexix.ai.GenerateEmbeddingTextInput;
 import de.hexix.mastodon.Embedding;
 import de.hexix.mastodon.PagingConfigEntity;
@@ -45,6 +45,9 @@ public class FavouritesService {
     @Inject
     TextEntityRepository textEntityRepository;
 
+    @Inject
+    ArticleCache articleCache;
+
     public List<MastodonDtos.MastodonStatus> getAllFavourites() {
         return getNewFavourites();
     }
@@ -136,7 +139,7 @@ public class FavouritesService {
 
         final MastodonDtos.PreviewCard card = mastodonStatus.card();
         if(card != null) {
-            final String article = JsoupParser.getArticle(card.url());
+            final String article = articleCache.getArticle(card.url());
             if(article != null && !article.trim().isEmpty()) {
                 list.put("MASTODON_STATUS_ID__" + mastodonStatus.id() + "__CARD_URL", new MastodonText(article, card.url(), mastodonStatus.url()));
             }else{
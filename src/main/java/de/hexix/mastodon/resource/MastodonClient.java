@@ -10,6 +10,7 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
 import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
 
 import java.util.List;
@@ -23,6 +24,21 @@ public interface MastodonClient {
     @Produces(MediaType.APPLICATION_JSON)
     MastodonDtos.MastodonStatus postStatus(@HeaderParam("Authorization") String accessToken, MastodonDtos.StatusPayload status);
 
+    /**
+     * Postet einen Status mit Idempotency-Key. Mastodon liefert für denselben Key innerhalb einer Stunde denselben Status zurück,
+     * statt ihn erneut anzulegen.
+     * @param accessToken Der "Bearer <TOKEN>" String.
+     * @param idempotencyKey Ein pro Toot eindeutiger Schlüssel.
+     * @param status Der zu postende Status.
+     * @return Die rohe Antwort, damit die X-RateLimit-Header ausgewertet werden können.
+     */
+    @POST
+    @Path("/v1/statuses")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response postStatusIdempotent(@HeaderParam("Authorization") String accessToken,
+                                  @HeaderParam("Idempotency-Key") String idempotencyKey,
+                                  MastodonDtos.StatusPayload status);
+
     /**
      * Ruft die Account-Informationen ab, die mit dem Access Token verknüpft sind.
      * Nützlich, um die eigene Account-ID zu erhalten.
@@ -88,6 +104,34 @@ public interface MastodonClient {
     @Path("/v1/statuses/")
     List<MastodonDtos.MastodonStatus> getStatuses(@QueryParam("id[]") List<String> ids, @HeaderParam("Authorization") String authorizationHeader);
 
+    /**
+     * Öffentlicher Zeitstrahl ab einer ID, um nach einem Verbindungsabbruch des Streams die Lücke zu füllen.
+     *
+     * @param accessToken Der "Bearer <TOKEN>" String.
+     * @param minId       Nur Posts direkt nach dieser ID (vorwärts blättern, neueste zuerst in der Antwort).
+     * @param limit       Höchstens so viele Posts (Mastodon erlaubt bis zu 40).
+     * @return Die Posts, absteigend nach ID.
+     */
+    @GET
+    @Path("/v1/timelines/public")
+    List<MastodonDtos.MastodonStatus> getPublicTimeline(@HeaderParam("Authorization") String accessToken,
+                                                        @QueryParam("min_id") String minId,
+                                                        @QueryParam("limit") Integer limit);
+
+    /**
+     * Direktnachrichten-Unterhaltungen ab einer ID, sortiert nach der ID des letzten Status.
+     *
+     * @param accessToken Der "Bearer <TOKEN>" String.
+     * @param minId       Nur Unterhaltungen, deren letzter Status direkt nach dieser ID liegt.
+     * @param limit       Höchstens so viele Unterhaltungen (Mastodon erlaubt bis zu 40).
+     * @return Die Unterhaltungen, absteigend nach ID des letzten Status.
+     */
+    @GET
+    @Path("/v1/conversations")
+    List<MastodonDtos.DirectStatus> getConversations(@HeaderParam("Authorization") String accessToken,
+                                                     @QueryParam("min_id") String minId,
+                                                     @QueryParam("limit") Integer limit);
+
     @GET
     @Path("/v2/search")
     MastodonDtos.MastodonSearchResult search(@HeaderParam("Authorization") String accessToken,
@@ -0,0 +1,41 @@
+package de.hexix.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+public class HashUtil {
+
+    // Privater Konstruktor, da dies eine Utility-Klasse ist und nicht instanziiert werden soll.
+    private HashUtil() {
+    }
+
+    /**
+     * Berechnet den SHA-256-Hash der übergebenen Bytes.
+     *
+     * @param content Die zu hashenden Daten.
+     * @return Der Hash als Hex-String (64 Zeichen).
+     */
+    public static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 ist in jeder JVM vorhanden
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Berechnet den SHA-256-Hash eines Textes in UTF-8.
+     *
+     * @param content Der zu hashende Text.
+     * @return Der Hash als Hex-String oder null, wenn der Text null ist.
+     */
+    public static String sha256(String content) {
+        if (content == null) {
+            return null;
+        }
+        return sha256(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,40 @@
+package de.hexix.util;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD-Umsetzung von {@link VectorMath} mit der Java Vector API. Wird nur geladen, wenn das Modul verfügbar ist.
+ */
+final class SimdVectorMath implements VectorMath.Ops {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public String toString() {
+        return "SIMD (" + SPECIES.vectorBitSize() + " Bit)";
+    }
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        final int upperBound = SPECIES.loopBound(a.length);
+        int i = 0;
+        for (; i < upperBound; i += SPECIES.length()) {
+            final FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+            final FloatVector vb = FloatVector.fromArray(SPECIES, b, i);
+            acc = va.fma(vb, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float sumOfSquares(float[] a) {
+        return dot(a, a);
+    }
+}
@@ -0,0 +1,143 @@
+package de.hexix.util;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Vektorrechnung für Embeddings (float32, wie in pgvector gespeichert).
+ * <p>
+ * Ist das Modul {@code jdk.incubator.vector} geladen ({@code --add-modules jdk.incubator.vector}), wird mit SIMD gerechnet,
+ * sonst mit einer skalaren Schleife. Beide Varianten liefern bis auf Rundung dieselben Ergebnisse.
+ */
+public final class VectorMath {
+
+    static final Logger LOG = Logger.getLogger(VectorMath.class);
+
+    /**
+     * Gemeinsame Schnittstelle der SIMD- und der skalaren Umsetzung.
+     */
+    interface Ops {
+        float dot(float[] a, float[] b);
+
+        float sumOfSquares(float[] a);
+    }
+
+    private static final Ops OPS = select();
+
+    private VectorMath() {
+    }
+
+    private static Ops select() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            // Per Name geladen, damit nur SimdVectorMath mit dem Modul übersetzt werden muss (siehe pom.xml)
+            try {
+                final Ops simd = Class.forName("de.hexix.util.SimdVectorMath").asSubclass(Ops.class)
+                        .getDeclaredConstructor().newInstance();
+                LOG.infof("Vektorrechnung mit %s", simd);
+                return simd;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                LOG.warnf("SIMD-Vektorrechnung nicht verfügbar, nutze skalare Variante: %s", e.getMessage());
+            }
+        }
+        return new ScalarVectorMath();
+    }
+
+    /**
+     * @return true, wenn mit SIMD gerechnet wird.
+     */
+    public static boolean isSimd() {
+        return !(OPS instanceof ScalarVectorMath);
+    }
+
+    /**
+     * Skalarprodukt zweier Vektoren gleicher Dimension.
+     *
+     * @throws IllegalArgumentException Wenn die Dimensionen abweichen.
+     */
+    public static float dot(float[] a, float[] b) {
+        checkDimension(a, b);
+        return OPS.dot(a, b);
+    }
+
+    /**
+     * Euklidische Länge eines Vektors.
+     */
+    public static float norm(float[] a) {
+        return (float) Math.sqrt(OPS.sumOfSquares(a));
+    }
+
+    /**
+     * Liefert einen neuen Vektor der Länge 1. Ein Nullvektor wird unverändert kopiert.
+     */
+    public static float[] normalize(float[] a) {
+        final float norm = norm(a);
+        final float[] result = new float[a.length];
+        if (norm == 0f) {
+            System.arraycopy(a, 0, result, 0, a.length);
+            return result;
+        }
+        final float inverse = 1f / norm;
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] * inverse;
+        }
+        return result;
+    }
+
+    /**
+     * Kosinus-Ähnlichkeit zweier beliebiger Vektoren.
+     */
+    public static float cosine(float[] a, float[] b) {
+        checkDimension(a, b);
+        final float norms = (float) Math.sqrt((double) OPS.sumOfSquares(a) * OPS.sumOfSquares(b));
+        return norms == 0f ? 0f : OPS.dot(a, b) / norms;
+    }
+
+    /**
+     * Bewertet viele Kandidaten gegen ein Profil. Profil und Kandidaten müssen bereits normalisiert sein,
+     * dann ist die Kosinus-Ähnlichkeit genau das Skalarprodukt.
+     *
+     * @param profile    Der normalisierte Profilvektor.
+     * @param candidates Die normalisierten Kandidaten; Einträge mit anderer Dimension oder null erhalten {@link Float#NaN}.
+     * @return Die Ähnlichkeit pro Kandidat in derselben Reihenfolge.
+     */
+    public static float[] scoreAll(float[] profile, float[][] candidates) {
+        final float[] scores = new float[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            final float[] candidate = candidates[i];
+            scores[i] = candidate == null || candidate.length != profile.length ? Float.NaN : OPS.dot(profile, candidate);
+        }
+        return scores;
+    }
+
+    private static void checkDimension(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Vektoren müssen die gleiche Dimension haben.");
+        }
+    }
+
+    /**
+     * Skalare Umsetzung; mit mehreren Akkumulatoren, damit der JIT die Schleife gut abarbeiten kann.
+     */
+    static final class ScalarVectorMath implements Ops {
+
+        @Override
+        public float dot(float[] a, float[] b) {
+            float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+            int i = 0;
+            for (; i + 3 < a.length; i += 4) {
+                s0 += a[i] * b[i];
+                s1 += a[i + 1] * b[i + 1];
+                s2 += a[i + 2] * b[i + 2];
+                s3 += a[i + 3] * b[i + 3];
+            }
+            for (; i < a.length; i++) {
+                s0 += a[i] * b[i];
+            }
+            return (s0 + s1) + (s2 + s3);
+        }
+
+        @Override
+        public float sumOfSquares(float[] a) {
+            return dot(a, a);
+        }
+    }
+}
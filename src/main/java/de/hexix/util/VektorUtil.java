@@ -2,6 +2,8 @@ package de.hexix.util;
 
 import org.jboss.logging.Logger;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -61,6 +63,220 @@ public class VektorUtil {
     }
 
 
+    /**
+     * Kompaktes Binärformat für Vektoren in {@code bytea}-Spalten als Ersatz für {@link DoubleArrayConverter}.
+     * <p>
+     * Aufbau (little-endian): 1 Byte Kennung {@code 'V'}, 1 Byte Version, 1 Byte {@link Encoding}, 1 Byte reserviert,
+     * 4 Byte Dimension, bei {@link Encoding#INT8} zusätzlich 4 Byte Skalierung (float32), danach die Werte.
+     * Ein 768-dimensionaler Vektor braucht so 3 KB (float32), 1,5 KB (float16) bzw. 780 Byte (int8) statt rund 15 KB Text.
+     */
+    public static final class BinaryVectorCodec {
+
+        private static final byte MAGIC = 'V';
+        private static final byte VERSION = 1;
+        private static final int HEADER_SIZE = 8;
+
+        /**
+         * Speicherformat der einzelnen Werte.
+         */
+        public enum Encoding {
+            /** Verlustfrei gegenüber pgvector, 4 Byte pro Wert. */
+            FLOAT32(0, 4),
+            /** IEEE-754 Half Precision, 2 Byte pro Wert, für normalisierte Embeddings ausreichend genau. */
+            FLOAT16(1, 2),
+            /** Symmetrisch auf -127..127 quantisiert mit einer Skalierung pro Vektor, 1 Byte pro Wert. */
+            INT8(2, 1);
+
+            final byte id;
+            final int bytesPerValue;
+
+            Encoding(int id, int bytesPerValue) {
+                this.id = (byte) id;
+                this.bytesPerValue = bytesPerValue;
+            }
+
+            static Encoding of(byte id) {
+                for (Encoding encoding : values()) {
+                    if (encoding.id == id) {
+                        return encoding;
+                    }
+                }
+                throw new IllegalArgumentException("Unbekanntes Vektor-Encoding: " + id);
+            }
+        }
+
+        private BinaryVectorCodec() {
+        }
+
+        /**
+         * Kodiert einen Vektor im angegebenen Format.
+         *
+         * @param vector   Der Vektor oder null.
+         * @param encoding Das Speicherformat.
+         * @return Die Bytes oder null, wenn der Vektor null ist.
+         */
+        public static byte[] encode(float[] vector, Encoding encoding) {
+            if (vector == null) {
+                return null;
+            }
+            final int extra = encoding == Encoding.INT8 ? 4 : 0;
+            final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + extra + vector.length * encoding.bytesPerValue)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put(MAGIC).put(VERSION).put(encoding.id).put((byte) 0).putInt(vector.length);
+
+            switch (encoding) {
+                case FLOAT32 -> {
+                    for (float v : vector) {
+                        buffer.putFloat(v);
+                    }
+                }
+                case FLOAT16 -> {
+                    for (float v : vector) {
+                        buffer.putShort(Float.floatToFloat16(v));
+                    }
+                }
+                case INT8 -> {
+                    float maxAbs = 0f;
+                    for (float v : vector) {
+                        maxAbs = Math.max(maxAbs, Math.abs(v));
+                    }
+                    final float scale = maxAbs == 0f ? 1f : maxAbs / 127f;
+                    buffer.putFloat(scale);
+                    for (float v : vector) {
+                        buffer.put((byte) Math.round(v / scale));
+                    }
+                }
+            }
+            return buffer.array();
+        }
+
+        /**
+         * Kodiert einen double-Vektor im angegebenen Format (Werte werden auf float32 gerundet).
+         */
+        public static byte[] encode(double[] vector, Encoding encoding) {
+            return encode(toFloatArray(vector), encoding);
+        }
+
+        /**
+         * Dekodiert die Bytes direkt in ein float-Array.
+         *
+         * @param data Die Bytes oder null.
+         * @return Der Vektor oder null, wenn die Bytes null sind.
+         * @throws IllegalArgumentException Wenn Kennung, Version oder Länge nicht passen.
+         */
+        public static float[] decode(byte[] data) {
+            if (data == null) {
+                return null;
+            }
+            final ByteBuffer buffer = header(data);
+            final Encoding encoding = Encoding.of(data[2]);
+            final int dimension = buffer.getInt(4);
+            final int extra = encoding == Encoding.INT8 ? 4 : 0;
+            if (dimension < 0 || data.length != HEADER_SIZE + extra + (long) dimension * encoding.bytesPerValue) {
+                throw new IllegalArgumentException("Vektor-Daten passen nicht zur Dimension " + dimension + " (" + data.length + " Bytes)");
+            }
+
+            final float[] vector = new float[dimension];
+            buffer.position(HEADER_SIZE);
+            switch (encoding) {
+                case FLOAT32 -> buffer.asFloatBuffer().get(vector);
+                case FLOAT16 -> {
+                    for (int i = 0; i < dimension; i++) {
+                        vector[i] = Float.float16ToFloat(buffer.getShort());
+                    }
+                }
+                case INT8 -> {
+                    final float scale = buffer.getFloat();
+                    for (int i = 0; i < dimension; i++) {
+                        vector[i] = buffer.get() * scale;
+                    }
+                }
+            }
+            return vector;
+        }
+
+        /**
+         * Dekodiert die Bytes und prüft die erwartete Dimension.
+         *
+         * @throws IllegalArgumentException Wenn die Dimension abweicht.
+         */
+        public static float[] decode(byte[] data, int expectedDimension) {
+            final float[] vector = decode(data);
+            if (vector != null && vector.length != expectedDimension) {
+                throw new IllegalArgumentException("Vektor hat Dimension " + vector.length + ", erwartet " + expectedDimension);
+            }
+            return vector;
+        }
+
+        /**
+         * Liest nur die Dimension aus dem Header, ohne die Werte zu dekodieren.
+         */
+        public static int dimension(byte[] data) {
+            return header(data).getInt(4);
+        }
+
+        private static ByteBuffer header(byte[] data) {
+            if (data.length < HEADER_SIZE || data[0] != MAGIC) {
+                throw new IllegalArgumentException("Keine Vektor-Daten");
+            }
+            if (data[1] != VERSION) {
+                throw new IllegalArgumentException("Nicht unterstützte Version des Vektor-Formats: " + data[1]);
+            }
+            return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Wandelt einen Vektor aus einer nativen pgvector-Spalte (float32) in ein double-Array um.
+     *
+     * @param vector Der Vektor oder null.
+     * @return Das double-Array oder null.
+     */
+    public static double[] toDoubleArray(float[] vector) {
+        if (vector == null) {
+            return null;
+        }
+        double[] result = new double[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i];
+        }
+        return result;
+    }
+
+    /**
+     * Wandelt ein double-Array für eine native pgvector-Spalte in float32 um.
+     *
+     * @param vector Der Vektor oder null.
+     * @return Das float-Array oder null.
+     */
+    public static float[] toFloatArray(double[] vector) {
+        if (vector == null) {
+            return null;
+        }
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) vector[i];
+        }
+        return result;
+    }
+
+    /**
+     * Formatiert einen Vektor als pgvector-Literal ({@code [0.1,0.2,...]}), um ihn als Parameter an native Abfragen zu übergeben.
+     *
+     * @param vector Der Vektor.
+     * @return Das Literal, in SQL per {@code CAST(? AS vector)} umzuwandeln.
+     */
+    public static String toPgVectorLiteral(double[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 12).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append((float) vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+
     /**
      * Berechnet die korrekte Kosinus-Ähnlichkeit zwischen zwei Vektoren.
      *
@@ -81,8 +297,8 @@ public class VektorUtil {
         // Berechne Skalarprodukt und die Summe der Quadrate für die Normen
         for (int i = 0; i < vectorA.length; i++) {
             dotProduct += vectorA[i] * vectorB[i];
-            magnitude1 += Math.pow(vectorA[i], 2);
-            magnitude2 += Math.pow(vectorB[i], 2);
+            magnitude1 += vectorA[i] * vectorA[i];
+            magnitude2 += vectorB[i] * vectorB[i];
         }
 
         magnitude1 = Math.sqrt(magnitude1);
@@ -157,7 +373,7 @@ public class VektorUtil {
      * @param vector Der zu normalisierende Vektor.
      * @return Der normalisierte Vektor. Gibt den ursprünglichen Vektor zurück, wenn die Länge 0 ist, um Division durch Null zu vermeiden.
      */
-    private static double[] normalize(double[] vector) {
+    public static double[] normalize(double[] vector) {
         double magnitude = 0.0;
         for (double v : vector) {
             magnitude += v * v;
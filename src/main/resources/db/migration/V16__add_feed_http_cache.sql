@@ -0,0 +1,5 @@
+-- Speichert die HTTP-Validatoren (ETag / Last-Modified) und einen SHA-256 des Inhalts pro Feed.
+-- Damit kann der Feed-Abruf bedingte GET-Anfragen senden und das Parsen bei 304 oder gleichem Inhalt überspringen.
+ALTER TABLE monitored_feeds ADD COLUMN IF NOT EXISTS http_etag TEXT DEFAULT NULL;
+ALTER TABLE monitored_feeds ADD COLUMN IF NOT EXISTS http_last_modified TEXT DEFAULT NULL;
+ALTER TABLE monitored_feeds ADD COLUMN IF NOT EXISTS content_hash TEXT DEFAULT NULL;
@@ -0,0 +1,21 @@
+-- Ausgang für Toots aus Feeds: Der Feed-Abruf legt hier nur ab, ein eigener Job postet mit Rücksicht auf Rate-Limits.
+-- Der Idempotency-Key wird bei jedem Versuch mitgeschickt, damit ein Neustart nach erfolgreichem Post nicht doppelt tootet.
+CREATE TABLE IF NOT EXISTS status_outbox (
+    id               BIGSERIAL PRIMARY KEY,
+    feed_id          BIGINT NOT NULL REFERENCES monitored_feeds (id) ON DELETE CASCADE,
+    entry_guid       TEXT NOT NULL,
+    idempotency_key  TEXT NOT NULL UNIQUE,
+    status_text      TEXT NOT NULL,
+    visibility       VARCHAR(20) NOT NULL,
+    language         VARCHAR(10),
+    ai_toot          BOOLEAN,
+    state            VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    attempts         INT NOT NULL DEFAULT 0,
+    next_attempt_at  TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    last_error       TEXT,
+    created_at       TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    UNIQUE (feed_id, entry_guid)
+);
+
+-- Der Job sucht nur offene, fällige Einträge
+CREATE INDEX IF NOT EXISTS idx_status_outbox_pending ON status_outbox (next_attempt_at) WHERE state = 'PENDING';
@@ -0,0 +1,4 @@
+-- Hochwassermarke pro Feed: Veröffentlichungszeitpunkt und GUID des neuesten lückenlos verarbeiteten Eintrags.
+-- Ohne Wert gilt wie bisher der Zeitpunkt, an dem der Feed hinzugefügt wurde.
+ALTER TABLE monitored_feeds ADD COLUMN IF NOT EXISTS high_water_mark_at TIMESTAMPTZ DEFAULT NULL;
+ALTER TABLE monitored_feeds ADD COLUMN IF NOT EXISTS high_water_mark_guid TEXT DEFAULT NULL;
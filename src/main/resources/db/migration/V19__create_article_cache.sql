@@ -0,0 +1,11 @@
+-- Persistenter Cache für extrahierte Artikeltexte, Schlüssel ist die normalisierte URL.
+-- Auch 404 und Fehler werden (kürzer) gespeichert, damit kaputte Links nicht bei jedem Toot erneut geladen werden.
+CREATE TABLE IF NOT EXISTS article_cache (
+    url_key     TEXT PRIMARY KEY,
+    content     TEXT,
+    status      VARCHAR(20) NOT NULL,
+    fetched_at  TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    expires_at  TIMESTAMPTZ NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_article_cache_expires_at ON article_cache (expires_at);
@@ -0,0 +1,10 @@
+-- Zusätzliche oder geänderte Artikel-Extraktoren pro Domain, ohne neues Deployment.
+-- Einträge gehen den im Code eingebauten Extraktoren mit gleichem host_suffix vor.
+CREATE TABLE IF NOT EXISTS site_extractors (
+    id            BIGSERIAL PRIMARY KEY,
+    host_suffix   TEXT NOT NULL UNIQUE,
+    css_query     TEXT NOT NULL,
+    append_query  TEXT,
+    is_active     BOOLEAN NOT NULL DEFAULT TRUE,
+    created_at    TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
@@ -0,0 +1,5 @@
+-- Native pgvector-Spalten für die lokalen Embeddings statt kommagetrennter Texte in text_contents.
+-- Ohne feste Dimension, da das lokale Modell (local.model) konfigurierbar ist.
+-- Bestehende Zeilen überträgt EmbeddingVectorBackfill in Batches, damit die Migration selbst kurz bleibt.
+ALTER TABLE embeddings ADD COLUMN IF NOT EXISTS local_embedding vector DEFAULT NULL;
+ALTER TABLE mastodon_posts ADD COLUMN IF NOT EXISTS embedding vector DEFAULT NULL;
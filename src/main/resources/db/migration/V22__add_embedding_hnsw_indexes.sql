@@ -0,0 +1,15 @@
+-- HNSW-Indizes für die Kosinus-Suche auf mastodon_posts.embedding.
+-- Die Spalte hat keine feste Dimension, daher ein partieller Ausdrucksindex pro unterstütztem Modell
+-- (768: granite-embedding, 1024: bge-m3). Abfragen müssen denselben Ausdruck verwenden, siehe PublicMastodonPostRepository.
+CREATE INDEX IF NOT EXISTS mastodon_posts_embedding_768_hnsw_idx
+    ON mastodon_posts USING hnsw ((embedding::vector(768)) vector_cosine_ops)
+    WHERE vector_dims(embedding) = 768;
+
+CREATE INDEX IF NOT EXISTS mastodon_posts_embedding_1024_hnsw_idx
+    ON mastodon_posts USING hnsw ((embedding::vector(1024)) vector_cosine_ops)
+    WHERE vector_dims(embedding) = 1024;
+
+-- Noch nicht bewertete Posts, damit die Bewertung in der Datenbank nur die neuen Zeilen liest
+CREATE INDEX IF NOT EXISTS mastodon_posts_unscored_idx
+    ON mastodon_posts (id)
+    WHERE cosinus_distance IS NULL AND embedding IS NOT NULL;
@@ -0,0 +1,3 @@
+-- Binärformat (VektorUtil.BinaryVectorCodec) für die externen Embeddings statt kommagetrennter Texte in text_contents.
+-- Bestehende Zeilen werden beim ersten Lesen in der Anwendung übertragen.
+ALTER TABLE embeddings ADD COLUMN IF NOT EXISTS embedding_vector BYTEA DEFAULT NULL;
@@ -0,0 +1,9 @@
+-- Gespeicherte Stände des Profilvektors (ProfileVectorService), der neueste wird beim Start geladen.
+CREATE TABLE IF NOT EXISTS profile_vector_snapshots (
+    id             BIGSERIAL PRIMARY KEY,
+    created_at     TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    contributions  INTEGER NOT NULL,
+    vector         BYTEA NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_profile_vector_snapshots_created_at ON profile_vector_snapshots (created_at);
@@ -0,0 +1,11 @@
+-- Persistente Stufe des EmbeddingCache. Schlüssel ist Modell + SHA-256 des normalisierten Textabschnitts,
+-- der Vektor liegt im Format von VektorUtil.BinaryVectorCodec (float32).
+CREATE TABLE IF NOT EXISTS embedding_cache (
+    cache_key   TEXT PRIMARY KEY,
+    model       TEXT NOT NULL,
+    vector      BYTEA NOT NULL,
+    created_at  TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_embedding_cache_model ON embedding_cache (model);
+CREATE INDEX IF NOT EXISTS idx_embedding_cache_created_at ON embedding_cache (created_at);
@@ -0,0 +1,60 @@
+-- Der Stream speichert Posts gesammelt mit ON CONFLICT (mastodon_id) DO NOTHING, dafür muss mastodon_id eindeutig sein.
+-- Neue Datenbanken haben die UNIQUE-Bedingung aus V1; ältere, per Baseline übernommene evtl. nicht und ggf. Duplikate.
+DO $$
+BEGIN
+    IF NOT EXISTS (
+        SELECT 1
+        FROM pg_index i
+        JOIN pg_attribute a ON a.attrelid = i.indrelid AND a.attnum = ANY (i.indkey)
+        WHERE i.indrelid = 'mastodon_posts'::regclass
+          AND i.indisunique
+          AND i.indnatts = 1
+          AND a.attname = 'mastodon_id'
+    ) THEN
+        -- Von doppelten Posts bleibt der älteste erhalten, die übrigen werden in ihn zusammengeführt
+        CREATE TEMP TABLE mastodon_posts_duplicates ON COMMIT DROP AS
+        SELECT p.id, keep.id AS keep_id, p.post_text_id, p.url_text_id, p.embedding_id
+        FROM mastodon_posts p
+        JOIN (SELECT mastodon_id, min(id) AS id FROM mastodon_posts GROUP BY mastodon_id HAVING count(*) > 1) keep
+          ON keep.mastodon_id = p.mastodon_id AND p.id > keep.id;
+
+        -- Eine negative Bewertung darf nicht verloren gehen; fehlende Texte und Vektoren kommen vom jüngsten Duplikat
+        UPDATE mastodon_posts k
+        SET negative_weight = GREATEST(k.negative_weight, m.negative_weight),
+            viki_commented  = COALESCE(k.viki_commented, FALSE) OR m.viki_commented,
+            post_text_id    = COALESCE(k.post_text_id, m.post_text_id),
+            url_text_id     = COALESCE(k.url_text_id, m.url_text_id),
+            embedding_id    = COALESCE(k.embedding_id, m.embedding_id),
+            embedding       = COALESCE(k.embedding, m.embedding)
+        FROM (
+            SELECT d.keep_id,
+                   max(p.negative_weight) AS negative_weight,
+                   COALESCE(bool_or(p.viki_commented), FALSE) AS viki_commented,
+                   (array_agg(p.post_text_id ORDER BY p.id DESC) FILTER (WHERE p.post_text_id IS NOT NULL))[1] AS post_text_id,
+                   (array_agg(p.url_text_id ORDER BY p.id DESC) FILTER (WHERE p.url_text_id IS NOT NULL))[1] AS url_text_id,
+                   (array_agg(p.embedding_id ORDER BY p.id DESC) FILTER (WHERE p.embedding_id IS NOT NULL))[1] AS embedding_id,
+                   (array_agg(p.embedding ORDER BY p.id DESC) FILTER (WHERE p.embedding IS NOT NULL))[1] AS embedding
+            FROM mastodon_posts_duplicates d
+            JOIN mastodon_posts p ON p.id = d.id
+            GROUP BY d.keep_id
+        ) m
+        WHERE k.id = m.keep_id;
+
+        DELETE FROM mastodon_posts p
+        USING mastodon_posts_duplicates d
+        WHERE p.id = d.id;
+
+        -- Texte der gelöschten Duplikate, die nicht in den erhaltenen Post übernommen wurden
+        DELETE FROM text_contents t
+        WHERE t.id IN (
+            SELECT post_text_id FROM mastodon_posts_duplicates
+            UNION SELECT url_text_id FROM mastodon_posts_duplicates
+            UNION SELECT embedding_id FROM mastodon_posts_duplicates
+        )
+          AND NOT EXISTS (SELECT 1 FROM mastodon_posts p WHERE t.id IN (p.post_text_id, p.url_text_id, p.embedding_id))
+          AND NOT EXISTS (SELECT 1 FROM embeddings e WHERE t.id IN (e.text_id, e.embedding_vector_string_id, e.local_embedding_vector_string_id));
+
+        CREATE UNIQUE INDEX mastodon_posts_mastodon_id_uidx ON mastodon_posts (mastodon_id);
+    END IF;
+END
+$$;
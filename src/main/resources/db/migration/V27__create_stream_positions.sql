@@ -0,0 +1,7 @@
+-- Zuletzt verarbeitete Status-ID pro Mastodon-Stream, damit nach einem Verbindungsabbruch oder Neustart die Lücke
+-- über die REST-API nachgeladen werden kann (MastodonStreamProcessor).
+CREATE TABLE IF NOT EXISTS stream_positions (
+    stream          VARCHAR(20) PRIMARY KEY,
+    last_status_id  TEXT NOT NULL,
+    updated_at      TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
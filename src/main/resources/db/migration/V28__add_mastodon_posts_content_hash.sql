@@ -0,0 +1,3 @@
+-- SHA-256 des HTML-Inhalts eines Posts aus dem öffentlichen Stream. Bei einer Bearbeitung (status.update) werden Text und Vektor
+-- nur neu berechnet, wenn sich der Hash geändert hat. Ältere Posts haben keinen Hash, ihre erste Bearbeitung gilt als Änderung.
+ALTER TABLE mastodon_posts ADD COLUMN IF NOT EXISTS content_hash TEXT;
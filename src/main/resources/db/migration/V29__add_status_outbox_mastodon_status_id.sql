@@ -0,0 +1,3 @@
+-- Die Status-ID wird sofort nach dem erfolgreichen Post gespeichert (state = 'SENT'). Schlägt danach das Anlegen des
+-- posted_entries-Eintrags fehl, wird er beim nächsten Lauf nachgeholt, statt den Toot nach Ablauf des Idempotency-Fensters erneut zu senden.
+ALTER TABLE status_outbox ADD COLUMN IF NOT EXISTS mastodon_status_id TEXT;
@@ -0,0 +1,3 @@
+-- Zählt die Bearbeitungen eines Posts. Vektor und Bewertung werden nur gespeichert, wenn sie zum aktuellen Stand gehören,
+-- damit eine noch laufende Berechnung für den alten Inhalt die Neuberechnung nach einer Bearbeitung nicht überschreibt.
+ALTER TABLE mastodon_posts ADD COLUMN IF NOT EXISTS content_version INTEGER NOT NULL DEFAULT 0;
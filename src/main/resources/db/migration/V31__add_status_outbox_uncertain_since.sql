@@ -0,0 +1,3 @@
+-- Zeitpunkt des ersten Fehlschlags, nach dem unklar ist, ob Mastodon den Toot angenommen hat (Netzwerkfehler, 5xx, 408).
+-- Mastodon kennt einen Idempotency-Key nur etwa eine Stunde; danach darf derselbe Toot nicht mehr automatisch gesendet werden.
+ALTER TABLE status_outbox ADD COLUMN IF NOT EXISTS uncertain_since TIMESTAMPTZ;
@@ -0,0 +1,168 @@
+package de.hexix;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArticleCacheTest {
+
+    private static final Instant START = Instant.parse("2025-01-01T12:00:00Z");
+
+    private final Map<String, ArticleCache.CachedArticle> table = new HashMap<>();
+    private final Deque<Object> results = new ArrayDeque<>();
+    private final List<String> fetched = new ArrayList<>();
+
+    private ArticleCache cache;
+
+    @BeforeEach
+    void setUp() {
+        // Tabelle und Abruf im Speicher, damit die Logik ohne Datenbank und Netz geprüft werden kann
+        cache = new ArticleCache() {
+            @Override
+            CachedArticle findPersisted(final String key, final Instant now) {
+                final CachedArticle article = table.get(key);
+                return article == null || !article.expiresAt().isAfter(now) ? null : article;
+            }
+
+            @Override
+            void persist(final String key, final JsoupParser.ArticleResult result, final Instant expiresAt) {
+                table.put(key, new CachedArticle(result.text(), expiresAt));
+            }
+        };
+        cache.maxEntries = 10;
+        cache.ttl = Duration.ofDays(7);
+        cache.notFoundTtl = Duration.ofDays(1);
+        cache.errorTtl = Duration.ofMinutes(30);
+        cache.articleFetcher = new ArticleFetcher() {
+            @Override
+            public JsoupParser.ArticleResult fetch(final String url) {
+                fetched.add(url);
+                final Object result = results.pop();
+                if (result instanceof RuntimeException e) {
+                    throw e;
+                }
+                return (JsoupParser.ArticleResult) result;
+            }
+        };
+        at(START);
+    }
+
+    private void at(final Instant instant) {
+        cache.clock = Clock.fixed(instant, ZoneOffset.UTC);
+    }
+
+    @Test
+    void testHitUsesNormalizedUrlAndFetchesOnce() {
+        results.push(new JsoupParser.ArticleResult("Text", JsoupParser.ArticleStatus.OK));
+
+        assertEquals("Text", cache.getArticle("https://example.org/a?utm_source=x"));
+        assertEquals("Text", cache.getArticle("https://EXAMPLE.org/a#kommentare"));
+
+        assertEquals(List.of("https://example.org/a?utm_source=x"), fetched);
+    }
+
+    @Test
+    void testMissFallsBackToPersistedTier() {
+        table.put("https://example.org/a", new ArticleCache.CachedArticle("Aus der Tabelle", START.plus(Duration.ofHours(1))));
+
+        assertEquals("Aus der Tabelle", cache.getArticle("https://example.org/a"));
+        assertTrue(fetched.isEmpty());
+    }
+
+    @Test
+    void testExpiredEntryIsFetchedAgain() {
+        results.push(new JsoupParser.ArticleResult("Alt", JsoupParser.ArticleStatus.OK));
+        assertEquals("Alt", cache.getArticle("https://example.org/a"));
+
+        at(START.plus(Duration.ofDays(7)).plusSeconds(1));
+        results.push(new JsoupParser.ArticleResult("Neu", JsoupParser.ArticleStatus.OK));
+        assertEquals("Neu", cache.getArticle("https://example.org/a"));
+
+        assertEquals(2, fetched.size());
+    }
+
+    @Test
+    void testNotFoundAndErrorAreCachedShorter() {
+        results.push(new JsoupParser.ArticleResult(null, JsoupParser.ArticleStatus.ERROR));
+        assertNull(cache.getArticle("https://example.org/fehler"));
+        at(START.plus(Duration.ofMinutes(29)));
+        assertNull(cache.getArticle("https://example.org/fehler"));
+        assertEquals(1, fetched.size());
+
+        at(START.plus(Duration.ofMinutes(31)));
+        results.push(new JsoupParser.ArticleResult("Wieder da", JsoupParser.ArticleStatus.OK));
+        assertEquals("Wieder da", cache.getArticle("https://example.org/fehler"));
+
+        results.push(new JsoupParser.ArticleResult(null, JsoupParser.ArticleStatus.NOT_FOUND));
+        assertNull(cache.getArticle("https://example.org/404"));
+        assertEquals(START.plus(Duration.ofMinutes(31)).plus(Duration.ofDays(1)), table.get("https://example.org/404").expiresAt());
+    }
+
+    @Test
+    void testFailedFetchIsNotCached() {
+        results.push(new IllegalStateException("Verbindung abgebrochen"));
+        assertThrows(IllegalStateException.class, () -> cache.getArticle("https://example.org/a"));
+        assertTrue(table.isEmpty());
+
+        results.push(new JsoupParser.ArticleResult("Text", JsoupParser.ArticleStatus.OK));
+        assertEquals("Text", cache.getArticle("https://example.org/a"));
+        assertEquals(2, fetched.size());
+    }
+
+    @Test
+    void testInterruptedFetchIsNotCached() {
+        cache.articleFetcher = new ArticleFetcher() {
+            @Override
+            public JsoupParser.ArticleResult fetch(final String url) {
+                // So endet ein Abruf, dessen Frist abgelaufen ist: der Socket wurde geschlossen, der Thread ist unterbrochen
+                Thread.currentThread().interrupt();
+                return new JsoupParser.ArticleResult(null, JsoupParser.ArticleStatus.ERROR);
+            }
+        };
+        try {
+            assertThrows(CancellationException.class, () -> cache.getArticle("https://example.org/langsam"));
+        } finally {
+            Thread.interrupted();
+        }
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    void testBusyDomainIsNotCached() {
+        results.push(new JsoupParser.ArticleResult(null, JsoupParser.ArticleStatus.BUSY));
+        assertNull(cache.getArticle("https://example.org/a"));
+        assertTrue(table.isEmpty());
+
+        // Kein Fehler-Eintrag für errorTtl: der nächste Aufruf lädt die Seite
+        results.push(new JsoupParser.ArticleResult("Text", JsoupParser.ArticleStatus.OK));
+        assertEquals("Text", cache.getArticle("https://example.org/a"));
+        assertEquals(2, fetched.size());
+    }
+
+    @Test
+    void testNormalizeUrlRemovesTrackingAndFragment() {
+        assertEquals("https://www.ndr.de/nachrichten/artikel.html",
+                ArticleCache.normalizeUrl("https://WWW.NDR.de:443/nachrichten/artikel.html?at_medium=mastodon&at_campaign=NDR.de#kommentare"));
+        assertEquals("https://www.t-online.de/id_100831642/artikel.html?seite=2",
+                ArticleCache.normalizeUrl("https://www.t-online.de/id_100831642/artikel.html?utm_source=dlvr.it&seite=2"));
+    }
+
+    @Test
+    void testNormalizeUrlKeepsPortAndPath() {
+        assertEquals("http://example.com:8080/", ArticleCache.normalizeUrl("HTTP://example.com:8080"));
+        assertEquals("kein url", ArticleCache.normalizeUrl(" kein url "));
+    }
+}
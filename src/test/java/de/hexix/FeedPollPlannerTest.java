@@ -0,0 +1,93 @@
+package de.hexix;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FeedPollPlannerTest {
+
+    FeedPollPlanner planner;
+    Instant now;
+
+    @BeforeEach
+    void setUp() {
+        planner = new FeedPollPlanner();
+        planner.minInterval = Duration.ofMinutes(2);
+        planner.maxInterval = Duration.ofHours(6);
+        planner.defaultInterval = Duration.ofMinutes(10);
+        now = Instant.parse("2025-01-01T12:00:00Z");
+    }
+
+    @Test
+    void testNewFeedIsDueImmediately() {
+        assertEquals(List.of(1L, 2L), planner.takeDue(List.of(1L, 2L), now).stream().sorted().toList());
+        // Vorläufig neu eingeplant, also nicht sofort wieder fällig
+        assertTrue(planner.takeDue(List.of(1L, 2L), now.plusSeconds(1)).isEmpty());
+    }
+
+    @Test
+    void testLearnsIntervalFromEntryDates() {
+        planner.takeDue(List.of(1L), now);
+        final List<Instant> hourly = List.of(now.minusSeconds(3600), now.minusSeconds(7200), now.minusSeconds(10800));
+
+        final Instant next = planner.record(1L, false, 1, hourly, now);
+
+        // Stündlich veröffentlichender Feed wird halbstündlich abgefragt
+        assertEquals(now.plus(Duration.ofMinutes(30)), next);
+        assertTrue(planner.takeDue(List.of(1L), now.plus(Duration.ofMinutes(29))).isEmpty());
+        assertEquals(List.of(1L), planner.takeDue(List.of(1L), now.plus(Duration.ofMinutes(30))));
+    }
+
+    @Test
+    void testBacksOffIdleAndFailingFeeds() {
+        planner.takeDue(List.of(1L), now);
+
+        assertEquals(now.plus(Duration.ofMinutes(20)), planner.record(1L, false, 0, List.of(), now));
+        assertEquals(now.plus(Duration.ofMinutes(40)), planner.record(1L, true, 0, List.of(), now));
+        for (int i = 0; i < 20; i++) {
+            planner.record(1L, true, 0, List.of(), now);
+        }
+        assertEquals(now.plus(Duration.ofHours(6)), planner.record(1L, true, 0, List.of(), now));
+
+        // Ein neuer Eintrag setzt den Backoff zurück
+        assertEquals(now.plus(Duration.ofMinutes(10)), planner.record(1L, false, 1, List.of(), now));
+    }
+
+    @Test
+    void testDeferredFeedWaitsForGeminiInsteadOfBackingOff() {
+        planner.takeDue(List.of(1L), now);
+        planner.record(1L, false, 0, List.of(), now);
+        planner.record(1L, false, 0, List.of(), now);
+
+        // Zum nächsten freien Platz, frühestens nach minInterval, und ohne weiteren Leerlauf
+        assertEquals(now.plus(Duration.ofMinutes(7)), planner.recordDeferred(1L, List.of(), Duration.ofMinutes(7), now));
+        assertEquals(now.plus(Duration.ofMinutes(2)), planner.recordDeferred(1L, List.of(), Duration.ZERO, now));
+        assertEquals(now.plus(Duration.ofMinutes(20)), planner.record(1L, false, 0, List.of(), now));
+    }
+
+    @Test
+    void testBurstTightensPolling() {
+        planner.takeDue(List.of(1L), now);
+        assertEquals(now.plus(Duration.ofMinutes(2)), planner.record(1L, false, 3, List.of(), now));
+    }
+
+    @Test
+    void testInactiveFeedIsDropped() {
+        planner.takeDue(List.of(1L, 2L), now);
+        planner.record(1L, false, 1, List.of(), now);
+        planner.record(2L, false, 1, List.of(), now);
+
+        assertEquals(List.of(1L), planner.takeDue(List.of(1L), now.plus(Duration.ofHours(1))));
+    }
+
+    @Test
+    void testMedianGap() {
+        assertNull(FeedPollPlanner.medianGap(List.of(now)));
+        assertEquals(Duration.ofMinutes(10), FeedPollPlanner.medianGap(List.of(now, now.minusSeconds(600), now.minusSeconds(1200), now.minusSeconds(86400))));
+    }
+}
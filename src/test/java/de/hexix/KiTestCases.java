@@ -3,10 +3,10 @@ package de.hexix;
 import com.google.genai.types.ContentEmbedding;
 import de.hexix.ai.GenerateEmbeddingTextInput;
 import de.hexix.ai.OllamaRestClient;
+import de.hexix.ai.TextChunker;
 import de.hexix.ai.dto.EmbeddingRequest;
 import de.hexix.ai.dto.EmbeddingResponse;
 import de.hexix.mastodon.Embedding;
-import de.hexix.mastodon.StarredMastodonPosts;
 import de.hexix.util.VektorUtil;
 import io.quarkus.test.junit.QuarkusTest;
 import jakarta.inject.Inject;
@@ -30,6 +30,9 @@ public class KiTestCases {
     @Inject
     GenerateEmbeddingTextInput generateEmbeddingTextInput;
 
+    @Inject
+    TextChunker textChunker;
+
     String frage2 = """
             Herzlich Willkommen auf den Social-Media-Kanälen der Feuerwehr Stuttgart! Wir starten heute auf unseren fünf Social-Media-Kanälen und freuen uns auf den Austausch mit euch \uD83E\uDD73 \uD83D\uDEA8 Einsatzkommunikation und Einblicke in unseren Alltag
             """;
@@ -238,7 +241,7 @@ Hier ist eine typische Einteilung, die Sie als Ausgangspunkt verwenden können:
             for (Embedding embedding : embeddings) {
 
                 final String text = embedding.getText().getText();
-                final List<String> texte = StarredMastodonPosts.splitByLength(text, "bge-m3:567m".equalsIgnoreCase(model) ? 8000 : 500);
+                final List<String> texte = textChunker.chunk(model, text);
 
                 for (String values : texte) {
                     final EmbeddingResponse response1 = ollamaRestClient.generateEmbeddings(new EmbeddingRequest(model, List.of(values), false));
@@ -0,0 +1,210 @@
+package de.hexix;
+
+import de.hexix.ai.dto.EmbeddingRequest;
+import de.hexix.mastodon.ProfileContributionChanged;
+import de.hexix.mastodon.ProfileVectorService;
+import de.hexix.mastodon.PublicMastodonPostEntity;
+import de.hexix.mastodon.PublicMastodonPostRepository;
+import de.hexix.mastodon.api.MastodonDtos;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PublicPostPipelineTest {
+
+    private static final String ID = "1";
+
+    private final PublicMastodonPostEntity post = new PublicMastodonPostEntity();
+
+    // Gespeicherte Vektoren und gesetzte Bewertungen als {Inhaltsstand, Wert}
+    private final List<double[]> savedVectors = new CopyOnWriteArrayList<>();
+    private final List<double[]> claims = new CopyOnWriteArrayList<>();
+
+    // Die erste Vektorberechnung hält an, bis der Test sie freigibt
+    private final CountDownLatch vectorStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseVector = new CountDownLatch(1);
+
+    // Favoriten ohne lokales Embedding, Anzahl der Abfragen und die Uhr der Pipeline
+    private final AtomicBoolean favouritesPending = new AtomicBoolean();
+    private final AtomicInteger pendingQueries = new AtomicInteger();
+    private final AtomicLong nanos = new AtomicLong();
+
+    private PublicPostPipeline pipeline;
+    private PublicMastodonPostRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        post.setMastodonId(ID);
+        repository = new PublicMastodonPostRepository() {
+            @Override
+            public Optional<PublicMastodonPostEntity> findByMastodonId(final String id) {
+                return Optional.of(post);
+            }
+
+            @Override
+            public synchronized boolean replaceContent(final String mastodonId, final String contentHash, final String text) {
+                post.setContentHash(contentHash);
+                post.setContentVersion(post.getContentVersion() + 1);
+                post.setCosDistance(null);
+                return true;
+            }
+
+            @Override
+            public synchronized boolean lockContentVersion(final String mastodonId, final int contentVersion) {
+                return post.getContentVersion() == contentVersion;
+            }
+
+            @Override
+            public synchronized boolean claimCosDistance(final String mastodonId, final int contentVersion, final double cosDistance) {
+                if (post.getContentVersion() != contentVersion || post.getCosDistance() != null) {
+                    return false;
+                }
+                post.setCosDistance(cosDistance);
+                claims.add(new double[]{contentVersion, cosDistance});
+                return true;
+            }
+        };
+
+        pipeline = new PublicPostPipeline() {
+            @Override
+            boolean queryLocalEmbeddingsPending() {
+                pendingQueries.incrementAndGet();
+                return favouritesPending.get();
+            }
+        };
+        pipeline.clock = nanos::get;
+        pipeline.pendingCheckInterval = Duration.ofSeconds(10);
+        pipeline.enabled = true;
+        pipeline.queueSize = 10;
+        pipeline.offerTimeout = Duration.ofSeconds(1);
+        pipeline.minCosDistance = 0.825;
+        pipeline.publicMastodonPostRepository = repository;
+        pipeline.articleExtractionService = new ArticleExtractionService() {
+            @Override
+            public Map<String, String> getArticles(final Collection<String> urls) {
+                return Map.of();
+            }
+        };
+        pipeline.profileVectorService = new ProfileVectorService() {
+            @Override
+            public double score(final double[] vector) {
+                return 0.9;
+            }
+        };
+        pipeline.feedToTootScheduler = new FeedToTootScheduler() {
+            @Override
+            boolean readStatusAndLinkText(final PublicMastodonPostEntity p, final String statusContent, final List<String> urls,
+                                          final Map<String, String> articles) {
+                return true;
+            }
+
+            @Override
+            List<EmbeddingRequest> createEmbeddingRequests(final PublicMastodonPostEntity p) {
+                return List.of(new EmbeddingRequest("granite-embedding:278m", List.of(String.valueOf(p.getContentVersion())), true));
+            }
+
+            @Override
+            double[] calcVector(final List<EmbeddingRequest> embeddingRequests) {
+                if (vectorStarted.getCount() > 0) {
+                    vectorStarted.countDown();
+                    try {
+                        releaseVector.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return new double[]{Double.parseDouble(embeddingRequests.getFirst().input().getFirst())};
+            }
+
+            @Override
+            boolean savePublicVector(final PostVersion version, final double[] profileVector) {
+                if (!repository.lockContentVersion(version.mastodonId(), version.contentVersion())) {
+                    return false;
+                }
+                savedVectors.add(new double[]{version.contentVersion(), profileVector[0]});
+                return true;
+            }
+
+            @Override
+            boolean boost(final String mastodonId) {
+                return true;
+            }
+        };
+        pipeline.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void testEditDuringVectorStageDiscardsOldResult() throws InterruptedException {
+        assertTrue(pipeline.submit(status("<p>alt</p>")));
+        assertTrue(vectorStarted.await(5, TimeUnit.SECONDS));
+
+        // Bearbeitung wie in MastodonStreamProcessor, während der Vektor für den alten Inhalt noch berechnet wird
+        assertTrue(repository.replaceContent(ID, "neu", "neu"));
+        pipeline.cancel(ID);
+        assertTrue(pipeline.submit(status("<p>neu</p>")));
+        releaseVector.countDown();
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((claims.isEmpty() || pipeline.isInFlight(ID)) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Nur der Vektor und die Bewertung des neuen Inhalts wurden gespeichert
+        assertEquals(1, savedVectors.size());
+        assertArrayEquals(new double[]{1, 1}, savedVectors.getFirst());
+        assertEquals(1, claims.size());
+        assertArrayEquals(new double[]{1, 0.9}, claims.getFirst());
+    }
+
+    @Test
+    void testPendingFavouritesAreCheckedOncePerInterval() {
+        favouritesPending.set(true);
+        assertTrue(pipeline.localEmbeddingsPending());
+        assertTrue(pipeline.localEmbeddingsPending());
+        assertEquals(1, pendingQueries.get());
+
+        // Nach Ablauf des Intervalls wird neu gefragt
+        favouritesPending.set(false);
+        nanos.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertFalse(pipeline.localEmbeddingsPending());
+        assertEquals(2, pendingQueries.get());
+    }
+
+    @Test
+    void testNewFavouriteEmbeddingRefreshesPendingState() {
+        favouritesPending.set(true);
+        assertTrue(pipeline.localEmbeddingsPending());
+
+        // Ein negativ bewerteter Post ändert nichts an den Favoriten
+        favouritesPending.set(false);
+        pipeline.onContributionChanged(new ProfileContributionChanged("post:1", new double[]{1}, -1.0));
+        assertTrue(pipeline.localEmbeddingsPending());
+
+        pipeline.onContributionChanged(new ProfileContributionChanged("embedding:1", new double[]{1}, 1.0));
+        assertFalse(pipeline.localEmbeddingsPending());
+        assertEquals(2, pendingQueries.get());
+    }
+
+    private static MastodonDtos.StreamStatus status(final String content) {
+        return new MastodonDtos.StreamStatus(ID, null, content, "de", "a@example.org", "a", false, false);
+    }
+}
@@ -0,0 +1,42 @@
+package de.hexix;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SiteExtractorRegistryTest {
+
+    @AfterEach
+    void tearDown() {
+        SiteExtractorRegistry.replaceConfigured(List.of());
+    }
+
+    @Test
+    void testFindByHostSuffix() throws Exception {
+        assertEquals("heise.de", SiteExtractorRegistry.find("https://www.heise.de/news/artikel.html").getHostSuffix());
+        assertEquals("heise.de", SiteExtractorRegistry.find("https://peertube.heise.de/w/abc").getHostSuffix());
+        assertEquals("n-tv.de", SiteExtractorRegistry.find("https://www.n-tv.de/politik/artikel.html").getHostSuffix());
+        assertNull(SiteExtractorRegistry.find("https://www.swr3.de/aktuell/artikel.html"));
+        assertNull(SiteExtractorRegistry.find("kein url"));
+    }
+
+    @Test
+    void testHeisePrintView() throws Exception {
+        final SiteExtractor heise = SiteExtractorRegistry.find("https://www.heise.de/news/artikel.html?seite=2");
+        assertEquals("https://www.heise.de/news/artikel.html?seite=2&view=print", heise.transformUrl("https://www.heise.de/news/artikel.html?seite=2"));
+    }
+
+    @Test
+    void testConfiguredExtractorOverridesBuiltIn() {
+        SiteExtractorRegistry.replaceConfigured(List.of(new SiteExtractor("swr.de", "main p", null), new SiteExtractor("swr3.de", "article p", null)));
+
+        assertEquals("main p", SiteExtractorRegistry.find("https://www.swr.de/artikel.html").getCssQuery());
+        assertEquals("article p", SiteExtractorRegistry.find("https://www.swr3.de/artikel.html").getCssQuery());
+
+        SiteExtractorRegistry.replaceConfigured(List.of());
+        assertNotEquals("main p", SiteExtractorRegistry.find("https://www.swr.de/artikel.html").getCssQuery());
+    }
+}
@@ -0,0 +1,46 @@
+package de.hexix;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusOutboxServiceTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T12:00:00Z");
+
+    private StatusOutboxService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new StatusOutboxService();
+        service.retryDelay = Duration.ofSeconds(30);
+        service.idempotencyWindow = Duration.ofMinutes(50);
+    }
+
+    @Test
+    void testBackoffWithoutUncertainFailure() {
+        assertEquals(NOW.plusSeconds(30), service.nextAttemptAt(1, null, NOW));
+        assertEquals(NOW.plus(Duration.ofMinutes(64)), service.nextAttemptAt(8, null, NOW));
+    }
+
+    @Test
+    void testUncertainRetriesStayWithinIdempotencyWindow() {
+        final Instant uncertainSince = NOW.minus(Duration.ofMinutes(30));
+
+        // 8m Backoff passt noch ins Fenster
+        assertEquals(NOW.plus(Duration.ofMinutes(8)), service.nextAttemptAt(5, uncertainSince, NOW));
+        // 32m Backoff würde das Fenster verlassen: letzter Versuch kurz vor dessen Ende
+        assertEquals(uncertainSince.plus(Duration.ofMinutes(50)).minusSeconds(30), service.nextAttemptAt(7, uncertainSince, NOW));
+    }
+
+    @Test
+    void testUncertainRetryGivesUpAfterWindow() {
+        final Instant uncertainSince = NOW.minus(Duration.ofMinutes(50));
+
+        assertNull(service.nextAttemptAt(2, uncertainSince, NOW));
+    }
+}
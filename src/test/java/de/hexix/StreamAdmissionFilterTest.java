@@ -0,0 +1,84 @@
+package de.hexix;
+
+import de.hexix.mastodon.api.MastodonDtos;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamAdmissionFilterTest {
+
+    private StreamAdmissionFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new StreamAdmissionFilter();
+        filter.enabled = true;
+        filter.languages = Optional.of(Set.of("de", "en"));
+        filter.allowUnknownLanguage = true;
+        filter.allowAccounts = Optional.of(Set.of("tagesschau@ard.social"));
+        filter.denyAccounts = Optional.of(Set.of("heiseonlineenglish@social.heise.de"));
+        filter.minTextLength = 20;
+        filter.rejectBots = true;
+        filter.rejectReblogs = true;
+        filter.duplicateUrlCacheSize = 100;
+    }
+
+    private static MastodonDtos.StreamStatus status(final String acct, final boolean bot, final String language, final String content) {
+        return new MastodonDtos.StreamStatus("1", null, content, language, acct, acct, bot, false);
+    }
+
+    @Test
+    void testRules() {
+        final String longText = "<p>Ein ausreichend langer Text über Windkraft im Norden</p>";
+        assertEquals(StreamAdmissionFilter.Rule.ADMITTED, filter.check(status("user@example.org", false, "de", longText)));
+        assertEquals(StreamAdmissionFilter.Rule.DENIED_ACCOUNT, filter.check(status("heiseonlineenglish@social.heise.de", false, "en", longText)));
+        assertEquals(StreamAdmissionFilter.Rule.BOT, filter.check(status("bot@example.org", true, "de", longText)));
+        assertEquals(StreamAdmissionFilter.Rule.LANGUAGE, filter.check(status("user@example.org", false, "fr", longText)));
+        assertEquals(StreamAdmissionFilter.Rule.TOO_SHORT, filter.check(status("user@example.org", false, "de", "<p>Kurz</p>")));
+        assertEquals(StreamAdmissionFilter.Rule.ALLOWED_ACCOUNT, filter.check(status("tagesschau@ard.social", true, "fr", "<p>x</p>")));
+
+        assertEquals(1L, filter.stats().get("BOT"));
+        assertEquals(1L, filter.stats().get("ADMITTED"));
+    }
+
+    @Test
+    void testDuplicateUrlIgnoresTrackingAndMentions() {
+        final String first = "<p>Kurz <a href=\"https://example.org/artikel?utm_source=masto\">Link</a></p>";
+        final String second = "<p>Nochmal <a class=\"mention\" href=\"https://mastodon.social/@a\">@a</a> <a href=\"https://example.org/artikel\">Link</a></p>";
+
+        assertEquals(StreamAdmissionFilter.Rule.ADMITTED, filter.check(status("a@example.org", false, "de", first)));
+        assertEquals(StreamAdmissionFilter.Rule.DUPLICATE_URL, filter.check(status("b@example.org", false, "de", second)));
+    }
+
+    @Test
+    void testDefaultsOnlyApplyDenyList() {
+        // Die Vorgaben aus application.properties
+        filter.languages = Optional.empty();
+        filter.allowAccounts = Optional.empty();
+        filter.minTextLength = 0;
+        filter.rejectBots = false;
+        filter.rejectReblogs = false;
+        filter.duplicateUrlCacheSize = 0;
+        final String link = "<p><a href=\"https://example.org/artikel\">Link</a></p>";
+
+        assertEquals(StreamAdmissionFilter.Rule.ADMITTED, filter.check(status("bot@example.org", true, "fr", "<p>x</p>")));
+        assertEquals(StreamAdmissionFilter.Rule.ADMITTED, filter.check(status("a@example.org", false, "de", link)));
+        assertEquals(StreamAdmissionFilter.Rule.ADMITTED, filter.check(status("b@example.org", false, "de", link)));
+        assertEquals(StreamAdmissionFilter.Rule.DENIED_ACCOUNT, filter.check(status("heiseonlineenglish@social.heise.de", false, "en", link)));
+    }
+
+    @Test
+    void testLexicalVectorIsNormalized() {
+        final float[] vector = StreamAdmissionFilter.lexicalVector("Windkraft Windkraft Solar");
+        double sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        assertEquals(1.0, sum, 1e-5);
+        assertEquals(StreamAdmissionFilter.LEXICAL_DIMENSIONS, vector.length);
+    }
+}
@@ -0,0 +1,174 @@
+package de.hexix;
+
+import com.rometools.rome.feed.synd.SyndEntry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingFeedParserTest {
+
+    private static final String RSS = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <rss version="2.0" xmlns:content="http://purl.org/rss/1.0/modules/content/">
+              <channel>
+                <title>Test RSS Feed</title>
+                <link>https://example.com</link>
+                <item>
+                  <title>Neu</title>
+                  <link>https://example.com/neu</link>
+                  <guid>guid-neu</guid>
+                  <description><![CDATA[<p>Beschreibung</p>]]></description>
+                  <content:encoded><![CDATA[<p>Inhalt</p>]]></content:encoded>
+                  <pubDate>Wed, 01 Jan 2025 12:00:00 GMT</pubDate>
+                </item>
+                <item>
+                  <title>Alt 1</title>
+                  <link>https://example.com/alt1</link>
+                  <pubDate>Mon, 01 Jan 2024 12:00:00 GMT</pubDate>
+                </item>
+                <item>
+                  <title>Alt 2</title>
+                  <link>https://example.com/alt2</link>
+                  <pubDate>Sun, 31 Dec 2023 12:00:00 GMT</pubDate>
+                </item>
+                <item>
+                  <title>Nach dem Abbruch</title>
+                  <link>https://example.com/spaet</link>
+                  <pubDate>Thu, 02 Jan 2025 12:00:00 GMT</pubDate>
+                </item>
+              </channel>
+            </rss>
+            """;
+
+    private static final String ATOM = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <feed xmlns="http://www.w3.org/2005/Atom">
+              <title>Test Atom Feed</title>
+              <entry>
+                <title>Atom Eintrag</title>
+                <link rel="self" href="https://example.com/self"/>
+                <link rel="alternate" href="https://example.com/atom"/>
+                <id>urn:uuid:1</id>
+                <updated>2025-01-01T12:00:00Z</updated>
+                <summary>Zusammenfassung</summary>
+                <content type="xhtml"><div xmlns="http://www.w3.org/1999/xhtml"><p>Inhalt</p></div></content>
+              </entry>
+            </feed>
+            """;
+
+    // Typischer Nachrichten-Feed mit Media-RSS direkt im item und ein YouTube-Feed mit media:group
+    private static final String MRSS = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <rss version="2.0" xmlns:media="http://search.yahoo.com/mrss/" xmlns:dc="http://purl.org/dc/elements/1.1/"
+                 xmlns:content="http://purl.org/rss/1.0/modules/content/">
+              <channel>
+                <item>
+                  <title>Echter Titel</title>
+                  <link>https://example.com/news</link>
+                  <description>Echte Beschreibung</description>
+                  <content:encoded><![CDATA[<p>Echter Inhalt</p>]]></content:encoded>
+                  <media:content url="https://example.com/bild.jpg" medium="image">
+                    <media:title>Bildtitel</media:title>
+                    <media:description>Bildbeschreibung</media:description>
+                  </media:content>
+                  <media:title>Medientitel</media:title>
+                  <media:description>Medienbeschreibung</media:description>
+                  <dc:date>2025-01-01T12:00:00Z</dc:date>
+                </item>
+              </channel>
+            </rss>
+            """;
+
+    private static final String YOUTUBE = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <feed xmlns="http://www.w3.org/2005/Atom" xmlns:media="http://search.yahoo.com/mrss/" xmlns:yt="http://www.youtube.com/xml/schemas/2015">
+              <entry>
+                <id>yt:video:abc</id>
+                <yt:videoId>abc</yt:videoId>
+                <title>Video</title>
+                <link rel="alternate" href="https://www.youtube.com/watch?v=abc"/>
+                <published>2025-01-01T12:00:00+00:00</published>
+                <media:group>
+                  <media:title>Video</media:title>
+                  <media:content url="https://www.youtube.com/v/abc" type="application/x-shockwave-flash"/>
+                  <media:description>Videobeschreibung</media:description>
+                </media:group>
+              </entry>
+            </feed>
+            """;
+
+    @Test
+    void testRssStopsAfterConsecutiveOldItems() throws Exception {
+        final List<SyndEntry> entries = new StreamingFeedParser(Instant.parse("2024-06-01T00:00:00Z"), 2).parse(stream(RSS));
+
+        assertEquals(1, entries.size());
+        final SyndEntry entry = entries.getFirst();
+        assertEquals("Neu", entry.getTitle());
+        assertEquals("https://example.com/neu", entry.getLink());
+        assertEquals("guid-neu", entry.getUri());
+        assertEquals("<p>Beschreibung</p>", entry.getDescription().getValue());
+        assertEquals("<p>Inhalt</p>", entry.getContents().getFirst().getValue());
+        assertEquals(Instant.parse("2025-01-01T12:00:00Z"), entry.getPublishedDate().toInstant());
+    }
+
+    @Test
+    void testKeepsEntriesAtHighWaterMark() throws Exception {
+        // Mehrere Einträge mit derselben pubDate: der Scheduler unterscheidet sie über die GUID
+        final List<SyndEntry> entries = new StreamingFeedParser(Instant.parse("2025-01-01T12:00:00Z"), 2).parse(stream(RSS));
+
+        assertEquals(List.of("Neu"), entries.stream().map(SyndEntry::getTitle).toList());
+    }
+
+    @Test
+    void testRssWithoutLimitReadsAllItems() throws Exception {
+        assertEquals(4, new StreamingFeedParser(null, 2).parse(stream(RSS)).size());
+    }
+
+    @Test
+    void testAtomEntry() throws Exception {
+        final List<SyndEntry> entries = new StreamingFeedParser(null, 2).parse(stream(ATOM));
+
+        assertEquals(1, entries.size());
+        final SyndEntry entry = entries.getFirst();
+        assertEquals("Atom Eintrag", entry.getTitle());
+        assertEquals("https://example.com/atom", entry.getLink());
+        assertEquals("urn:uuid:1", entry.getUri());
+        assertEquals("Zusammenfassung", entry.getDescription().getValue());
+        assertEquals("Inhalt", entry.getContents().getFirst().getValue());
+        assertEquals(Instant.parse("2025-01-01T12:00:00Z"), entry.getUpdatedDate().toInstant());
+    }
+
+    @Test
+    void testMediaElementsDoNotOverwriteEntryFields() throws Exception {
+        final List<SyndEntry> entries = new StreamingFeedParser(null, 2).parse(stream(MRSS));
+
+        assertEquals(1, entries.size());
+        final SyndEntry entry = entries.getFirst();
+        assertEquals("Echter Titel", entry.getTitle());
+        assertEquals("Echte Beschreibung", entry.getDescription().getValue());
+        assertEquals("<p>Echter Inhalt</p>", entry.getContents().getFirst().getValue());
+        assertEquals(Instant.parse("2025-01-01T12:00:00Z"), entry.getPublishedDate().toInstant());
+    }
+
+    @Test
+    void testYoutubeMediaGroupIsSkipped() throws Exception {
+        final List<SyndEntry> entries = new StreamingFeedParser(null, 2).parse(stream(YOUTUBE));
+
+        assertEquals(1, entries.size());
+        final SyndEntry entry = entries.getFirst();
+        assertEquals("Video", entry.getTitle());
+        assertEquals("yt:video:abc", entry.getUri());
+        assertEquals("https://www.youtube.com/watch?v=abc", entry.getLink());
+        assertNull(entry.getDescription());
+        assertTrue(entry.getContents().isEmpty());
+    }
+
+    private static ByteArrayInputStream stream(final String xml) {
+        return new ByteArrayInputStream(xml.strip().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,142 @@
+package de.hexix.ai;
+
+import de.hexix.ai.dto.EmbeddingRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingBatchClientTest {
+
+    private static final String MODEL = "granite-embedding:278m";
+    private static final EmbeddingBatchClient.Group GROUP = new EmbeddingBatchClient.Group(MODEL, false);
+
+    // Alle gesendeten Batches, in der Reihenfolge der Aufrufe
+    private final List<List<String>> sent = new ArrayList<>();
+
+    private EmbeddingBatchClient client;
+
+    @BeforeEach
+    void setUp() {
+        client = new EmbeddingBatchClient() {
+            @Override
+            <K> List<double[]> send(final Batch<K> batch) {
+                final List<String> input = batch.texts().stream().map(Text::text).toList();
+                synchronized (sent) {
+                    sent.add(input);
+                }
+                // Wie Ollama ohne truncate: ein zu langer Text lässt die ganze Anfrage scheitern
+                if (input.stream().anyMatch(text -> text.startsWith("zu lang"))) {
+                    throw new IllegalStateException("input length exceeds the context length");
+                }
+                return input.stream().map(text -> new double[]{text.length()}).toList();
+            }
+        };
+        client.maxInputs = 3;
+        client.maxChars = 10;
+        client.maxInFlight = 1;
+        client.embeddingCache = new EmbeddingCache() {
+            @Override
+            public Map<String, double[]> getAll(final Collection<String> cacheKeys) {
+                return Map.of();
+            }
+
+            @Override
+            public void putAll(final String model, final Map<String, double[]> vectors) {
+            }
+        };
+        client.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+    }
+
+    @Test
+    void testPackRespectsInputLimit() {
+        final List<EmbeddingBatchClient.Batch<String>> batches = client.pack(Map.of(GROUP, texts("a", "b", "c", "d", "e")));
+
+        assertEquals(List.of(List.of("a", "b", "c"), List.of("d", "e")), inputs(batches));
+    }
+
+    @Test
+    void testPackRespectsCharLimit() {
+        final List<EmbeddingBatchClient.Batch<String>> batches = client.pack(Map.of(GROUP, texts("1234", "5678", "901", "x")));
+
+        assertEquals(List.of(List.of("1234", "5678"), List.of("901", "x")), inputs(batches));
+    }
+
+    @Test
+    void testPackGivesOversizedTextItsOwnBatch() {
+        final List<EmbeddingBatchClient.Batch<String>> batches = client.pack(Map.of(GROUP, texts("ab", "viel zu langer Text", "cd")));
+
+        assertEquals(List.of(List.of("ab"), List.of("viel zu langer Text"), List.of("cd")), inputs(batches));
+    }
+
+    @Test
+    void testPackKeepsOrderAndSeparatesGroups() {
+        final EmbeddingBatchClient.Group truncated = new EmbeddingBatchClient.Group(MODEL, true);
+        final Map<EmbeddingBatchClient.Group, List<EmbeddingBatchClient.Text<String>>> textsByGroup = new LinkedHashMap<>();
+        textsByGroup.put(GROUP, texts("a", "b", "c", "d"));
+        textsByGroup.put(truncated, texts("e", "f"));
+
+        final List<EmbeddingBatchClient.Batch<String>> batches = client.pack(textsByGroup);
+
+        assertEquals(List.of(List.of("a", "b", "c"), List.of("d"), List.of("e", "f")), inputs(batches));
+        assertEquals(List.of(GROUP, GROUP, truncated), batches.stream().map(EmbeddingBatchClient.Batch::group).toList());
+    }
+
+    @Test
+    void testFailedBatchOnlyDropsOffendingKey() {
+        client.maxChars = 100;
+        final Map<String, List<EmbeddingRequest>> requests = new LinkedHashMap<>();
+        requests.put("1", List.of(request("eins")));
+        requests.put("2", List.of(request("zu lang")));
+        requests.put("3", List.of(request("drei")));
+
+        final Map<String, List<double[]>> result = client.embed(requests);
+
+        assertEquals(List.of("1", "3"), List.copyOf(result.keySet()));
+        assertEquals(4, result.get("1").getFirst()[0]);
+        assertEquals(4, result.get("3").getFirst()[0]);
+        // Erst der ganze Batch, dann die Hälften, bis nur der fehlerhafte Text übrig ist
+        assertEquals(List.of(List.of("eins", "zu lang", "drei"), List.of("eins"), List.of("zu lang", "drei"),
+                List.of("zu lang"), List.of("drei")), sent);
+    }
+
+    @Test
+    void testKeyWithOneFailedChunkIsDropped() {
+        final Map<String, List<EmbeddingRequest>> requests = new LinkedHashMap<>();
+        requests.put("1", List.of(new EmbeddingRequest(MODEL, List.of("ok", "zu lang"), false)));
+        requests.put("2", List.of(request("auch ok")));
+
+        final Map<String, List<double[]>> result = client.embed(requests);
+
+        assertEquals(List.of("2"), List.copyOf(result.keySet()));
+    }
+
+    private static EmbeddingRequest request(final String text) {
+        return new EmbeddingRequest(MODEL, List.of(text), false);
+    }
+
+    private static List<EmbeddingBatchClient.Text<String>> texts(final String... texts) {
+        final List<EmbeddingBatchClient.Text<String>> result = new ArrayList<>();
+        for (String text : texts) {
+            result.add(new EmbeddingBatchClient.Text<>(GROUP, EmbeddingCache.key(MODEL, text), text,
+                    List.of(new EmbeddingBatchClient.Chunk<>(text, 0))));
+        }
+        return result;
+    }
+
+    private static List<List<String>> inputs(final List<EmbeddingBatchClient.Batch<String>> batches) {
+        return batches.stream().map(batch -> batch.texts().stream().map(EmbeddingBatchClient.Text::text).toList()).toList();
+    }
+}
@@ -0,0 +1,23 @@
+package de.hexix.ai;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingCacheTest {
+
+    @Test
+    void testKeyIgnoresWhitespaceAndUnicodeForm() {
+        assertEquals(EmbeddingCache.key("granite-embedding:278m", "Gru\u0308ne  Energie\n im Norden "),
+                EmbeddingCache.key("granite-embedding:278m", "Grüne Energie im Norden"));
+    }
+
+    @Test
+    void testKeyDependsOnModel() {
+        final String key = EmbeddingCache.key("granite-embedding:278m", "Text");
+        assertTrue(key.startsWith("granite-embedding:278m:"));
+        assertEquals(64, key.length() - "granite-embedding:278m:".length());
+        assertNotEquals(key, EmbeddingCache.key("bge-m3:567m", "Text"));
+        assertNotEquals(key, EmbeddingCache.key("granite-embedding:278m", "text"));
+    }
+}
@@ -0,0 +1,56 @@
+package de.hexix.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeminiRateLimiterTest {
+
+    @Test
+    void testBucketRefillsOverWindow() {
+        final AtomicLong now = new AtomicLong();
+        final GeminiRateLimiter.TokenBucket bucket = new GeminiRateLimiter.TokenBucket(3, Duration.ofMinutes(10), now::get);
+
+        assertEquals(3, bucket.available());
+        bucket.take(3);
+        assertEquals(0, bucket.available());
+
+        now.addAndGet(Duration.ofMinutes(5).toNanos());
+        assertEquals(1, bucket.available());
+
+        now.addAndGet(Duration.ofHours(1).toNanos());
+        assertEquals(3, bucket.available());
+    }
+
+    @Test
+    void testTimeUntilAvailable() {
+        final AtomicLong now = new AtomicLong();
+        final GeminiRateLimiter.TokenBucket bucket = new GeminiRateLimiter.TokenBucket(3, Duration.ofMinutes(10), now::get);
+
+        assertEquals(Duration.ZERO, bucket.timeUntil(1));
+        bucket.take(3);
+        assertEquals(Duration.ofSeconds(200), bucket.timeUntil(1));
+        now.addAndGet(Duration.ofSeconds(100).toNanos());
+        assertEquals(Duration.ofSeconds(100), bucket.timeUntil(1));
+        // Mehr als die Kapazität: höchstens das volle Zeitfenster
+        assertEquals(Duration.ofSeconds(500), bucket.timeUntil(10));
+    }
+
+    @Test
+    void testParseLimit() {
+        assertEquals(new GeminiRateLimiter.Limit(100, 30000, Duration.ofMinutes(1)), GeminiRateLimiter.Limit.parse("100/30000/1m"));
+        assertEquals(new GeminiRateLimiter.Limit(3, 250000, Duration.ofDays(1)), GeminiRateLimiter.Limit.parse(" 3 / 250000 / P1D "));
+        assertEquals(new GeminiRateLimiter.Limit(1000, 1000000, Duration.ofDays(1)), GeminiRateLimiter.Limit.parse("1000/1000000/1d"));
+        assertThrows(IllegalArgumentException.class, () -> GeminiRateLimiter.Limit.parse("100/1m"));
+    }
+
+    @Test
+    void testEstimateTokens() {
+        assertEquals(0, GeminiRateLimiter.estimateTokens(null));
+        assertEquals(1, GeminiRateLimiter.estimateTokens("abc"));
+        assertEquals(3, GeminiRateLimiter.estimateTokens("abcdefghi"));
+    }
+}
@@ -0,0 +1,94 @@
+package de.hexix.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextChunkerTest {
+
+    @Test
+    void testShortTextStaysOneChunk() {
+        assertEquals(List.of("Ein Satz. Noch ein Satz."), TextChunker.chunk("  Ein Satz.\n Noch ein Satz. ", 100, 10, 3.0));
+        assertTrue(TextChunker.chunk("   ", 100, 10, 3.0).isEmpty());
+        assertTrue(TextChunker.chunk(null, 100, 10, 3.0).isEmpty());
+    }
+
+    @Test
+    void testSplitsAtSentenceBoundariesWithinBudget() {
+        final String text = "Die Feuerwehr rückte am Morgen aus. Ein Keller stand unter Wasser. "
+                + "Verletzt wurde niemand. Die Straße war zwei Stunden gesperrt.";
+        final List<String> chunks = TextChunker.chunk(text, 15, 0, 3.0);
+
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(TextChunker.tokens(chunk, 3.0) <= 15, chunk);
+            assertTrue(chunk.endsWith("."), chunk);
+        }
+        assertEquals(text, String.join(" ", chunks));
+    }
+
+    @Test
+    void testOverlapRepeatsLastSentence() {
+        final List<String> chunks = TextChunker.chunk("Erster Satz hier. Zweiter Satz. Dritter Satz dort.", 12, 6, 3.0);
+
+        assertEquals(List.of("Erster Satz hier. Zweiter Satz.", "Zweiter Satz. Dritter Satz dort."), chunks);
+    }
+
+    @Test
+    void testKeepsParagraphsAndSplitsLongSentencesAtWords() {
+        final List<String> chunks = TextChunker.chunk("Absatz eins.\n\nAbsatz zwei.", 100, 0, 3.0);
+        assertEquals(List.of("Absatz eins.\n\nAbsatz zwei."), chunks);
+
+        final List<String> words = TextChunker.chunk("eins zwei drei vier fünf sechs sieben acht", 4, 0, 3.0);
+        for (String chunk : words) {
+            assertTrue(chunk.length() <= 12, chunk);
+            assertFalse(chunk.startsWith(" ") || chunk.endsWith(" "), chunk);
+        }
+        assertEquals("eins zwei drei vier fünf sechs sieben acht", String.join(" ", words));
+    }
+
+    @Test
+    void testOverlapFallsBackToLastWords() {
+        // Jeder Satz ist länger als die Überlappung, ganze Sätze würden also nie wiederholt
+        final List<String> chunks = TextChunker.chunk("Der erste Satz ist recht lang geraten. Der zweite Satz ist ebenso lang.", 16, 5, 3.0);
+
+        assertEquals(List.of("Der erste Satz ist recht lang geraten.", "lang geraten. Der zweite Satz ist ebenso lang."), chunks);
+    }
+
+    @Test
+    void testChunksStayWithinBudgetIncludingSeparators() {
+        // Kurze Sätze mit je genau einem Token: ohne die Leerzeichen mitzuzählen würde das Budget überschritten
+        final String text = "Ja. Ok. Na. So. Gut. Da. Wo. Du.\n\nEr. Es. Wir. Ihr. Sie. Nun. Los. Aus.";
+        for (int overlap : new int[]{0, 2, 4}) {
+            final List<String> chunks = TextChunker.chunk(text, 4, overlap, 3.0);
+            assertTrue(chunks.size() > 1);
+            for (String chunk : chunks) {
+                assertTrue(TextChunker.tokens(chunk, 3.0) <= 4, chunk);
+            }
+        }
+    }
+
+    @Test
+    void testKeepsSafetyMarginBelowModelContext() {
+        final TextChunker chunker = new TextChunker();
+        chunker.budgets = "granite-embedding:278m=100";
+        chunker.defaultBudget = 50;
+        chunker.overlapTokens = 10;
+        chunker.charsPerToken = 3.0;
+        chunker.safetyMargin = 0.2;
+        chunker.init();
+
+        final String text = "Ein Satz mit ein paar Wörtern darin. ".repeat(40);
+        final List<String> chunks = chunker.chunk("granite-embedding:278m", text);
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(TextChunker.tokens(chunk, 3.0) <= 80, chunk);
+        }
+        assertTrue(chunks.stream().anyMatch(chunk -> TextChunker.tokens(chunk, 3.0) > 60));
+        for (String chunk : chunker.chunk("unbekannt", text)) {
+            assertTrue(TextChunker.tokens(chunk, 3.0) <= 40, chunk);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.hexix.mastodon;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MastodonStreamProcessorTest {
+
+    @Test
+    void testCompareIdsOrdersNumerically() {
+        assertTrue(MastodonStreamProcessor.compareIds("99", "100") < 0);
+        assertTrue(MastodonStreamProcessor.compareIds("110", "109") > 0);
+        assertTrue(MastodonStreamProcessor.compareIds("113000000000000001", "113000000000000002") < 0);
+        assertEquals(0, MastodonStreamProcessor.compareIds("42", "42"));
+    }
+
+    @Test
+    void testMarkSeenDeduplicatesWithoutMovingPosition() {
+        final MastodonStreamProcessor.StreamCursor cursor = new MastodonStreamProcessor.StreamCursor("public");
+
+        assertTrue(cursor.markSeen("100"));
+        assertFalse(cursor.markSeen("100"));
+        assertFalse(cursor.markSeen(null));
+        // Gesehen ist noch nicht gespeichert
+        assertNull(cursor.lastStatusId());
+    }
+
+    @Test
+    void testCommitAdvancesToHighestIdOnly() {
+        final MastodonStreamProcessor.StreamCursor cursor = new MastodonStreamProcessor.StreamCursor("public");
+
+        cursor.commit(List.of("99", "101", "100"));
+        assertEquals("101", cursor.lastStatusId());
+
+        // Nachgeladene ältere Status schieben die Position nicht zurück
+        cursor.commit(List.of("98"));
+        assertEquals("101", cursor.lastStatusId());
+    }
+
+    @Test
+    void testFailedBatchHoldsPositionUntilResume() {
+        final MastodonStreamProcessor.StreamCursor cursor = new MastodonStreamProcessor.StreamCursor("public");
+        cursor.restore("100");
+        assertTrue(cursor.markSeen("101"));
+        assertTrue(cursor.markSeen("102"));
+
+        cursor.fail(List.of("101"));
+        // Ein späterer, erfolgreicher Batch darf nicht über den fehlgeschlagenen Status hinweg speichern
+        cursor.commit(List.of("102"));
+        assertEquals("100", cursor.lastStatusId());
+
+        // Beim Wiederverbinden wird ab der alten Position nachgeladen, der fehlgeschlagene Status wird wieder angenommen
+        assertEquals("100", cursor.resume());
+        assertTrue(cursor.markSeen("101"));
+        assertFalse(cursor.markSeen("102"));
+        cursor.commit(List.of("101"));
+        assertEquals("101", cursor.lastStatusId());
+    }
+
+    @Test
+    void testRestoredPositionIsSeen() {
+        final MastodonStreamProcessor.StreamCursor cursor = new MastodonStreamProcessor.StreamCursor("direct");
+
+        cursor.restore("100");
+
+        assertEquals("100", cursor.lastStatusId());
+        assertFalse(cursor.markSeen("100"));
+    }
+}
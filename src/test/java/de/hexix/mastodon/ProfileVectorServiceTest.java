@@ -0,0 +1,146 @@
+package de.hexix.mastodon;
+
+import de.hexix.util.VektorUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfileVectorServiceTest {
+
+    private static final double[] A = {1, 0, 0};
+    private static final double[] B = {0, 1, 0};
+    private static final double[] C = {0.5, 0.5, 1};
+
+    // Was die Datenbank beim Neuaufbau liefert
+    private final List<ProfileContributionChanged> table = new ArrayList<>();
+
+    // Ist der Latch gesetzt, hält der Neuaufbau nach dem Laden an, bis der Test ihn freigibt
+    private CountDownLatch loadStarted;
+    private CountDownLatch releaseLoad;
+
+    private ProfileVectorService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ProfileVectorService() {
+            @Override
+            List<ProfileContributionChanged> loadContributions() {
+                final List<ProfileContributionChanged> events = List.copyOf(table);
+                if (loadStarted != null) {
+                    loadStarted.countDown();
+                    try {
+                        releaseLoad.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return events;
+            }
+        };
+    }
+
+    @Test
+    void testIncrementalMatchesFullComputation() {
+        table.add(favourite("embedding:1", A));
+        service.rebuild();
+
+        service.onContributionChanged(favourite("embedding:2", B));
+        service.onContributionChanged(new ProfileContributionChanged("post:3", C, -0.5));
+        assertProfile(Map.of("embedding:1", weighted(A, 1.0), "embedding:2", weighted(B, 1.0), "post:3", weighted(C, -0.5)));
+
+        // Gewicht ändern, dann wieder entfernen
+        service.onContributionChanged(new ProfileContributionChanged("embedding:2", B, -2.0));
+        assertProfile(Map.of("embedding:1", weighted(A, 1.0), "embedding:2", weighted(B, -2.0), "post:3", weighted(C, -0.5)));
+        service.onContributionChanged(new ProfileContributionChanged("post:3", C, 0.0));
+        service.onContributionChanged(new ProfileContributionChanged("embedding:2", null, 1.0));
+        assertProfile(Map.of("embedding:1", weighted(A, 1.0)));
+        assertEquals(1, service.contributionCount());
+    }
+
+    @Test
+    void testRepeatedEventCountsOnce() {
+        service.rebuild();
+
+        service.onContributionChanged(favourite("embedding:1", A));
+        service.onContributionChanged(favourite("embedding:2", B));
+        service.onContributionChanged(favourite("embedding:2", B));
+
+        assertProfile(Map.of("embedding:1", weighted(A, 1.0), "embedding:2", weighted(B, 1.0)));
+    }
+
+    @Test
+    void testEventsBeforeFirstBuildAreReplayed() {
+        // Ereignisse vor dem ersten Aufbau, deren Transaktionen die Abfrage noch nicht gesehen hat
+        service.onContributionChanged(favourite("embedding:2", B));
+        service.onContributionChanged(new ProfileContributionChanged("post:3", C, -1.0));
+        table.add(favourite("embedding:1", A));
+
+        service.rebuild();
+
+        assertProfile(Map.of("embedding:1", weighted(A, 1.0), "embedding:2", weighted(B, 1.0), "post:3", weighted(C, -1.0)));
+    }
+
+    @Test
+    void testEventsDuringRebuildAreNotBlockedAndReplayed() throws Exception {
+        table.add(favourite("embedding:1", A));
+        service.rebuild();
+
+        loadStarted = new CountDownLatch(1);
+        releaseLoad = new CountDownLatch(1);
+        final CompletableFuture<Void> rebuild = CompletableFuture.runAsync(service::rebuild);
+        assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+        // Der Beobachter läuft während des Aufbaus durch und wirkt sofort auf die alte Summe
+        CompletableFuture.runAsync(() -> service.onContributionChanged(favourite("embedding:2", B))).get(5, TimeUnit.SECONDS);
+        assertProfile(Map.of("embedding:1", weighted(A, 1.0), "embedding:2", weighted(B, 1.0)));
+
+        releaseLoad.countDown();
+        rebuild.get(5, TimeUnit.SECONDS);
+
+        // Die Abfrage kannte das Ereignis nicht, es wurde auf die neue Summe nachgezogen
+        assertProfile(Map.of("embedding:1", weighted(A, 1.0), "embedding:2", weighted(B, 1.0)));
+        assertEquals(2, service.contributionCount());
+    }
+
+    @Test
+    void testRemovingLastContributionClearsProfile() {
+        table.add(favourite("embedding:1", A));
+        service.rebuild();
+
+        service.onContributionChanged(new ProfileContributionChanged("embedding:1", A, 0.0));
+
+        assertThrows(IllegalArgumentException.class, service::profileVector);
+    }
+
+    private static ProfileContributionChanged favourite(final String key, final double[] vector) {
+        return new ProfileContributionChanged(key, vector, 1.0);
+    }
+
+    private static VektorUtil.VektorWeight weighted(final double[] vector, final double weight) {
+        return new VektorUtil.VektorWeight(vector, weight);
+    }
+
+    /**
+     * Vergleicht mit der vollständigen Berechnung über alle Beiträge; negative Gewichte werden dort abgezogen.
+     */
+    private void assertProfile(final Map<String, VektorUtil.VektorWeight> contributions) {
+        final List<VektorUtil.VektorWeight> positive = new ArrayList<>();
+        final List<VektorUtil.VektorWeight> negative = new ArrayList<>();
+        for (VektorUtil.VektorWeight contribution : contributions.values()) {
+            if (contribution.weight() >= 0) {
+                positive.add(contribution);
+            } else {
+                negative.add(weighted(contribution.vektor(), -contribution.weight()));
+            }
+        }
+        assertArrayEquals(VektorUtil.createProfileVector(positive, negative), service.profileVector(), 1e-9);
+    }
+}
@@ -0,0 +1,103 @@
+package de.hexix.mastodon;
+
+import de.hexix.util.VektorUtil;
+import io.quarkus.test.TestTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prüft gegen die echte Datenbank (PostgreSQL mit pgvector), dass die Abfragen die Indizes aus V22 treffen
+ * und die Bewertung in der Datenbank nur die besten Kandidaten verbraucht. Alle Änderungen werden zurückgerollt.
+ */
+@QuarkusTest
+class PublicMastodonPostRepositoryTest {
+
+    @Inject
+    EntityManager em;
+
+    @Inject
+    PublicMastodonPostRepository repository;
+
+    @Test
+    @TestTransaction
+    void testMostSimilarUsesHnswIndex() {
+        disableSeqScan();
+        for (int dims : new int[]{768, 1024}) {
+            final String plan = explain(PublicMastodonPostRepository.mostSimilarSql(dims), vectorLiteral(dims, 0), 10);
+
+            assertTrue(plan.contains("mastodon_posts_embedding_" + dims + "_hnsw_idx"), plan);
+        }
+    }
+
+    @Test
+    @TestTransaction
+    void testScoreUnscoredUsesPartialIndex() {
+        disableSeqScan();
+        final String plan = explain(PublicMastodonPostRepository.scoreUnscoredSql(768), vectorLiteral(768, 0), 0.8, 10);
+
+        assertTrue(plan.contains("mastodon_posts_unscored_idx"), plan);
+    }
+
+    @Test
+    @TestTransaction
+    void testScoreUnscoredKeepsCandidatesBeyondLimitUnscored() {
+        final double[] profile = vector(768, 0);
+        final double[] almostProfile = vector(768, 0);
+        almostProfile[1] = 0.01;
+        insert("test-best", profile);
+        insert("test-second", almostProfile);
+        insert("test-unrelated", vector(768, 1));
+
+        final List<PublicMastodonPostRepository.ScoredPost> candidates = repository.scoreUnscored(profile, 0.99, 1);
+
+        assertEquals(List.of("test-best"), candidates.stream().map(PublicMastodonPostRepository.ScoredPost::mastodonId).toList());
+        // Der zweite Kandidat bleibt für den nächsten Durchlauf offen, der Post unter der Schwelle ist erledigt
+        assertNull(cosDistance("test-second"));
+        assertEquals(0.0, cosDistance("test-unrelated"), 1e-6);
+    }
+
+    private void disableSeqScan() {
+        // Bei leerer oder kleiner Tabelle wäre ein Seq Scan billiger; geprüft wird nur, ob der Index überhaupt passt
+        em.createNativeQuery("SELECT set_config('enable_seqscan', 'off', true)").getSingleResult();
+    }
+
+    private String explain(final String sql, final Object... parameters) {
+        final Query query = em.createNativeQuery("EXPLAIN " + sql);
+        for (int i = 0; i < parameters.length; i++) {
+            query.setParameter(i + 1, parameters[i]);
+        }
+        return ((List<?>) query.getResultList()).stream().map(String::valueOf).collect(Collectors.joining("\n"));
+    }
+
+    private void insert(final String mastodonId, final double[] embedding) {
+        em.createNativeQuery("INSERT INTO mastodon_posts (id, mastodon_id, embedding) VALUES (nextval('mastodon_posts_id_seq'), ?1, CAST(?2 AS vector))")
+                .setParameter(1, mastodonId)
+                .setParameter(2, VektorUtil.toPgVectorLiteral(embedding))
+                .executeUpdate();
+    }
+
+    private Double cosDistance(final String mastodonId) {
+        final Object value = em.createNativeQuery("SELECT cosinus_distance FROM mastodon_posts WHERE mastodon_id = ?1")
+                .setParameter(1, mastodonId)
+                .getSingleResult();
+        return value == null ? null : ((Number) value).doubleValue();
+    }
+
+    private static double[] vector(final int dims, final int axis) {
+        final double[] vector = new double[dims];
+        vector[axis] = 1;
+        return vector;
+    }
+
+    private static String vectorLiteral(final int dims, final int axis) {
+        return VektorUtil.toPgVectorLiteral(vector(dims, axis));
+    }
+}
@@ -0,0 +1,41 @@
+package de.hexix.mastodon.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamStatusDecoderTest {
+
+    @Test
+    void testDecodeSkipsUnusedFields() throws IOException {
+        final String json = """
+                {"id":"113","created_at":"2025-01-01T10:00:00.000Z","url":"https://example.org/@a/113",
+                 "card":{"url":"https://example.org","authors":[{"name":"x","account":{"acct":"falsch"}}]},
+                 "media_attachments":[{"id":"1","meta":{"small":{"width":1}}}],
+                 "account":{"id":"7","username":"a","acct":"a@example.org","bot":true,"fields":[{"name":"n","value":"v"}],"emojis":[]},
+                 "content":"<p>Hallo \\u00e4</p>","language":"de","reblog":null,"tags":[],"poll":null}
+                """;
+
+        final MastodonDtos.StreamStatus status = StreamStatusDecoder.decode(json);
+
+        assertEquals(new MastodonDtos.StreamStatus("113", "https://example.org/@a/113", "<p>Hallo ä</p>", "de", "a@example.org", "a", true, false), status);
+    }
+
+    @Test
+    void testDecodeReblogAndMissingFields() throws IOException {
+        final MastodonDtos.StreamStatus status = StreamStatusDecoder.decode("{\"id\":\"5\",\"reblog\":{\"id\":\"4\",\"account\":{\"acct\":\"b\"}},\"url\":null}");
+
+        assertTrue(status.reblog());
+        assertNull(status.url());
+        assertNull(status.acct());
+        assertFalse(status.bot());
+    }
+
+    @Test
+    void testDecodeRejectsNonStatus() {
+        assertThrows(IOException.class, () -> StreamStatusDecoder.decode("113"));
+        assertThrows(IOException.class, () -> StreamStatusDecoder.decode("{\"content\":\"ohne ID\"}"));
+    }
+}
@@ -0,0 +1,50 @@
+package de.hexix.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorMathTest {
+
+    private static float[] random(Random random, int dimension) {
+        final float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+    @Test
+    void testDotMatchesScalarFallback() {
+        final Random random = new Random(42);
+        final VectorMath.ScalarVectorMath scalar = new VectorMath.ScalarVectorMath();
+        for (int dimension : new int[]{1, 7, 768, 1023, 1024}) {
+            final float[] a = random(random, dimension);
+            final float[] b = random(random, dimension);
+            double expected = 0;
+            for (int i = 0; i < dimension; i++) {
+                expected += (double) a[i] * b[i];
+            }
+            assertEquals(expected, VectorMath.dot(a, b), 1e-3);
+            assertEquals(expected, scalar.dot(a, b), 1e-3);
+        }
+    }
+
+    @Test
+    void testScoreAllEqualsCosineForNormalisedVectors() {
+        final Random random = new Random(7);
+        final float[] profile = VectorMath.normalize(random(random, 768));
+        final float[] raw = random(random, 768);
+        final float[][] candidates = {VectorMath.normalize(raw), new float[1024], null};
+
+        final float[] scores = VectorMath.scoreAll(profile, candidates);
+
+        assertEquals(1f, VectorMath.norm(profile), 1e-5f);
+        assertEquals(VectorMath.cosine(profile, raw), scores[0], 1e-5f);
+        assertTrue(Float.isNaN(scores[1]));
+        assertTrue(Float.isNaN(scores[2]));
+        assertThrows(IllegalArgumentException.class, () -> VectorMath.dot(profile, new float[3]));
+    }
+}
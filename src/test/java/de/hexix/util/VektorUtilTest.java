@@ -0,0 +1,41 @@
+package de.hexix.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VektorUtilTest {
+
+    private static final float[] VECTOR = {0.125f, -0.5f, 0.9f, 0f, -0.0031f};
+
+    @Test
+    void testFloat32RoundTripIsExact() {
+        final byte[] data = VektorUtil.BinaryVectorCodec.encode(VECTOR, VektorUtil.BinaryVectorCodec.Encoding.FLOAT32);
+        assertEquals(8 + VECTOR.length * 4, data.length);
+        assertArrayEquals(VECTOR, VektorUtil.BinaryVectorCodec.decode(data));
+    }
+
+    @Test
+    void testFloat16AndInt8RoundTripWithinTolerance() {
+        final float[] half = VektorUtil.BinaryVectorCodec.decode(VektorUtil.BinaryVectorCodec.encode(VECTOR, VektorUtil.BinaryVectorCodec.Encoding.FLOAT16));
+        assertArrayEquals(VECTOR, half, 1e-3f);
+
+        final byte[] int8 = VektorUtil.BinaryVectorCodec.encode(VECTOR, VektorUtil.BinaryVectorCodec.Encoding.INT8);
+        assertEquals(8 + 4 + VECTOR.length, int8.length);
+        assertArrayEquals(VECTOR, VektorUtil.BinaryVectorCodec.decode(int8), 0.9f / 127);
+    }
+
+    @Test
+    void testDimensionCheckAndInvalidData() {
+        final byte[] data = VektorUtil.BinaryVectorCodec.encode(VECTOR, VektorUtil.BinaryVectorCodec.Encoding.FLOAT32);
+        assertEquals(VECTOR.length, VektorUtil.BinaryVectorCodec.dimension(data));
+        assertThrows(IllegalArgumentException.class, () -> VektorUtil.BinaryVectorCodec.decode(data, 768));
+
+        final byte[] truncated = Arrays.copyOf(data, data.length - 1);
+        assertThrows(IllegalArgumentException.class, () -> VektorUtil.BinaryVectorCodec.decode(truncated));
+        assertThrows(IllegalArgumentException.class, () -> VektorUtil.BinaryVectorCodec.decode("1.0,2.0".getBytes()));
+        assertNull(VektorUtil.BinaryVectorCodec.decode(null));
+    }
+}